@@ -0,0 +1,488 @@
+package fileio;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.StreamTask;
+import parser.RankParser;
+import parser.RankParser.RankType;
+import exception.StreamIOException;
+
+//@author A0096529N
+/**
+ * Handles loading-related processes and binary-to-model conversions. Refer
+ * to BinarySaveIO for the file layout.
+ * 
+ * <p>
+ * Loading reads the task list and index, and creates each task with only its
+ * name. The rest of each task is decoded when first accessed, or by a
+ * background thread, so the first page can be shown without decoding the
+ * whole file.
+ * </p>
+ */
+public class BinaryLoadIO implements Converter {
+
+	private static final String THREAD_NAME = "Stream-Loader";
+	private static final int KNOWN_FLAGS = BinarySaveIO.FLAG_DESCRIPTION
+			| BinarySaveIO.FLAG_STARTTIME | BinarySaveIO.FLAG_DEADLINE
+			| BinarySaveIO.FLAG_DONE;
+	// bytes of a start time or deadline
+	private static final int TIME_LENGTH = 8;
+
+	private static BinaryLoadIO self = null;
+
+	/**
+	 * Decodes the body of a task from the bytes read from the file. Bodies
+	 * are checked when the file is loaded, so decoding does not fail.
+	 * 
+	 * <p>
+	 * Also lets BinarySaveIO write out the body of a task that was never
+	 * loaded without decoding it: the fields before the tags are copied as
+	 * they are, and only the tags need new ids.
+	 * </p>
+	 */
+	static class BodyLoader implements StreamTask.Loader {
+
+		private final byte[] bodies;
+		private final int offset;
+		private final int length;
+		private final int tagsOffset;
+		private final String[] tags;
+
+		private BodyLoader(byte[] bodies, int offset, int length,
+				int tagsOffset, String[] tags) {
+			this.bodies = bodies;
+			this.offset = offset;
+			this.length = length;
+			this.tagsOffset = tagsOffset;
+			this.tags = tags;
+		}
+
+		@Override
+		public StreamTask load() {
+			try {
+				return self.readTaskBody(new DataInputStream(
+						new ByteArrayInputStream(bodies, offset, length)), tags,
+						false);
+			} catch (IOException e) {
+				throw new IllegalStateException("Task could not be loaded - "
+						+ e.getMessage(), e);
+			}
+		}
+
+		/**
+		 * Writes the flag byte, description, times and rank of the body.
+		 */
+		void writeFieldsTo(OutputStream out) throws IOException {
+			out.write(bodies, offset, tagsOffset);
+		}
+
+		/**
+		 * @return the tags of the body, in order
+		 */
+		List<String> readTags() throws IOException {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+					bodies, offset + tagsOffset, length - tagsOffset));
+			String[] taskTags = new String[self.readVarInt(in)];
+			for (int i = 0; i < taskTags.length; i++) {
+				taskTags[i] = tags[self.readVarInt(in)];
+			}
+			return Arrays.asList(taskTags);
+		}
+
+	}
+
+	private BinaryLoadIO() {
+
+	}
+
+	public static BinaryLoadIO init() {
+		if (self == null) {
+			self = new BinaryLoadIO();
+		}
+		return self;
+	}
+
+	/**
+	 * Parses the binary task map section.
+	 *
+	 * @param map
+	 *            byte[] of the tag dictionary followed by the task records
+	 * @return taskMap the map of tasks
+	 * @throws StreamIOException
+	 *             if the bytes could not be parsed
+	 */
+	@Override
+	public HashMap<String, StreamTask> convertTaskMap(Object map)
+			throws StreamIOException {
+		HashMap<String, StreamTask> taskMap = new HashMap<String, StreamTask>();
+		try {
+			readTaskMap(toInput((byte[]) map), taskMap);
+		} catch (IOException e) {
+			throw new StreamIOException("Binary conversion failed - "
+					+ e.getMessage(), e);
+		}
+		return taskMap;
+	}
+
+	/**
+	 * Parses the binary task list section.
+	 *
+	 * @param list
+	 *            byte[] of the count followed by the task names
+	 * @return taskList the list of task names
+	 * @throws StreamIOException
+	 *             if the bytes could not be parsed
+	 */
+	@Override
+	public List<String> convertTaskList(Object list) throws StreamIOException {
+		ArrayList<String> taskList = new ArrayList<String>();
+		try {
+			readTaskList(toInput((byte[]) list)).resolve(taskList,
+					new ArrayList<StreamTask>());
+		} catch (IOException e) {
+			throw new StreamIOException("Binary conversion failed - "
+					+ e.getMessage(), e);
+		}
+		return taskList;
+	}
+
+	/**
+	 * Parses a single task, as converted by BinarySaveIO.convertTask.
+	 *
+	 * @param obj
+	 *            byte[] of the task map section holding one task
+	 * @return task the parsed task
+	 * @throws StreamIOException
+	 *             if the bytes could not be parsed, or do not hold exactly
+	 *             one task
+	 */
+	@Override
+	public StreamTask convertTask(Object obj) throws StreamIOException {
+		HashMap<String, StreamTask> taskMap = convertTaskMap(obj);
+		if (taskMap.size() != 1) {
+			throw new StreamIOException("Binary conversion failed - expected "
+					+ "one task, found " + taskMap.size());
+		}
+		return taskMap.values().iterator().next();
+	}
+
+	/**
+	 * @return whether the file starts with the binary format header
+	 * @throws IOException
+	 *             from file IO errors
+	 */
+	boolean isBinary(File file) throws IOException {
+		if (!file.exists()) {
+			return false;
+		}
+		byte[] header = new byte[BinarySaveIO.MAGIC.length];
+		try (InputStream in = new FileInputStream(file)) {
+			int read = 0;
+			while (read < header.length) {
+				int count = in.read(header, read, header.length - read);
+				if (count < 0) {
+					return false;
+				}
+				read += count;
+			}
+		}
+		return Arrays.equals(header, BinarySaveIO.MAGIC);
+	}
+
+	/**
+	 * Loads data from a binary file and populate the taskMap and taskList
+	 * accordingly with the data in the file.
+	 *
+	 * @param file
+	 *            to load
+	 * @param taskMap
+	 *            the map to populate loaded tasks
+	 * @param taskList
+	 *            the list to populate loaded task names
+	 * @throws IOException
+	 *             from file IO errors
+	 * @throws StreamIOException
+	 *             if the file is corrupted or of an unknown format version
+	 */
+	void load(File file, Map<String, StreamTask> taskMap, List<String> taskList)
+			throws IOException, StreamIOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)))) {
+			byte[] header = new byte[BinarySaveIO.MAGIC.length];
+			in.readFully(header);
+			byte version = in.readByte();
+			if (!Arrays.equals(header, BinarySaveIO.MAGIC)
+					|| (version != BinarySaveIO.FORMAT_VERSION
+							&& version != BinarySaveIO.FORMAT_VERSION_1)) {
+				throw new StreamIOException("Unsupported file format version - "
+						+ version);
+			}
+			TaskListRefs refs;
+			List<StreamTask> records;
+			if (version == BinarySaveIO.FORMAT_VERSION_1) {
+				records = readVersion1TaskMap(in, taskMap);
+				refs = readTaskList(in);
+			} else {
+				refs = readTaskList(in);
+				records = readTaskMap(in, taskMap);
+			}
+			if (in.read() != -1) {
+				throw new IOException("Unexpected data after task bodies");
+			}
+			refs.resolve(taskList, records);
+			loadInBackground(records);
+		} catch (IOException | RuntimeException e) {
+			throw new StreamIOException(
+					"File corrupted, could not parse file contents - "
+							+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads the tag dictionary and index, and creates the tasks to be loaded
+	 * from their bodies when accessed.
+	 * 
+	 * @return the tasks in the order of their records
+	 */
+	List<StreamTask> readTaskMap(DataInputStream in,
+			Map<String, StreamTask> taskMap) throws IOException {
+		String[] tags = new String[readVarInt(in)];
+		for (int i = 0; i < tags.length; i++) {
+			tags[i] = readString(in);
+		}
+		int count = readVarInt(in);
+		String[] names = new String[count];
+		int[] offsets = new int[count + 1];
+		for (int i = 0; i < count; i++) {
+			names[i] = readString(in);
+			offsets[i + 1] = offsets[i] + readVarInt(in);
+		}
+		byte[] bodies = new byte[offsets[count]];
+		in.readFully(bodies);
+
+		ArrayList<StreamTask> records = new ArrayList<StreamTask>(count);
+		for (int i = 0; i < count; i++) {
+			int length = offsets[i + 1] - offsets[i];
+			int tagsOffset = checkTaskBody(bodies, offsets[i], length,
+					tags.length);
+			StreamTask task = new StreamTask(names[i], new BodyLoader(bodies,
+					offsets[i], length, tagsOffset, tags));
+			taskMap.put(names[i].toLowerCase(), task);
+			records.add(task);
+		}
+		return records;
+	}
+
+	/**
+	 * Reads the task map of a version 1 file, where each task record holds
+	 * its name followed by its body, and decodes every body.
+	 * 
+	 * @return the tasks in the order of their records
+	 */
+	private List<StreamTask> readVersion1TaskMap(DataInputStream in,
+			Map<String, StreamTask> taskMap) throws IOException {
+		String[] tags = new String[readVarInt(in)];
+		for (int i = 0; i < tags.length; i++) {
+			tags[i] = readString(in);
+		}
+		int count = readVarInt(in);
+		ArrayList<StreamTask> records = new ArrayList<StreamTask>(count);
+		for (int i = 0; i < count; i++) {
+			String name = readString(in);
+			final StreamTask body = readTaskBody(in, tags, true);
+			// supplied as a loader, so that the task is not marked modified
+			StreamTask task = new StreamTask(name, new StreamTask.Loader() {
+				@Override
+				public StreamTask load() {
+					return body;
+				}
+			});
+			taskMap.put(name.toLowerCase(), task);
+			records.add(task);
+		}
+		return records;
+	}
+
+	/**
+	 * Task list as read from the file, before the task records it refers to
+	 * have been read.
+	 */
+	static class TaskListRefs {
+
+		private final int[] records;
+		private final String[] names;
+
+		private TaskListRefs(int count) {
+			records = new int[count];
+			names = new String[count];
+		}
+
+		void resolve(List<String> taskList, List<StreamTask> taskRecords) {
+			for (int i = 0; i < records.length; i++) {
+				if (records[i] == 0) {
+					taskList.add(names[i]);
+				} else {
+					taskList.add(taskRecords.get(records[i] - 1).getTaskName());
+				}
+			}
+		}
+
+	}
+
+	TaskListRefs readTaskList(DataInputStream in) throws IOException {
+		TaskListRefs refs = new TaskListRefs(readVarInt(in));
+		for (int i = 0; i < refs.records.length; i++) {
+			refs.records[i] = readVarInt(in);
+			if (refs.records[i] == 0) {
+				refs.names[i] = readString(in);
+			}
+		}
+		return refs;
+	}
+
+	private void loadInBackground(final List<StreamTask> tasks) {
+		Thread loaderThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (StreamTask task : tasks) {
+					task.ensureLoaded();
+				}
+			}
+		}, THREAD_NAME);
+		loaderThread.setDaemon(true);
+		loaderThread.start();
+	}
+
+	/**
+	 * Walks through a task body without decoding it, so that a corrupted body
+	 * fails the load rather than the first access to the task.
+	 * 
+	 * @return the position of the tags within the body
+	 * @throws IOException
+	 *             if the body is malformed, refers to an unknown tag, or is
+	 *             not of the given length
+	 */
+	private int checkTaskBody(byte[] bodies, int offset, int length,
+			int tagCount) throws IOException {
+		ByteArrayInputStream bytes = new ByteArrayInputStream(bodies, offset,
+				length);
+		DataInputStream in = new DataInputStream(bytes);
+		int flags = in.readUnsignedByte();
+		if ((flags & ~KNOWN_FLAGS) != 0) {
+			throw new IOException("Unknown task flags - " + flags);
+		}
+		if ((flags & BinarySaveIO.FLAG_DESCRIPTION) != 0) {
+			skip(in, readVarInt(in));
+		}
+		if ((flags & BinarySaveIO.FLAG_STARTTIME) != 0) {
+			skip(in, TIME_LENGTH);
+		}
+		if ((flags & BinarySaveIO.FLAG_DEADLINE) != 0) {
+			skip(in, TIME_LENGTH);
+		}
+		readRank(in, false);
+		int tagsOffset = length - bytes.available();
+		int count = readVarInt(in);
+		for (int i = 0; i < count; i++) {
+			int tag = readVarInt(in);
+			if (tag >= tagCount) {
+				throw new IOException("Unknown tag - " + tag);
+			}
+		}
+		if (bytes.available() != 0) {
+			throw new IOException("Unexpected data after task body");
+		}
+		return tagsOffset;
+	}
+
+	private void skip(DataInputStream in, int count) throws IOException {
+		if (in.skipBytes(count) != count) {
+			throw new EOFException();
+		}
+	}
+
+	/**
+	 * @param hasTextRanks
+	 *            whether the body is from a version 1 file, which may hold
+	 *            ranks as text
+	 */
+	private StreamTask readTaskBody(DataInputStream in, String[] tags,
+			boolean hasTextRanks) throws IOException {
+		// the name is kept by the task being loaded
+		StreamTask task = new StreamTask(null);
+		int flags = in.readUnsignedByte();
+		if ((flags & BinarySaveIO.FLAG_DESCRIPTION) != 0) {
+			task.setDescription(readString(in));
+		}
+		if ((flags & BinarySaveIO.FLAG_STARTTIME) != 0) {
+			task.setStartTimeMillis(in.readLong());
+		}
+		if ((flags & BinarySaveIO.FLAG_DEADLINE) != 0) {
+			task.setDeadlineMillis(in.readLong());
+		}
+		if ((flags & BinarySaveIO.FLAG_DONE) != 0) {
+			task.markAsDone();
+		}
+		RankType rank = readRank(in, hasTextRanks);
+		// no rank is left at the default, as in LoadIO
+		if (rank != RankType.NULL) {
+			task.setRank(rank);
+		}
+		int tagCount = readVarInt(in);
+		for (int i = 0; i < tagCount; i++) {
+			task.addTag(tags[readVarInt(in)]);
+		}
+		return task;
+	}
+
+	private RankType readRank(DataInputStream in, boolean hasTextRanks)
+			throws IOException {
+		byte code = in.readByte();
+		if (hasTextRanks && code == BinarySaveIO.RANK_TEXT) {
+			return RankParser.init().parse(readString(in));
+		} else if (code >= 0 && code < BinarySaveIO.RANKS.length) {
+			return BinarySaveIO.RANKS[code];
+		}
+		throw new IOException("Unknown rank - " + code);
+	}
+
+	private String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (value < 0) {
+					break;
+				}
+				return value;
+			}
+		}
+		throw new IOException("Malformed length");
+	}
+
+	private DataInputStream toInput(byte[] bytes) {
+		return new DataInputStream(new ByteArrayInputStream(bytes));
+	}
+
+}
@@ -0,0 +1,324 @@
+package fileio;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.StreamTask;
+import parser.RankParser.RankType;
+import exception.StreamIOException;
+
+//@author A0096529N
+/**
+ * Handles saving-related processes and model-to-binary conversions.
+ *
+ * <h3>File layout</h3>
+ * <ul>
+ * <li>header - MAGIC followed by FORMAT_VERSION</li>
+ * <li>task list - count, then for each name the position of the task record
+ * with that name plus one, or zero followed by the name itself</li>
+ * <li>task map - tag dictionary (count, tags), then the index (task count,
+ * then the name and body length of each task record), then the bodies</li>
+ * </ul>
+ * <p>
+ * Counts, lengths and tag ids are unsigned variable-length integers; strings
+ * are a byte length followed by UTF-8. A task body holds a flag byte telling
+ * which of description, start time and deadline follow and whether the task
+ * is done, the dates as epoch milliseconds, the rank as a single byte, and
+ * the tags as dictionary ids.
+ * </p>
+ * <p>
+ * Everything needed to list the tasks comes before the bodies, so a loader
+ * can skip decoding the bodies until they are needed.
+ * </p>
+ */
+public class BinarySaveIO implements Converter {
+
+	static final byte[] MAGIC = { 'S', 'T', 'R', 'M' };
+	static final byte FORMAT_VERSION = 2;
+	// task records inline, each body preceded by the name, and the task list
+	// after the task map; still read, no longer written
+	static final byte FORMAT_VERSION_1 = 1;
+
+	static final int FLAG_DESCRIPTION = 1;
+	static final int FLAG_STARTTIME = 2;
+	static final int FLAG_DEADLINE = 4;
+	static final int FLAG_DONE = 8;
+
+	// ranks are stored as their position in RANKS; version 1 files may also
+	// hold RANK_TEXT followed by the rank as text
+	static final RankType[] RANKS = { RankType.NULL, RankType.HI,
+			RankType.MED, RankType.LO };
+	static final byte RANK_TEXT = (byte) RANKS.length;
+
+	private static BinarySaveIO self = null;
+
+	private BinarySaveIO() {
+
+	}
+
+	public static BinarySaveIO init() {
+		if (self == null) {
+			self = new BinarySaveIO();
+		}
+		return self;
+	}
+
+	/**
+	 * Converts the task map into its binary section.
+	 *
+	 * @param map
+	 *            the map of tasks
+	 * @return byte[] the tag dictionary, task index and task bodies
+	 * @throws StreamIOException
+	 *             if the tasks could not be encoded
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public byte[] convertTaskMap(Object map) throws StreamIOException {
+		Map<String, StreamTask> taskMap = (Map<String, StreamTask>) map;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			writeTaskMap(new DataOutputStream(bytes), taskMap);
+		} catch (IOException e) {
+			throw new StreamIOException("Binary conversion failed - "
+					+ e.getMessage(), e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Converts the task list into its binary section.
+	 *
+	 * @param list
+	 *            list of task names
+	 * @return byte[] the count followed by the task names, not referring to
+	 *         any task records
+	 * @throws StreamIOException
+	 *             if the names could not be encoded
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public byte[] convertTaskList(Object list) throws StreamIOException {
+		List<String> taskList = (List<String>) list;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			writeTaskList(new DataOutputStream(bytes), taskList,
+					new HashMap<String, Integer>());
+		} catch (IOException e) {
+			throw new StreamIOException("Binary conversion failed - "
+					+ e.getMessage(), e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Converts a single task, together with a dictionary of its own tags.
+	 *
+	 * @param obj
+	 *            the task
+	 * @return byte[] the task map section holding only this task
+	 * @throws StreamIOException
+	 *             if the task could not be encoded
+	 */
+	@Override
+	public byte[] convertTask(Object obj) throws StreamIOException {
+		StreamTask task = (StreamTask) obj;
+		HashMap<String, StreamTask> taskMap = new HashMap<String, StreamTask>();
+		taskMap.put(task.getTaskName().toLowerCase(), task);
+		return convertTaskMap(taskMap);
+	}
+
+	/**
+	 * Serializes the tasks and writes them to the specified File.
+	 *
+	 * @param streamFile
+	 *            destination file to write the data
+	 * @param taskMap
+	 *            map of tasks to be saved
+	 * @param taskList
+	 *            list of task names
+	 * @param writeMode
+	 *            how the file is replaced
+	 * @throws IOException
+	 *             from file IO errors
+	 */
+	void save(File streamFile, final Map<String, StreamTask> taskMap,
+			final List<String> taskList, SaveIO.WriteMode writeMode)
+			throws IOException {
+		StreamIO.saver.writeFile(streamFile, writeMode,
+				new SaveIO.FileContent() {
+					@Override
+					public void writeTo(OutputStream out) throws IOException {
+						DataOutputStream data = new DataOutputStream(
+								new BufferedOutputStream(out));
+						data.write(MAGIC);
+						data.writeByte(FORMAT_VERSION);
+						writeTaskList(data, taskList,
+								getRecordPositions(taskMap));
+						writeTaskMap(data, taskMap);
+						data.flush();
+					}
+				});
+	}
+
+	/**
+	 * @return the position of each task record, by task name
+	 */
+	private Map<String, Integer> getRecordPositions(
+			Map<String, StreamTask> taskMap) {
+		HashMap<String, Integer> records = new HashMap<String, Integer>();
+		for (StreamTask task : taskMap.values()) {
+			records.put(task.getTaskName(), records.size());
+		}
+		return records;
+	}
+
+	void writeTaskMap(DataOutputStream out, Map<String, StreamTask> taskMap)
+			throws IOException {
+		HashMap<String, Integer> tagIds = new HashMap<String, Integer>();
+		ByteArrayOutputStream tagBytes = new ByteArrayOutputStream();
+		DataOutputStream tagOut = new DataOutputStream(tagBytes);
+		for (StreamTask task : taskMap.values()) {
+			for (String tag : getTags(task)) {
+				if (!tagIds.containsKey(tag)) {
+					tagIds.put(tag, tagIds.size());
+					writeString(tagOut, tag);
+				}
+			}
+		}
+		writeVarInt(out, tagIds.size());
+		tagBytes.writeTo(out);
+
+		ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+		DataOutputStream bodyOut = new DataOutputStream(bodyBytes);
+		writeVarInt(out, taskMap.size());
+		for (StreamTask task : taskMap.values()) {
+			int offset = bodyBytes.size();
+			BinaryLoadIO.BodyLoader body = getPendingBody(task);
+			if (body == null) {
+				writeTaskBody(bodyOut, task, tagIds);
+			} else {
+				writeTaskBody(bodyOut, body, tagIds);
+			}
+			writeString(out, task.getTaskName());
+			writeVarInt(out, bodyBytes.size() - offset);
+		}
+		bodyBytes.writeTo(out);
+	}
+
+	void writeTaskList(DataOutputStream out, List<String> taskList,
+			Map<String, Integer> records) throws IOException {
+		writeVarInt(out, taskList.size());
+		for (String taskName : taskList) {
+			Integer record = records.get(taskName);
+			if (record == null) {
+				writeVarInt(out, 0);
+				writeString(out, taskName);
+			} else {
+				writeVarInt(out, record + 1);
+			}
+		}
+	}
+
+	/**
+	 * @return the body a task not loaded yet would be loaded from, or null
+	 */
+	private BinaryLoadIO.BodyLoader getPendingBody(StreamTask task) {
+		StreamTask.Loader loader = task.pendingLoader();
+		if (loader instanceof BinaryLoadIO.BodyLoader) {
+			return (BinaryLoadIO.BodyLoader) loader;
+		}
+		return null;
+	}
+
+	private List<String> getTags(StreamTask task) throws IOException {
+		BinaryLoadIO.BodyLoader body = getPendingBody(task);
+		return body == null ? task.getTags() : body.readTags();
+	}
+
+	/*
+	 * Copies the body of a task that was never loaded, giving its tags their
+	 * ids in this file, instead of decoding and encoding it again.
+	 */
+	private void writeTaskBody(DataOutputStream out,
+			BinaryLoadIO.BodyLoader body, Map<String, Integer> tagIds)
+			throws IOException {
+		List<String> tags = body.readTags();
+		body.writeFieldsTo(out);
+		writeVarInt(out, tags.size());
+		for (String tag : tags) {
+			writeVarInt(out, tagIds.get(tag));
+		}
+	}
+
+	private void writeTaskBody(DataOutputStream out, StreamTask task,
+			Map<String, Integer> tagIds) throws IOException {
+		int flags = 0;
+		if (task.getDescription() != null) {
+			flags |= FLAG_DESCRIPTION;
+		}
+		if (task.startTimeMillis() != StreamTask.NO_TIME) {
+			flags |= FLAG_STARTTIME;
+		}
+		if (task.deadlineMillis() != StreamTask.NO_TIME) {
+			flags |= FLAG_DEADLINE;
+		}
+		if (task.isDone()) {
+			flags |= FLAG_DONE;
+		}
+		out.writeByte(flags);
+		if (task.getDescription() != null) {
+			writeString(out, task.getDescription());
+		}
+		writeTime(out, task.startTimeMillis());
+		writeTime(out, task.deadlineMillis());
+		writeRank(out, task.getRank());
+		writeVarInt(out, task.getTags().size());
+		for (String tag : task.getTags()) {
+			writeVarInt(out, tagIds.get(tag));
+		}
+	}
+
+	private void writeTime(DataOutputStream out, long millis)
+			throws IOException {
+		if (millis != StreamTask.NO_TIME) {
+			out.writeLong(millis);
+		}
+	}
+
+	private void writeRank(DataOutputStream out, RankType rank)
+			throws IOException {
+		for (byte code = 0; code < RANKS.length; code++) {
+			if (rank == RANKS[code]) {
+				out.writeByte(code);
+				return;
+			}
+		}
+		throw new IOException("Unknown rank - " + rank);
+	}
+
+	private void writeString(DataOutputStream out, String value)
+			throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private void writeVarInt(DataOutputStream out, int value)
+			throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+}
@@ -0,0 +1,348 @@
+package fileio;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import model.StreamTask;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import exception.StreamIOException;
+
+//@author A0096529N
+/**
+ * <p>
+ * Append-only journal of the changes made since the last snapshot. Each save
+ * appends one line per changed task instead of rewriting the whole storage
+ * file; on load the journal is replayed on top of the snapshot.
+ * </p>
+ *
+ * <h3>Record format</h3>
+ * <ul>
+ * <li>{"op":"base","length":..,"modified":..} - first line, identifies the
+ * snapshot the journal was started against</li>
+ * <li>{"op":"put","task":{..}} - task added or modified</li>
+ * <li>{"op":"remove","key":".."} - task removed</li>
+ * <li>{"op":"clear"} - all tasks removed</li>
+ * <li>{"op":"splice","index":..,"remove":..,"insert":[..]} - change in
+ * ordering</li>
+ * </ul>
+ */
+class JournalIO {
+
+	static final String JOURNAL_EXTENSION = ".journal";
+
+	static final String KEY_OP = "op";
+	static final String KEY_LENGTH = "length";
+	static final String KEY_MODIFIED = "modified";
+	static final String KEY_TASK = "task";
+	static final String KEY_KEY = "key";
+	static final String KEY_INDEX = "index";
+	static final String KEY_REMOVE = "remove";
+	static final String KEY_INSERT = "insert";
+
+	static final String OP_BASE = "base";
+	static final String OP_PUT = "put";
+	static final String OP_REMOVE = "remove";
+	static final String OP_CLEAR = "clear";
+	static final String OP_SPLICE = "splice";
+
+	private File snapshotFile;
+	private File journalFile;
+	private boolean isForced = false;
+
+	// state as last persisted, used to work out what has changed
+	private HashMap<String, SavedTask> savedTasks = null;
+	private ArrayList<String> savedOrder = null;
+
+	/**
+	 * A task as last persisted. Tasks are compared by id and version, so
+	 * recording the state does not need the tasks to be encoded or loaded,
+	 * and a snapshot of a task matches the task it was taken from.
+	 */
+	private static class SavedTask {
+		private final StreamTask task;
+		private final long version;
+
+		private SavedTask(StreamTask task) {
+			this.task = task;
+			this.version = task.version();
+		}
+
+		private boolean isSavedState(StreamTask current) {
+			return task.isSameTask(current) && version == current.version();
+		}
+	}
+
+	JournalIO(File snapshotFile) {
+		this.snapshotFile = snapshotFile;
+		this.journalFile = new File(snapshotFile.getPath() + JOURNAL_EXTENSION);
+	}
+
+	boolean isFor(File file) {
+		return snapshotFile.equals(file);
+	}
+
+	/**
+	 * Sets whether appended records are forced to disk before returning.
+	 */
+	void setForced(boolean isForced) {
+		this.isForced = isForced;
+	}
+
+	/**
+	 * @return whether the persisted state is known, i.e. whether changes can be
+	 *         appended to the journal.
+	 */
+	boolean isInitialized() {
+		return savedTasks != null;
+	}
+
+	long length() {
+		return journalFile.length();
+	}
+
+	/**
+	 * Records the given state as the persisted one. Called after the state has
+	 * been loaded or fully written out.
+	 *
+	 */
+	void reset(Map<String, StreamTask> taskMap, List<String> taskList) {
+		savedTasks = new HashMap<String, SavedTask>();
+		for (String key : taskMap.keySet()) {
+			savedTasks.put(key, new SavedTask(taskMap.get(key)));
+		}
+		savedOrder = new ArrayList<String>(taskList);
+	}
+
+	/**
+	 * Starts a new journal against the current snapshot file, discarding the
+	 * previous journal.
+	 *
+	 * @throws IOException
+	 *             from file IO errors
+	 */
+	void startNew() throws IOException {
+		JSONObject base = new JSONObject();
+		base.put(KEY_OP, OP_BASE);
+		base.put(KEY_LENGTH, snapshotFile.length());
+		base.put(KEY_MODIFIED, snapshotFile.lastModified());
+		writeRecords(base.toString() + "\n", false);
+	}
+
+	/**
+	 * Deletes the journal, after the snapshot has been rewritten without it.
+	 */
+	void discard() {
+		if (journalFile.exists()) {
+			journalFile.delete();
+		}
+		savedTasks = null;
+		savedOrder = null;
+	}
+
+	/**
+	 * Appends the differences between the given state and the persisted state
+	 * to the journal.
+	 *
+	 * <p>
+	 * Precondition: isInitialized()
+	 * </p>
+	 *
+	 * @throws IOException
+	 *             from file IO errors
+	 */
+	void append(Map<String, StreamTask> taskMap, List<String> taskList)
+			throws IOException {
+		assert (isInitialized()) : "Journal appended before initialization";
+		StringBuilder records = new StringBuilder();
+		appendTaskRecords(records, taskMap);
+		appendOrderRecord(records, taskList);
+		if (records.length() > 0) {
+			writeRecords(records.toString(), true);
+		}
+	}
+
+	private void appendTaskRecords(StringBuilder records,
+			Map<String, StreamTask> taskMap) {
+		if (taskMap.isEmpty() && !savedTasks.isEmpty()) {
+			records.append(record(OP_CLEAR)).append("\n");
+			savedTasks.clear();
+		}
+		Iterator<String> savedKeys = savedTasks.keySet().iterator();
+		while (savedKeys.hasNext()) {
+			String key = savedKeys.next();
+			if (!taskMap.containsKey(key)) {
+				JSONObject remove = record(OP_REMOVE);
+				remove.put(KEY_KEY, key);
+				records.append(remove.toString()).append("\n");
+				savedKeys.remove();
+			}
+		}
+		for (String key : taskMap.keySet()) {
+			StreamTask task = taskMap.get(key);
+			SavedTask saved = savedTasks.get(key);
+			if (saved == null || !saved.isSavedState(task)) {
+				// recorded before encoding, a concurrent change stays pending
+				SavedTask current = new SavedTask(task);
+				String encoded = StreamIO.saver.encodeTask(task);
+				records.append("{\"").append(KEY_OP).append("\":\"")
+						.append(OP_PUT).append("\",\"").append(KEY_TASK)
+						.append("\":").append(encoded).append("}\n");
+				savedTasks.put(key, current);
+			}
+		}
+	}
+
+	/*
+	 * Most commands add, remove or rename a single task, so only the differing
+	 * region between the common prefix and suffix is recorded.
+	 */
+	private void appendOrderRecord(StringBuilder records, List<String> order) {
+		// copied once, as the task list is slow to index one by one
+		ArrayList<String> taskList = new ArrayList<String>(order);
+		int oldSize = savedOrder.size();
+		int newSize = taskList.size();
+		int prefix = 0;
+		while (prefix < oldSize && prefix < newSize
+				&& savedOrder.get(prefix).equals(taskList.get(prefix))) {
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < oldSize - prefix
+				&& suffix < newSize - prefix
+				&& savedOrder.get(oldSize - 1 - suffix).equals(
+						taskList.get(newSize - 1 - suffix))) {
+			suffix++;
+		}
+		int removed = oldSize - prefix - suffix;
+		List<String> inserted = taskList.subList(prefix, newSize - suffix);
+		if (removed > 0 || !inserted.isEmpty()) {
+			JSONObject splice = record(OP_SPLICE);
+			splice.put(KEY_INDEX, prefix);
+			splice.put(KEY_REMOVE, removed);
+			splice.put(KEY_INSERT, new JSONArray(inserted));
+			records.append(splice.toString()).append("\n");
+			savedOrder = taskList;
+		}
+	}
+
+	/**
+	 * Applies the records in the journal on the loaded snapshot. A journal that
+	 * was started against a different snapshot is ignored, and replay stops at
+	 * a record that was only partially written.
+	 *
+	 * @param taskMap
+	 *            the map loaded from the snapshot
+	 * @param taskList
+	 *            the list loaded from the snapshot
+	 * @return true if the whole journal was applied, false if the journal is
+	 *         stale or ends with a partially written record
+	 * @throws IOException
+	 *             from file IO errors
+	 * @throws StreamIOException
+	 *             if a record could not be converted
+	 */
+	boolean replay(Map<String, StreamTask> taskMap, List<String> taskList)
+			throws IOException, StreamIOException {
+		if (!journalFile.exists()) {
+			return true;
+		}
+		try (BufferedReader reader = new BufferedReader(new FileReader(
+				journalFile))) {
+			String line = reader.readLine();
+			if (line == null || !isBaseOfSnapshot(line)) {
+				return false;
+			}
+			while ((line = reader.readLine()) != null) {
+				JSONObject record;
+				try {
+					record = new JSONObject(line);
+				} catch (JSONException e) {
+					return false;
+				}
+				apply(record, taskMap, taskList);
+			}
+			return true;
+		}
+	}
+
+	private boolean isBaseOfSnapshot(String line) {
+		try {
+			JSONObject base = new JSONObject(line);
+			return OP_BASE.equals(base.getString(KEY_OP))
+					&& base.getLong(KEY_LENGTH) == snapshotFile.length()
+					&& base.getLong(KEY_MODIFIED) == snapshotFile
+							.lastModified();
+		} catch (JSONException e) {
+			return false;
+		}
+	}
+
+	private void apply(JSONObject record, Map<String, StreamTask> taskMap,
+			List<String> taskList) throws StreamIOException {
+		try {
+			switch (record.getString(KEY_OP)) {
+				case OP_PUT:
+					StreamTask task = StreamIO.loader.convertTask(record
+							.getJSONObject(KEY_TASK));
+					taskMap.put(task.getTaskName().toLowerCase(), task);
+					break;
+				case OP_REMOVE:
+					taskMap.remove(record.getString(KEY_KEY));
+					break;
+				case OP_CLEAR:
+					taskMap.clear();
+					break;
+				case OP_SPLICE:
+					int index = record.getInt(KEY_INDEX);
+					taskList.subList(index, index + record.getInt(KEY_REMOVE))
+							.clear();
+					JSONArray inserted = record.getJSONArray(KEY_INSERT);
+					for (int i = 0; i < inserted.length(); i++) {
+						taskList.add(index + i, inserted.getString(i));
+					}
+					break;
+				default:
+					throw new StreamIOException("Unknown journal record - "
+							+ record.getString(KEY_OP));
+			}
+		} catch (JSONException | IndexOutOfBoundsException e) {
+			throw new StreamIOException("Journal corrupted - "
+					+ e.getMessage(), e);
+		}
+	}
+
+	private JSONObject record(String op) {
+		JSONObject record = new JSONObject();
+		record.put(KEY_OP, op);
+		return record;
+	}
+
+	private void writeRecords(String records, boolean isAppending)
+			throws IOException {
+		try (FileOutputStream out = new FileOutputStream(journalFile,
+				isAppending)) {
+			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+					out));
+			writer.write(records);
+			writer.flush();
+			if (isForced) {
+				out.getChannel().force(false);
+			}
+		}
+	}
+
+}
@@ -8,46 +8,125 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 import model.StreamTask;
+import parser.RankParser;
+import parser.RankParser.RankType;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import exception.StreamIOException;
 
 //@author A0096529N
 /**
  * Handles loading-related processes and JSON-to-model conversions.
+ * 
+ * <p>
+ * Tasks are independent of each other, so they are converted in chunks of
+ * CHUNK_SIZE on a fork/join pool, and merged into the task map in the order
+ * they appear in the file.
+ * </p>
  */
 public class LoadIO implements Converter {
 
+	static final int CHUNK_SIZE = 256;
+
 	private static LoadIO self = null;
+	private static final ForkJoinPool pool = new ForkJoinPool();
+	private static final RankParser rp = RankParser.init();
 
 	/**
-	 * Parses the json object, with a list of task names mapped to their index,
-	 * into a string list.
+	 * Converts a range of task json objects, splitting the range into forked
+	 * halves until it is no larger than CHUNK_SIZE.
+	 */
+	private class ConvertTasks extends RecursiveTask<List<StreamTask>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Object> tasksJson;
+		private final int from;
+		private final int to;
+
+		private ConvertTasks(List<Object> tasksJson, int from, int to) {
+			this.tasksJson = tasksJson;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected List<StreamTask> compute() {
+			if (to - from <= CHUNK_SIZE) {
+				ArrayList<StreamTask> tasks = new ArrayList<StreamTask>(to
+						- from);
+				for (int i = from; i < to; i++) {
+					try {
+						tasks.add(convertTask(tasksJson.get(i)));
+					} catch (StreamIOException e) {
+						throw new ConversionFailure(e);
+					}
+				}
+				return tasks;
+			}
+			int middle = (from + to) >>> 1;
+			ConvertTasks firstHalf = new ConvertTasks(tasksJson, from, middle);
+			firstHalf.fork();
+			List<StreamTask> secondHalf = new ConvertTasks(tasksJson, middle,
+					to).compute();
+			List<StreamTask> tasks = firstHalf.join();
+			tasks.addAll(secondHalf);
+			return tasks;
+		}
+
+	}
+
+	/**
+	 * Carries a StreamIOException out of a fork/join task.
+	 */
+	private static class ConversionFailure extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private ConversionFailure(StreamIOException cause) {
+			super(cause);
+		}
+
+	}
+
+	/**
+	 * Parses the json array of task names, or the legacy json object with the
+	 * task names mapped to their index, into a string list.
 	 * 
-	 * @param orderListJson
-	 *            json with the task names mapped to their index
+	 * @param list
+	 *            json array of task names, or json object with the task names
+	 *            mapped to their index
 	 * @return taskList the list of task names
 	 * @throws StreamIOException
 	 *             if the json could not be parsed
 	 */
 	@Override
 	public List<String> convertTaskList(Object list) throws StreamIOException {
-		JSONObject orderListJson = (JSONObject) list;
 		try {
-			List<String> taskList = new ArrayList<String>();
-			for (int i = 0; orderListJson.has(String.valueOf(i)); i++) {
-				taskList.add(orderListJson.getString(String.valueOf(i)));
+			if (list instanceof JSONArray) {
+				JSONArray orderListJson = (JSONArray) list;
+				List<String> taskList = new ArrayList<String>(
+						orderListJson.length());
+				for (int i = 0; i < orderListJson.length(); i++) {
+					taskList.add(orderListJson.getString(i));
+				}
+				return taskList;
+			} else {
+				return convertLegacyTaskList((JSONObject) list);
 			}
-			return taskList;
 		} catch (JSONException e) {
 			throw new StreamIOException(
 					"File corrupted, could not parse file contents - "
@@ -55,16 +134,44 @@ public class LoadIO implements Converter {
 		}
 	}
 
+	/*
+	 * Places each name at its index in one pass over the keys. As before, the
+	 * list ends at the first missing index.
+	 */
+	private List<String> convertLegacyTaskList(JSONObject orderListJson) {
+		String[] names = new String[orderListJson.length()];
+		Iterator<?> keys = orderListJson.keys();
+		while (keys.hasNext()) {
+			String key = (String) keys.next();
+			try {
+				int index = Integer.parseInt(key);
+				if (index >= 0 && index < names.length) {
+					names[index] = orderListJson.getString(key);
+				}
+			} catch (NumberFormatException e) {
+				// not an index, ignore as before
+			}
+		}
+		List<String> taskList = new ArrayList<String>(names.length);
+		for (int i = 0; i < names.length && names[i] != null; i++) {
+			taskList.add(names[i]);
+		}
+		return taskList;
+	}
+
 	@Override
 	public HashMap<String, StreamTask> convertTaskMap(Object map)
 			throws StreamIOException {
 		JSONArray tasksJson = (JSONArray) map;
 		try {
-			HashMap<String, StreamTask> taskMap = new HashMap<String, StreamTask>();
+			ArrayList<Object> elements = new ArrayList<Object>(
+					tasksJson.length());
 			for (int i = 0; i < tasksJson.length(); i++) {
-				StreamTask task = convertTask(tasksJson.getJSONObject(i));
-				taskMap.put(task.getTaskName().toLowerCase(), task);
+				elements.add(tasksJson.getJSONObject(i));
 			}
+			HashMap<String, StreamTask> taskMap = new HashMap<String, StreamTask>();
+			putAll(taskMap, pool.submit(new ConvertTasks(elements, 0,
+					elements.size())));
 			return taskMap;
 		} catch (JSONException e) {
 			throw new StreamIOException("JSON conversion failed - "
@@ -84,19 +191,13 @@ public class LoadIO implements Converter {
 			}
 
 			if (taskJson.has(StreamIO.KEY_STARTTIME)) {
-				Calendar startTime = Calendar.getInstance();
-				Date startTimeDate = StreamIO.dateFormat.parse(taskJson
-						.getString(StreamIO.KEY_STARTTIME));
-				startTime.setTime(startTimeDate);
-				task.setStartTime(startTime);
+				task.setStartTime(parseDate(taskJson
+						.getString(StreamIO.KEY_STARTTIME)));
 			}
 
 			if (taskJson.has(StreamIO.KEY_DEADLINE)) {
-				Calendar deadline = Calendar.getInstance();
-				Date deadlineDate = StreamIO.dateFormat.parse(taskJson
-						.getString(StreamIO.KEY_DEADLINE));
-				deadline.setTime(deadlineDate);
-				task.setDeadline(deadline);
+				task.setDeadline(parseDate(taskJson
+						.getString(StreamIO.KEY_DEADLINE)));
 			}
 
 			if (taskJson.has(StreamIO.KEY_TAGS)) {
@@ -114,7 +215,12 @@ public class LoadIO implements Converter {
 			}
 
 			if (taskJson.has(StreamIO.KEY_RANK)) {
-				task.setRank(taskJson.getString(StreamIO.KEY_RANK));
+				RankType rank = rp.parse(taskJson.getString(StreamIO.KEY_RANK));
+				// an unknown rank is left at the default, as it could not be
+				// saved back
+				if (rank != RankType.NULL) {
+					task.setRank(rank);
+				}
 			}
 			return task;
 		} catch (JSONException | ParseException e) {
@@ -123,6 +229,12 @@ public class LoadIO implements Converter {
 		}
 	}
 	
+	static Calendar parseDate(String date) throws ParseException {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(StreamIO.dateFormat.get().parse(date));
+		return calendar;
+	}
+
 	private LoadIO() {
 		
 	}
@@ -134,37 +246,15 @@ public class LoadIO implements Converter {
 		return self;
 	}
 
-	/**
-	 * Loads the contents in the given file and parse it into a JSONObject
-	 * 
-	 * @param file
-	 *            source file to be loaded
-	 * @return JSONObject that is parsed
-	 * @throws StreamIOException
-	 *             from file IO errors or when the contents could not be parsed
-	 * @throws IOException
-	 * @throws FileNotFoundException
-	 */
-	JSONObject readFromFile(File file) throws FileNotFoundException,
-			IOException {
-		StringBuilder stringBuilder = new StringBuilder();
-		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-			String line = null;
-			while ((line = reader.readLine()) != null) {
-				stringBuilder.append(line).append("\n");
-			}
-			String mapJsonString = stringBuilder.toString().trim();
-			if (mapJsonString.isEmpty()) {
-				return null;
-			} else {
-				return new JSONObject(mapJsonString);
-			}
-		}
-	}
-
 	/**
 	 * Loads data from file and populate the taskMap and taskList accordingly
-	 * with the data in the file
+	 * with the data in the file.
+	 * 
+	 * <p>
+	 * The file is read as a stream of tokens. Tasks are handed to the pool in
+	 * chunks as soon as they have been read, so they are converted while the
+	 * rest of the file is still being read.
+	 * </p>
 	 * 
 	 * @param file
 	 *            to load
@@ -174,17 +264,19 @@ public class LoadIO implements Converter {
 	 *            the list to populate loaded task names
 	 * @throws IOException
 	 * @throws FileNotFoundException
-	 * @throws StreamIOException
+	 * @throws JSONException
 	 *             if the file is corrupted or the file could not be loaded.
 	 */
 	void load(File file, Map<String, StreamTask> taskMap, List<String> taskList)
 			throws FileNotFoundException, IOException {
-		JSONObject tasksJson = readFromFile(file);
-		try {
-			if (tasksJson != null) {
-				loadTaskMap(taskMap, tasksJson);
-				loadTaskList(taskList, tasksJson);
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			JSONTokener tokener = new JSONTokener(reader);
+			if (tokener.nextClean() == 0) {
+				// empty file, nothing to load
+				return;
 			}
+			tokener.back();
+			loadTasks(tokener, taskMap, taskList);
 		} catch (StreamIOException e) {
 			throw new JSONException(
 					"File corrupted, could not parse file contents - "
@@ -193,23 +285,43 @@ public class LoadIO implements Converter {
 	}
 
 	/**
-	 * Populate the task list with task names from the json object given, which
-	 * should contain a list of tasks data
+	 * Reads the root object, populating the task map and the task list from
+	 * the values of their keys in whichever order they appear.
 	 * 
-	 * @param taskList
-	 *            the list to populate loaded task names
-	 * @param tasksJson
-	 *            the json containing all tasks data
 	 * @throws StreamIOException
-	 *             if the json could not be parsed
+	 *             if either of the keys is missing or could not be parsed
 	 */
-	void loadTaskList(List<String> taskList, JSONObject tasksJson)
-			throws StreamIOException {
+	void loadTasks(JSONTokener tokener, Map<String, StreamTask> taskMap,
+			List<String> taskList) throws StreamIOException {
 		try {
-			JSONObject orderListJson = tasksJson
-					.getJSONObject(StreamIO.KEY_TASKLIST);
-			List<String> storedList = convertTaskList(orderListJson);
-			taskList.addAll(storedList);
+			boolean hasTaskMap = false;
+			boolean hasTaskList = false;
+			expect(tokener, '{');
+			do {
+				String key = tokener.nextValue().toString();
+				expect(tokener, ':');
+				switch (key) {
+					case StreamIO.KEY_TASKMAP:
+						loadTaskMap(tokener, taskMap);
+						hasTaskMap = true;
+						break;
+					case StreamIO.KEY_TASKLIST:
+						loadTaskList(tokener, taskList);
+						hasTaskList = true;
+						break;
+					case StreamIO.KEY_VERSION:
+						checkVersion(tokener.nextValue());
+						break;
+					default:
+						// unknown key, skip its value
+						tokener.nextValue();
+				}
+			} while (hasNext(tokener, '}'));
+			if (!hasTaskMap || !hasTaskList) {
+				throw new StreamIOException("Missing "
+						+ (hasTaskMap ? StreamIO.KEY_TASKLIST
+								: StreamIO.KEY_TASKMAP));
+			}
 		} catch (JSONException e) {
 			throw new StreamIOException(
 					"File corrupted, could not parse file contents - "
@@ -218,27 +330,123 @@ public class LoadIO implements Converter {
 	}
 
 	/**
-	 * Populate the task map with tasks from the json object given, which should
-	 * contain a list of tasks data
+	 * Populate the task list with task names from the tokener, which should
+	 * be positioned at the json array of task names. The names are read one
+	 * by one. The legacy json object of task names mapped to their index is
+	 * also accepted.
+	 * 
+	 * @param tokener
+	 *            the tokener positioned at the task list
+	 * @param taskList
+	 *            the list to populate loaded task names
+	 * @throws StreamIOException
+	 *             if the json could not be parsed
+	 */
+	void loadTaskList(JSONTokener tokener, List<String> taskList)
+			throws StreamIOException {
+		if (tokener.nextClean() != '[') {
+			tokener.back();
+			Object orderListJson = tokener.nextValue();
+			if (!(orderListJson instanceof JSONObject)) {
+				throw new StreamIOException("Task list is not an array");
+			}
+			taskList.addAll(convertTaskList(orderListJson));
+			return;
+		}
+		if (tokener.nextClean() == ']') {
+			return;
+		}
+		tokener.back();
+		do {
+			Object taskName = tokener.nextValue();
+			if (!(taskName instanceof String)) {
+				throw new StreamIOException("Task name is not a string");
+			}
+			taskList.add((String) taskName);
+		} while (hasNext(tokener, ']'));
+	}
+
+	private void checkVersion(Object version) throws StreamIOException {
+		if (!(version instanceof Integer)
+				|| (Integer) version > SaveIO.FORMAT_VERSION) {
+			throw new StreamIOException("Unsupported file format version - "
+					+ version);
+		}
+	}
+
+	/**
+	 * Populate the task map with tasks from the tokener, which should be
+	 * positioned at the array of tasks data. Each chunk of tasks is converted
+	 * in parallel as soon as it is read.
 	 * 
+	 * @param tokener
+	 *            the tokener positioned at the tasks array
 	 * @param taskMap
-	 *            the map to populate with loaded task names
-	 * @param tasksJson
-	 *            the json containing all tasks data
+	 *            the map to populate with loaded tasks
 	 * @throws StreamIOException
 	 *             if the json could not be parsed
 	 */
-	void loadTaskMap(Map<String, StreamTask> taskMap, JSONObject tasksJson)
+	void loadTaskMap(JSONTokener tokener, Map<String, StreamTask> taskMap)
 			throws StreamIOException {
+		expect(tokener, '[');
+		if (tokener.nextClean() == ']') {
+			return;
+		}
+		tokener.back();
+		List<ForkJoinTask<List<StreamTask>>> chunks = new ArrayList<ForkJoinTask<List<StreamTask>>>();
+		List<Object> chunk = new ArrayList<Object>(CHUNK_SIZE);
+		do {
+			Object taskJson = tokener.nextValue();
+			if (!(taskJson instanceof JSONObject)) {
+				throw new StreamIOException("Task is not an object");
+			}
+			chunk.add(taskJson);
+			if (chunk.size() == CHUNK_SIZE) {
+				chunks.add(pool.submit(new ConvertTasks(chunk, 0, CHUNK_SIZE)));
+				chunk = new ArrayList<Object>(CHUNK_SIZE);
+			}
+		} while (hasNext(tokener, ']'));
+		chunks.add(pool.submit(new ConvertTasks(chunk, 0, chunk.size())));
+
+		for (ForkJoinTask<List<StreamTask>> converted : chunks) {
+			putAll(taskMap, converted);
+		}
+	}
+
+	/**
+	 * Waits for the tasks to be converted, and puts them into the task map.
+	 */
+	private void putAll(Map<String, StreamTask> taskMap,
+			ForkJoinTask<List<StreamTask>> converted) throws StreamIOException {
+		List<StreamTask> tasks;
 		try {
-			JSONArray taskMapJson = tasksJson
-					.getJSONArray(StreamIO.KEY_TASKMAP);
-			HashMap<String, StreamTask> storedTasks = convertTaskMap(taskMapJson);
-			taskMap.putAll(storedTasks);
-		} catch (JSONException e) {
-			throw new StreamIOException(
-					"File corrupted, could not parse file contents - "
-							+ e.getMessage(), e);
+			tasks = converted.join();
+		} catch (ConversionFailure e) {
+			throw (StreamIOException) e.getCause();
+		}
+		for (StreamTask task : tasks) {
+			taskMap.put(task.getTaskName().toLowerCase(), task);
+		}
+	}
+
+	private void expect(JSONTokener tokener, char expected) {
+		if (tokener.nextClean() != expected) {
+			throw tokener.syntaxError("Expected '" + expected + "'");
+		}
+	}
+
+	/**
+	 * @return true if another element follows, false if the closing character
+	 *         has been reached.
+	 */
+	private boolean hasNext(JSONTokener tokener, char closing) {
+		char next = tokener.nextClean();
+		if (next == ',') {
+			return true;
+		} else if (next == closing) {
+			return false;
+		} else {
+			throw tokener.syntaxError("Expected ',' or '" + closing + "'");
 		}
 	}
 
@@ -1,15 +1,28 @@
 package fileio;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import model.StreamTask;
+import parser.RankParser;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -20,11 +33,85 @@ import exception.StreamIOException;
 //@author A0096529N
 /**
  * Handles saving-related processes and model-to-JSON conversions.
+ * 
+ * <p>
+ * The storage file is written by streaming each task straight to the file,
+ * field by field, so no JSON object tree is built for the whole state. The
+ * output is identical to serializing the trees from the Converter methods.
+ * </p>
+ * 
+ * <p>
+ * Since FORMAT_VERSION 2 the file carries its version and the task list is
+ * an array of names in display order. Version 1 files, without a version,
+ * mapped each index to a name in a json object.
+ * </p>
+ * 
+ * <p>
+ * The serialized form of each task is cached together with the task's
+ * version, so a save only encodes the tasks changed since the previous save
+ * and copies the cached fragments for the rest.
+ * </p>
+ * 
+ * <p>
+ * Unless written IN_PLACE, the storage file is replaced atomically: the data
+ * is written to a sibling temporary file which is then moved over the storage
+ * file, so a crash during the write leaves the previous file intact.
+ * </p>
  */
 public class SaveIO implements Converter {
 
+	private static final RankParser rp = RankParser.init();
+
+	/**
+	 * How the storage file is replaced on save.
+	 * <ul>
+	 * <li>IN_PLACE - truncates and rewrites the file, a crash mid-write leaves
+	 * a corrupt file</li>
+	 * <li>ATOMIC - writes a temporary file and moves it over the file</li>
+	 * <li>ATOMIC_FSYNC - as ATOMIC, and forces the data to disk before the
+	 * move so the new contents also survive a power failure</li>
+	 * </ul>
+	 */
+	public enum WriteMode {
+		IN_PLACE, ATOMIC, ATOMIC_FSYNC;
+	}
+
+	/**
+	 * Content to be written to a file.
+	 */
+	interface FileContent {
+		public void writeTo(OutputStream out) throws IOException;
+	}
+
+	static final String TEMP_EXTENSION = ".tmp";
+	static final int FORMAT_VERSION = 2;
+
 	private static SaveIO self = null;
 
+	// weak keys, so removed tasks drop out of the cache
+	private final Map<StreamTask, Fragment> fragments = new WeakHashMap<StreamTask, Fragment>();
+
+	private static class Fragment {
+		private final long version;
+		private final String json;
+
+		private Fragment(long version, String json) {
+			this.version = version;
+			this.json = json;
+		}
+	}
+
+	/*
+	 * org.json orders keys by the HashMap backing JSONObject, so the order is
+	 * taken from JSONObject itself to match its serialization on any JVM.
+	 */
+	private static final String[] ROOT_KEY_ORDER = getKeyOrder(
+			StreamIO.KEY_TASKMAP, StreamIO.KEY_TASKLIST, StreamIO.KEY_VERSION);
+	private static final String[] TASK_KEY_ORDER = getKeyOrder(
+			StreamIO.KEY_NAME, StreamIO.KEY_DESCRIPTION, StreamIO.KEY_TAGS,
+			StreamIO.KEY_RANK, StreamIO.KEY_STARTTIME, StreamIO.KEY_DEADLINE,
+			StreamIO.KEY_DONE);
+
 	@Override
 	@SuppressWarnings("unchecked")
 	public JSONArray convertTaskMap(Object map) throws StreamIOException {
@@ -40,27 +127,17 @@ public class SaveIO implements Converter {
 	@Override
 	@SuppressWarnings("unchecked")
 	/**
-	 * Converts a list of task names to json object with each task mapped to
-	 * their index in the list.
+	 * Converts a list of task names to a json array in the same order.
 	 * 
 	 * @param taskList
 	 *            the list to be converted to json format
-	 * @return taskListJson json with array of tasks mapped to their index
+	 * @return taskListJson json array of task names
 	 * @throws StreamIOException
 	 *             if the json could not be constructed
 	 */
-	public JSONObject convertTaskList(Object list) throws StreamIOException {
+	public JSONArray convertTaskList(Object list) throws StreamIOException {
 		List<String> taskList = (List<String>) list;
-		try {
-			JSONObject orderListJson = new JSONObject();
-			for (int i = 0; i < taskList.size(); i++) {
-				orderListJson.put(String.valueOf(i), taskList.get(i));
-			}
-			return orderListJson;
-		} catch (JSONException e) {
-			throw new StreamIOException("JSON conversion failed - "
-					+ e.getMessage(), e);
-		}
+		return new JSONArray(taskList);
 	}
 
 	@Override
@@ -71,10 +148,11 @@ public class SaveIO implements Converter {
 			taskJson.put(StreamIO.KEY_NAME, task.getTaskName());
 			taskJson.put(StreamIO.KEY_DESCRIPTION, task.getDescription());
 			taskJson.put(StreamIO.KEY_TAGS, task.getTags());
-			taskJson.put(StreamIO.KEY_RANK, task.getRank());
+			taskJson.put(StreamIO.KEY_RANK, rp.translate(task.getRank()));
 			taskJson.put(StreamIO.KEY_STARTTIME,
-					formatDate(task.getStartTime()));
-			taskJson.put(StreamIO.KEY_DEADLINE, formatDate(task.getDeadline()));
+					formatDate(task.startTimeMillis()));
+			taskJson.put(StreamIO.KEY_DEADLINE,
+					formatDate(task.deadlineMillis()));
 			taskJson.put(StreamIO.KEY_DONE, task.isDone());
 			return taskJson;
 		} catch (JSONException e) {
@@ -102,60 +180,284 @@ public class SaveIO implements Converter {
 		}
 	}
 
+	static String formatDate(long millis) {
+		if (millis == StreamTask.NO_TIME) {
+			return null;
+		} else {
+			return formatDate(new Date(millis));
+		}
+	}
+
 	static String formatDate(Date date) {
 		if (date == null) {
 			return null;
 		} else {
-			return StreamIO.dateFormat.format(date);
+			return StreamIO.dateFormat.get().format(date);
+		}
+	}
+
+	private static String[] getKeyOrder(String... keys) {
+		JSONObject sample = new JSONObject();
+		for (String key : keys) {
+			sample.put(key, true);
+		}
+		String[] keyOrder = new String[keys.length];
+		Iterator<?> sampleKeys = sample.keys();
+		for (int i = 0; i < keyOrder.length; i++) {
+			keyOrder[i] = (String) sampleKeys.next();
 		}
+		return keyOrder;
 	}
 
 	/**
-	 * Serialized the given JSONObject and writes to the specified File.
+	 * Serializes the tasks and writes them to the specified File.
 	 * 
-	 * @param destin
+	 * @param streamFile
 	 *            destination file to write the data
-	 * @param tasksJson
-	 *            JSONObject to be serialized
+	 * @param taskMap
+	 *            map of tasks to be saved
+	 * @param taskList
+	 *            list of task names
+	 * @param writeMode
+	 *            how the file is replaced
 	 * @throws IOException
 	 *             from file IO errors
 	 */
-	void writeToFile(File destin, JSONObject tasksJson) throws IOException {
-		FileWriter fwriter = new FileWriter(destin, false);
-		BufferedWriter bw = new BufferedWriter(fwriter);
-		try {
-			bw.write(tasksJson.toString());
-			bw.newLine();
+	void save(File streamFile, final Map<String, StreamTask> taskMap,
+			final List<String> taskList, WriteMode writeMode)
+			throws IOException {
+		writeFile(streamFile, writeMode, new FileContent() {
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				Writer writer = new OutputStreamWriter(out);
+				writeState(writer, taskMap, taskList);
+				writer.flush();
+			}
+		});
+	}
+
+	/**
+	 * Writes the content to the file according to the write mode. The file is
+	 * left untouched if writing the content fails, unless written IN_PLACE.
+	 * 
+	 * @param destin
+	 *            destination file to write the data
+	 * @param writeMode
+	 *            how the file is replaced
+	 * @param content
+	 *            the content to be written
+	 * @throws IOException
+	 *             from file IO errors, or from the content
+	 */
+	void writeFile(File destin, WriteMode writeMode, FileContent content)
+			throws IOException {
+		if (writeMode == WriteMode.IN_PLACE) {
+			try (OutputStream out = new BufferedOutputStream(
+					new FileOutputStream(destin, false))) {
+				content.writeTo(out);
+			}
+			return;
+		}
+
+		File temp = new File(destin.getPath() + TEMP_EXTENSION);
+		boolean isWritten = false;
+		try (FileChannel channel = FileChannel.open(temp.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			OutputStream out = new BufferedOutputStream(
+					Channels.newOutputStream(channel));
+			content.writeTo(out);
+			out.flush();
+			if (writeMode == WriteMode.ATOMIC_FSYNC) {
+				channel.force(true);
+			}
+			isWritten = true;
 		} finally {
-			try {
-				bw.close();
-			} catch (Exception e) {
-				// ignore exception
+			if (!isWritten) {
+				temp.delete();
+			}
+		}
+		replace(temp, destin, writeMode == WriteMode.ATOMIC_FSYNC);
+	}
+
+	private void replace(File source, File destin, boolean isForced)
+			throws IOException {
+		try {
+			Files.move(source.toPath(), destin.toPath(),
+					StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), destin.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		if (isForced) {
+			forceDirectory(destin.getAbsoluteFile().getParentFile());
+		}
+	}
+
+	/*
+	 * Makes the rename itself durable. Not all platforms allow a directory to
+	 * be opened, in which case the rename is left to the file system.
+	 */
+	private void forceDirectory(File directory) {
+		try (FileChannel channel = FileChannel.open(directory.toPath(),
+				StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// ignore, best effort only
+		}
+	}
+
+	void writeState(Writer writer, Map<String, StreamTask> taskMap,
+			List<String> taskList) throws IOException {
+		writer.write('{');
+		for (int i = 0; i < ROOT_KEY_ORDER.length; i++) {
+			if (i > 0) {
+				writer.write(',');
+			}
+			JSONObject.quote(ROOT_KEY_ORDER[i], writer);
+			writer.write(':');
+			switch (ROOT_KEY_ORDER[i]) {
+				case StreamIO.KEY_TASKMAP:
+					writeTaskMap(writer, taskMap);
+					break;
+				case StreamIO.KEY_TASKLIST:
+					writeTaskList(writer, taskList);
+					break;
+				default:
+					writer.write(String.valueOf(FORMAT_VERSION));
 			}
 		}
+		writer.write('}');
+		writer.write(System.lineSeparator());
 	}
 
-	void save(File streamFile, Map<String, StreamTask> taskMap,
-			List<String> taskList) throws StreamIOException, IOException {
-		JSONArray taskMapJson = convertTaskMap(taskMap);
-		JSONObject orderListJson = convertTaskList(taskList);
-		JSONObject tasksJson = new JSONObject();
-		tasksJson.put(StreamIO.KEY_TASKMAP, taskMapJson);
-		tasksJson.put(StreamIO.KEY_TASKLIST, orderListJson);
-		writeToFile(streamFile, tasksJson);
+	void writeTaskList(Writer writer, List<String> taskList)
+			throws IOException {
+		writer.write('[');
+		boolean first = true;
+		for (String taskName : taskList) {
+			if (!first) {
+				writer.write(',');
+			}
+			first = false;
+			JSONObject.quote(taskName, writer);
+		}
+		writer.write(']');
 	}
 
-	void saveLogFile(List<String> logMessages, String logFileName)
+	void writeTaskMap(Writer writer, Map<String, StreamTask> taskMap)
 			throws IOException {
-		FileWriter fwriter = new FileWriter(logFileName, true);
-		BufferedWriter bw = new BufferedWriter(fwriter);
+		writer.write('[');
+		boolean isFirst = true;
+		for (StreamTask task : taskMap.values()) {
+			if (!isFirst) {
+				writer.write(',');
+			}
+			writer.write(encodeTask(task));
+			isFirst = false;
+		}
+		writer.write(']');
+	}
+
+	/**
+	 * Gets the serialized form of a task, as written by writeTask. The cached
+	 * form is returned if the task has not changed since it was last encoded.
+	 * 
+	 * @param task
+	 *            task to be serialized
+	 * @return the task in JSON
+	 */
+	String encodeTask(StreamTask task) {
+		// read before encoding, a concurrent change only makes it stale
+		long version = task.version();
+		synchronized (fragments) {
+			Fragment fragment = fragments.get(task);
+			if (fragment != null && fragment.version == version) {
+				return fragment.json;
+			}
+		}
+		StringWriter writer = new StringWriter();
 		try {
-			for (int i = 0; i < logMessages.size(); i++) {
-				bw.write(logMessages.get(i));
-				bw.newLine();
+			writeTask(writer, task);
+		} catch (IOException shouldnthappen) {
+			// StringWriter does not throw
+		}
+		String json = writer.toString();
+		synchronized (fragments) {
+			fragments.put(task, new Fragment(version, json));
+		}
+		return json;
+	}
+
+	/**
+	 * Writes a task in the same form as convertTask(task).toString(), without
+	 * building the JSONObject. Absent fields are left out, as JSONObject does
+	 * with null values.
+	 * 
+	 * @param writer
+	 *            destination of the serialized task
+	 * @param task
+	 *            task to be serialized
+	 * @throws IOException
+	 *             from IO errors of the writer
+	 */
+	void writeTask(Writer writer, StreamTask task) throws IOException {
+		writer.write('{');
+		boolean isFirst = true;
+		for (String key : TASK_KEY_ORDER) {
+			Object value = getField(task, key);
+			if (value != null) {
+				if (!isFirst) {
+					writer.write(',');
+				}
+				JSONObject.quote(key, writer);
+				writer.write(':');
+				writeValue(writer, value);
+				isFirst = false;
 			}
-		} finally {
-			bw.close();
+		}
+		writer.write('}');
+	}
+
+	private Object getField(StreamTask task, String key) {
+		switch (key) {
+			case StreamIO.KEY_NAME:
+				return task.getTaskName();
+			case StreamIO.KEY_DESCRIPTION:
+				return task.getDescription();
+			case StreamIO.KEY_TAGS:
+				return task.getTags();
+			case StreamIO.KEY_RANK:
+				return rp.translate(task.getRank());
+			case StreamIO.KEY_STARTTIME:
+				return formatDate(task.startTimeMillis());
+			case StreamIO.KEY_DEADLINE:
+				return formatDate(task.deadlineMillis());
+			case StreamIO.KEY_DONE:
+				return task.isDone();
+			default:
+				return null;
+		}
+	}
+
+	private void writeValue(Writer writer, Object value) throws IOException {
+		if (value == null) {
+			writer.write("null");
+		} else if (value instanceof List) {
+			writer.write('[');
+			List<?> values = (List<?>) value;
+			for (int i = 0; i < values.size(); i++) {
+				if (i > 0) {
+					writer.write(',');
+				}
+				writeValue(writer, values.get(i));
+			}
+			writer.write(']');
+		} else if (value instanceof String) {
+			JSONObject.quote((String) value, writer);
+		} else {
+			writer.write(value.toString());
 		}
 	}
 
@@ -0,0 +1,338 @@
+package fileio;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import logger.Loggable;
+import model.StreamObject;
+import model.StreamTask;
+import exception.StreamIOException;
+
+//@author A0096529N
+/**
+ * <p>
+ * Hands saving of StreamObject over to a dedicated persistence thread, which
+ * coalesces bursts of save requests into a single write.
+ * </p>
+ *
+ * <h3>Durability modes</h3>
+ * <ul>
+ * <li>SYNC - saves on the calling thread before returning</li>
+ * <li>GROUP_COMMIT - saves in the background once the oldest unsaved change
+ * is older than the group commit interval, or once enough changes are
+ * pending</li>
+ * <li>ASYNC - saves in the background as soon as the previous write is done</li>
+ * </ul>
+ * <p>
+ * The persistence thread holds the StreamObject's monitor only to take a
+ * snapshot of the tasks, copying those modified since the previous snapshot,
+ * and encodes and writes the snapshot after releasing it. Callers modifying
+ * StreamObject should synchronize on it as well. flush() blocks until every
+ * requested save has been written, and saves on the calling thread if it
+ * holds the monitor, as the persistence thread could not take its snapshot.
+ * </p>
+ */
+public class SaveScheduler extends Loggable {
+
+	public enum DurabilityMode {
+		SYNC, GROUP_COMMIT, ASYNC;
+	}
+
+	static final long DEFAULT_GROUP_COMMIT_INTERVAL = 500;
+	static final int DEFAULT_GROUP_COMMIT_SIZE = 20;
+
+	private static final String THREAD_NAME = "Stream-Persistence";
+	private static final String LOG_SAVED = "Saved %1$s change(s) to file: %2$s";
+	private static final String LOG_SAVE_FAILED = "Background save failed - %1$s";
+
+	private StreamIO stio;
+	private StreamObject stobj;
+	// serializes writes of the calling and persistence threads
+	private final Object writeLock = new Object();
+	// live task to its latest copy, used only by the persistence thread
+	private IdentityHashMap<StreamTask, StreamTask> copies = new IdentityHashMap<StreamTask, StreamTask>();
+	private DurabilityMode mode = DurabilityMode.SYNC;
+	private long groupCommitInterval = DEFAULT_GROUP_COMMIT_INTERVAL;
+	private int groupCommitSize = DEFAULT_GROUP_COMMIT_SIZE;
+
+	// guarded by this
+	private long requested = 0;
+	private long written = 0;
+	private long firstPendingTime = 0;
+	private boolean isFlushing = false;
+	private StreamIOException lastFailure = null;
+	private Thread saveThread = null;
+
+	/**
+	 * The tasks and their order, as they were when the snapshot was taken.
+	 */
+	private static class Snapshot {
+		private final HashMap<String, StreamTask> taskMap;
+		private final ArrayList<String> taskList;
+
+		private Snapshot(HashMap<String, StreamTask> taskMap,
+				ArrayList<String> taskList) {
+			this.taskMap = taskMap;
+			this.taskList = taskList;
+		}
+	}
+
+	private SaveScheduler(StreamIO stio, StreamObject stobj) {
+		this.stio = stio;
+		this.stobj = stobj;
+	}
+
+	public static SaveScheduler init(StreamIO stio, StreamObject stobj) {
+		return new SaveScheduler(stio, stobj);
+	}
+
+	@Override
+	public String getComponentName() {
+		return "SAVESCHEDULER";
+	}
+
+	/**
+	 * Sets how saves are carried out. Pending saves are written out before
+	 * switching to SYNC.
+	 *
+	 * @param mode
+	 *            the durability mode to use for subsequent saves
+	 * @throws StreamIOException
+	 *             if pending saves could not be written
+	 */
+	public void setMode(DurabilityMode mode) throws StreamIOException {
+		if (mode == DurabilityMode.SYNC) {
+			flush();
+		}
+		synchronized (this) {
+			this.mode = mode;
+			notifyAll();
+		}
+	}
+
+	public synchronized DurabilityMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Sets when GROUP_COMMIT mode writes out pending changes.
+	 *
+	 * @param interval
+	 *            maximum time, in milliseconds, a change may remain unsaved
+	 * @param size
+	 *            number of pending changes that triggers an immediate write
+	 */
+	public synchronized void setGroupCommit(long interval, int size) {
+		this.groupCommitInterval = interval;
+		this.groupCommitSize = size;
+		notifyAll();
+	}
+
+	/**
+	 * Requests the current state of StreamObject to be saved. In SYNC mode
+	 * the state is saved before returning, otherwise the save is queued for
+	 * the persistence thread.
+	 *
+	 * @throws StreamIOException
+	 *             if the save failed in SYNC mode, or if a previous background
+	 *             save has failed since the last request.
+	 */
+	public void requestSave() throws StreamIOException {
+		if (getMode() == DurabilityMode.SYNC) {
+			synchronized (stobj) {
+				synchronized (writeLock) {
+					stio.save(stobj);
+				}
+			}
+			return;
+		}
+		synchronized (this) {
+			throwLastFailure();
+			if (requested == written) {
+				firstPendingTime = System.currentTimeMillis();
+			}
+			requested++;
+			startSaveThread();
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Blocks until every save requested so far has been written.
+	 *
+	 * @throws StreamIOException
+	 *             if a background save has failed
+	 */
+	public void flush() throws StreamIOException {
+		if (Thread.holdsLock(stobj)) {
+			saveHoldingMonitor();
+			return;
+		}
+		synchronized (this) {
+			long target = requested;
+			isFlushing = true;
+			notifyAll();
+			try {
+				while (written < target && lastFailure == null
+						&& saveThread != null) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				isFlushing = false;
+			}
+			throwLastFailure();
+		}
+	}
+
+	private void saveHoldingMonitor() throws StreamIOException {
+		long target;
+		synchronized (this) {
+			target = requested;
+		}
+		synchronized (writeLock) {
+			stio.save(stobj);
+			markWritten(target);
+		}
+	}
+
+	private void throwLastFailure() throws StreamIOException {
+		if (lastFailure != null) {
+			StreamIOException failure = lastFailure;
+			// the failed changes are still pending and will be retried
+			lastFailure = null;
+			notifyAll();
+			throw failure;
+		}
+	}
+
+	private void startSaveThread() {
+		if (saveThread == null) {
+			saveThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					runSaveLoop();
+				}
+			}, THREAD_NAME);
+			saveThread.setDaemon(true);
+			saveThread.start();
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					try {
+						flush();
+					} catch (StreamIOException e) {
+						logError(LOG_SAVE_FAILED, e.getMessage());
+					}
+				}
+			});
+		}
+	}
+
+	private void runSaveLoop() {
+		while (true) {
+			long target;
+			try {
+				target = awaitNextWrite();
+			} catch (InterruptedException e) {
+				return;
+			}
+			try {
+				Snapshot snapshot = takeSnapshot();
+				synchronized (writeLock) {
+					// skipped if a newer state was saved in the meantime
+					if (getWritten() < target) {
+						stio.save(snapshot.taskMap, snapshot.taskList);
+						markWritten(target);
+					}
+				}
+			} catch (StreamIOException e) {
+				logError(LOG_SAVE_FAILED, e.getMessage());
+				synchronized (this) {
+					lastFailure = e;
+					notifyAll();
+					try {
+						// wait for the next request before retrying
+						while (lastFailure != null) {
+							wait();
+						}
+					} catch (InterruptedException ie) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies the tasks and their order under the StreamObject's monitor.
+	 * Tasks unchanged since the previous snapshot keep their previous copy.
+	 */
+	private Snapshot takeSnapshot() {
+		synchronized (stobj) {
+			HashMap<String, StreamTask> liveMap = stobj.getTaskMap();
+			HashMap<String, StreamTask> taskMap = new HashMap<String, StreamTask>(
+					liveMap.size() * 4 / 3 + 1);
+			IdentityHashMap<StreamTask, StreamTask> current = new IdentityHashMap<StreamTask, StreamTask>(
+					liveMap.size());
+			for (Map.Entry<String, StreamTask> entry : liveMap.entrySet()) {
+				StreamTask task = entry.getValue();
+				StreamTask copy = copies.get(task);
+				if (copy == null || copy.version() != task.version()) {
+					copy = task.snapshot();
+				}
+				current.put(task, copy);
+				taskMap.put(entry.getKey(), copy);
+			}
+			copies = current;
+			return new Snapshot(taskMap, stobj.getTaskListCopy());
+		}
+	}
+
+	private synchronized long getWritten() {
+		return written;
+	}
+
+	private void markWritten(long target) throws StreamIOException {
+		String saveLocation = stio.getSaveLocation();
+		synchronized (this) {
+			if (target > written) {
+				logDebug(LOG_SAVED, target - written, saveLocation);
+				written = target;
+			}
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until pending saves are due, according to the durability mode.
+	 *
+	 * @return the request count covered by the next write
+	 */
+	private synchronized long awaitNextWrite() throws InterruptedException {
+		while (true) {
+			if (requested > written) {
+				long waitTime = getGroupCommitWaitTime();
+				if (waitTime <= 0) {
+					return requested;
+				}
+				wait(waitTime);
+			} else {
+				wait();
+			}
+		}
+	}
+
+	private long getGroupCommitWaitTime() {
+		if (mode != DurabilityMode.GROUP_COMMIT || isFlushing
+				|| requested - written >= groupCommitSize) {
+			return 0;
+		}
+		return firstPendingTime + groupCommitInterval
+				- System.currentTimeMillis();
+	}
+
+}
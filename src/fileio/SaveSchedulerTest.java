@@ -0,0 +1,126 @@
+package fileio;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import model.StreamObject;
+import model.StreamTask;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fileio.SaveScheduler.DurabilityMode;
+
+//@author A0096529N
+
+public class SaveSchedulerTest {
+
+	private static final String TEST_SAVE_FILENAME = "streamschedulertest";
+	private static final long TEST_TIMEOUT = 10000;
+	// long enough that only flush() gets the write out during the test
+	private static final long LONG_INTERVAL = 60000;
+
+	private StreamIO stio;
+	private StreamObject stobj;
+	private SaveScheduler scheduler;
+
+	@Before
+	public void setUp() throws Exception {
+		stio = StreamIO.init(TEST_SAVE_FILENAME);
+		new File(stio.getSaveLocation()).delete();
+		stobj = StreamObject.init();
+		scheduler = SaveScheduler.init(stio, stobj);
+		scheduler.setGroupCommit(LONG_INTERVAL, Integer.MAX_VALUE);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		new File(stio.getSaveLocation()).delete();
+	}
+
+	@Test(timeout = TEST_TIMEOUT)
+	public void syncFlushTest() throws Exception {
+		scheduler.setMode(DurabilityMode.SYNC);
+		addTask("Code Jarvis");
+		scheduler.requestSave();
+		scheduler.flush();
+		assertSaved("Flush in SYNC mode");
+	}
+
+	@Test(timeout = TEST_TIMEOUT)
+	public void groupCommitFlushTest() throws Exception {
+		scheduler.setMode(DurabilityMode.GROUP_COMMIT);
+		addTask("Code Jarvis");
+		scheduler.requestSave();
+		addTask("Build IoT");
+		scheduler.requestSave();
+		scheduler.flush();
+		assertSaved("Flush in GROUP_COMMIT mode");
+	}
+
+	@Test(timeout = TEST_TIMEOUT)
+	public void asyncFlushTest() throws Exception {
+		scheduler.setMode(DurabilityMode.ASYNC);
+		addTask("Code Jarvis");
+		scheduler.requestSave();
+		addTask("Build IoT");
+		scheduler.requestSave();
+		scheduler.flush();
+		assertSaved("Flush in ASYNC mode");
+	}
+
+	/*
+	 * Flushing while holding the StreamObject's monitor, as exiting from
+	 * within a command once did, must not wait on the persistence thread.
+	 */
+	@Test(timeout = TEST_TIMEOUT)
+	public void flushHoldingMonitorTest() throws Exception {
+		scheduler.setMode(DurabilityMode.GROUP_COMMIT);
+		synchronized (stobj) {
+			addTask("Code Jarvis");
+			scheduler.requestSave();
+			scheduler.flush();
+		}
+		assertSaved("Flush holding monitor");
+
+		addTask("Build IoT");
+		scheduler.requestSave();
+		scheduler.flush();
+		assertSaved("Flush after flush holding monitor");
+	}
+
+	@Test(timeout = TEST_TIMEOUT)
+	public void modifiedDuringSaveTest() throws Exception {
+		scheduler.setMode(DurabilityMode.ASYNC);
+		for (int i = 0; i < 50; i++) {
+			synchronized (stobj) {
+				addTask("Task " + i);
+				stobj.get("Task 0").setDescription("Revision " + i);
+			}
+			scheduler.requestSave();
+		}
+		scheduler.flush();
+		assertSaved("Tasks modified while saving in background");
+	}
+
+	private void addTask(String taskName) {
+		synchronized (stobj) {
+			stobj.put(taskName, new StreamTask(taskName));
+		}
+	}
+
+	private void assertSaved(String testMessage) throws Exception {
+		StreamObject loaded = StreamObject.init();
+		stio.load(loaded);
+		synchronized (stobj) {
+			assertEquals(testMessage, stobj.getTaskList(), loaded.getTaskList());
+			for (String taskName : stobj.getTaskList()) {
+				assertEquals(testMessage, stobj.get(taskName).getDescription(),
+						loaded.get(taskName).getDescription());
+			}
+		}
+	}
+
+}
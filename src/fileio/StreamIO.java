@@ -5,9 +5,12 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 
 import logger.Loggable;
+import logger.StreamLogger;
+import logger.StreamMetrics;
 import model.StreamObject;
 import model.StreamTask;
 
@@ -25,7 +28,21 @@ import exception.StreamIOException;
  * 
  * <h3>Storage Format</h3>
  * <p>
- * Application state is serialized into JSON format.
+ * Application state is serialized into JSON format by default, or into a
+ * compact binary format (see BinarySaveIO). Binary files are kept beside the
+ * JSON file under their own extension, so that a file named .json always
+ * holds JSON. Load reads whichever of the two was saved last, so a JSON file
+ * is migrated to the binary format on the first save after switching, and
+ * the JSON file is left as it was.
+ * </p>
+ * <p>
+ * In journaled mode, each save appends only the changed tasks to a journal
+ * file beside the storage file. The journal is replayed on load and folded
+ * back into the storage file once it grows past a size threshold.
+ * </p>
+ * <p>
+ * The storage file is replaced atomically by default, and forced to disk
+ * before being replaced. See SaveIO.WriteMode for the trade-offs.
  * </p>
  * 
  * <h3>Storage Location</h3>
@@ -41,8 +58,12 @@ import exception.StreamIOException;
  * <li>StreamIO.load(Map&lt;String, StreamTask&gt; taskMap, List&lt;String&gt;
  * taskList)</li>
  * <li>StreamIO.setFilename()</li>
+ * <li>StreamIO.setJournaled(boolean isJournaled)</li>
+ * <li>StreamIO.setJournalThreshold(long journalThreshold)</li>
+ * <li>StreamIO.setWriteMode(SaveIO.WriteMode writeMode)</li>
+ * <li>StreamIO.setStorageFormat(StorageFormat storageFormat)</li>
  * <li>StreamIO.setSaveLocation(String saveLocation)</li>
- * <li>StreamIO.saveLogFile(List&lt;String&gt; logMessages, String logFileName)</li>
+ * <li>StreamIO.startLogFile()</li>
  * </ul>
  * <p>
  * Refer to method documentation for details.
@@ -50,6 +71,10 @@ import exception.StreamIOException;
  */
 public class StreamIO extends Loggable {
 
+	public enum StorageFormat {
+		JSON, BINARY;
+	}
+
 	static final String KEY_TASKMAP = "allTasks";
 	static final String KEY_TASKLIST = "taskList";
 	static final String KEY_STARTTIME = "startTime";
@@ -59,13 +84,33 @@ public class StreamIO extends Loggable {
 	static final String KEY_TAGS = "tags";
 	static final String KEY_DONE = "done";
 	static final String KEY_RANK = "rank";
+	static final String KEY_VERSION = "version";
+
+	// SimpleDateFormat is not thread-safe, so each thread gets its own
+	static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("yyyyMMddHHmmss", Locale.ENGLISH);
+		}
+	};
+	static final long DEFAULT_JOURNAL_THRESHOLD = 1024 * 1024;
+	static final String OPERATION_SAVE = "SAVE";
+	static final String VALUE_TASKS = "tasks";
+	static final String JSON_EXTENSION = ".json";
+	static final String BINARY_EXTENSION = ".strm";
 
-	static final SimpleDateFormat dateFormat = new SimpleDateFormat(
-			"yyyyMMddHHmmss", Locale.ENGLISH);
 	String STREAM_FILENAME = "default.json";
+	private boolean isJournaled = false;
+	private long journalThreshold = DEFAULT_JOURNAL_THRESHOLD;
+	private JournalIO journal = null;
+	private SaveIO.WriteMode writeMode = SaveIO.WriteMode.ATOMIC_FSYNC;
+	private StorageFormat storageFormat = StorageFormat.JSON;
 
 	static SaveIO saver = SaveIO.init();
 	static LoadIO loader = LoadIO.init();
+	static BinarySaveIO binarySaver = BinarySaveIO.init();
+	static BinaryLoadIO binaryLoader = BinaryLoadIO.init();
+	static StreamMetrics metrics = StreamMetrics.init();
 
 	private StreamIO(String filename) {
 		this.STREAM_FILENAME = filename;
@@ -90,13 +135,27 @@ public class StreamIO extends Loggable {
 	 */
 	public void load(StreamObject stobj) throws StreamIOException {
 		try {
-			File streamFile = new File(getStorageFile(STREAM_FILENAME));
+			File streamFile = getLoadFile();
 			HashMap<String, StreamTask> taskMap = new HashMap<String, StreamTask>();
 			ArrayList<String> taskList = new ArrayList<String>();
-			loader.load(streamFile, taskMap, taskList);
-			stobj.setTaskList(taskList);
+			if (binaryLoader.isBinary(streamFile)) {
+				binaryLoader.load(streamFile, taskMap, taskList);
+			} else {
+				loader.load(streamFile, taskMap, taskList);
+			}
+			boolean isReplayed = getJournal(streamFile).replay(taskMap,
+					taskList);
 			stobj.setTaskMap(taskMap);
-			logDebug("Loaded file: " + STREAM_FILENAME);
+			stobj.setTaskList(taskList);
+			logDebug("Loaded file: " + streamFile.getName());
+			if (isJournaled) {
+				if (isReplayed) {
+					journal.reset(taskMap, taskList);
+				} else {
+					// stale or torn journal, start over from current state
+					compact(getSaveFile(), taskMap, taskList);
+				}
+			}
 		} catch (JSONException e) {
 			logDebug("JSON conversion failed: " + STREAM_FILENAME);
 			throw new StreamIOException(
@@ -121,11 +180,34 @@ public class StreamIO extends Loggable {
 	 *             when loading/accessing storage file.
 	 */
 	public void save(StreamObject stobj) throws StreamIOException {
+		save(stobj.getTaskMap(), stobj.getTaskList());
+	}
+
+	/**
+	 * Serializes and write the given tasks into storage file, such as a
+	 * snapshot of StreamObject taken by SaveScheduler.
+	 * 
+	 * @param taskMap
+	 *            map of tasks to be saved
+	 * @param taskList
+	 *            list of task names
+	 * @throws StreamIOException
+	 *             when JSON conversion fail or IO failures when
+	 *             accessing storage file.
+	 */
+	void save(HashMap<String, StreamTask> taskMap, List<String> taskList)
+			throws StreamIOException {
+		long start = System.nanoTime();
 		try {
-			File streamFile = new File(getStorageFile(STREAM_FILENAME));
-			HashMap<String, StreamTask> taskMap = stobj.getTaskMap();
-			ArrayList<String> taskList = stobj.getTaskList();
-			saver.save(streamFile, taskMap, taskList);
+			File streamFile = getSaveFile();
+			if (isJournaled) {
+				saveToJournal(streamFile, taskMap, taskList);
+			} else {
+				writeSnapshot(streamFile, taskMap, taskList);
+				getJournal(streamFile).discard();
+			}
+			metrics.record(OPERATION_SAVE, System.nanoTime() - start);
+			metrics.setValue(VALUE_TASKS, taskList.size());
 			logDebug("Saved to file: " + getSaveLocation());
 		} catch (JSONException e) {
 			logDebug("JSON conversion failed during save - " + e.getMessage());
@@ -138,6 +220,134 @@ public class StreamIO extends Loggable {
 		}
 	}
 
+	private void saveToJournal(File streamFile,
+			HashMap<String, StreamTask> taskMap, List<String> taskList)
+			throws StreamIOException, IOException {
+		JournalIO journal = getJournal(streamFile);
+		if (!journal.isInitialized() || journal.length() > journalThreshold) {
+			compact(streamFile, taskMap, taskList);
+		} else {
+			journal.append(taskMap, taskList);
+		}
+	}
+
+	/**
+	 * Writes the full state into the storage file and starts a new journal.
+	 */
+	private void compact(File streamFile, HashMap<String, StreamTask> taskMap,
+			List<String> taskList) throws StreamIOException, IOException {
+		writeSnapshot(streamFile, taskMap, taskList);
+		JournalIO journal = getJournal(streamFile);
+		journal.startNew();
+		journal.reset(taskMap, taskList);
+		logDebug("Compacted journal into file: " + STREAM_FILENAME);
+	}
+
+	private void writeSnapshot(File streamFile,
+			HashMap<String, StreamTask> taskMap, List<String> taskList)
+			throws IOException {
+		if (storageFormat == StorageFormat.BINARY) {
+			binarySaver.save(streamFile, taskMap, taskList, writeMode);
+		} else {
+			saver.save(streamFile, taskMap, taskList, writeMode);
+		}
+	}
+
+	/**
+	 * @return the storage file of the current format
+	 */
+	private File getSaveFile() throws StreamIOException {
+		return getStorageFile(storageFormat);
+	}
+
+	/**
+	 * @return the storage file of the current format, or the one of the
+	 *         other format if that was saved more recently, such as the JSON
+	 *         file of an earlier version before the first binary save
+	 */
+	private File getLoadFile() throws StreamIOException {
+		File saveFile = getSaveFile();
+		File otherFile = getStorageFile(storageFormat == StorageFormat.JSON ? StorageFormat.BINARY
+				: StorageFormat.JSON);
+		if (getLastSaved(otherFile) > getLastSaved(saveFile)) {
+			return otherFile;
+		}
+		return saveFile;
+	}
+
+	private long getLastSaved(File streamFile) {
+		// lastModified is 0 for a missing file
+		return Math.max(streamFile.lastModified(), new File(
+				streamFile.getPath() + JournalIO.JOURNAL_EXTENSION)
+				.lastModified());
+	}
+
+	private File getStorageFile(StorageFormat format)
+			throws StreamIOException {
+		String filename = STREAM_FILENAME;
+		if (format == StorageFormat.BINARY) {
+			if (filename.endsWith(JSON_EXTENSION)) {
+				filename = filename.substring(0, filename.length()
+						- JSON_EXTENSION.length());
+			}
+			filename += BINARY_EXTENSION;
+		}
+		return new File(getStorageFile(filename));
+	}
+
+	private JournalIO getJournal(File streamFile) {
+		if (journal == null || !journal.isFor(streamFile)) {
+			journal = new JournalIO(streamFile);
+		}
+		journal.setForced(writeMode == SaveIO.WriteMode.ATOMIC_FSYNC);
+		return journal;
+	}
+
+	/**
+	 * Set whether saves are appended to a journal instead of rewriting the
+	 * storage file.
+	 * 
+	 * @param isJournaled
+	 *            true to enable journaled saving
+	 */
+	public void setJournaled(boolean isJournaled) {
+		this.isJournaled = isJournaled;
+	}
+
+	/**
+	 * Set the journal size, in bytes, above which the journal is folded back
+	 * into the storage file.
+	 * 
+	 * @param journalThreshold
+	 *            size of journal that triggers compaction
+	 */
+	public void setJournalThreshold(long journalThreshold) {
+		this.journalThreshold = journalThreshold;
+	}
+
+	/**
+	 * Set how the storage file is replaced on save. Journal appends are also
+	 * forced to disk in ATOMIC_FSYNC mode.
+	 * 
+	 * @param writeMode
+	 *            write mode for subsequent saves
+	 */
+	public void setWriteMode(SaveIO.WriteMode writeMode) {
+		this.writeMode = writeMode;
+	}
+
+	/**
+	 * Set the format the storage file is written in. Binary files are saved
+	 * under BINARY_EXTENSION in place of the JSON extension. Loading reads
+	 * the file saved last and detects its format regardless of this setting.
+	 * 
+	 * @param storageFormat
+	 *            format for subsequent saves
+	 */
+	public void setStorageFormat(StorageFormat storageFormat) {
+		this.storageFormat = storageFormat;
+	}
+
 	/**
 	 * Set the filename for saving.
 	 * 
@@ -149,13 +359,14 @@ public class StreamIO extends Loggable {
 	}
 
 	/**
-	 * Get the absolute path of save file's location
+	 * Get the absolute path of save file's location, for the current storage
+	 * format
 	 * 
 	 * @return file path of the save location.
 	 * @throws StreamIOException
 	 */
 	public String getSaveLocation() throws StreamIOException {
-		return new File(getStorageFile(STREAM_FILENAME)).getAbsolutePath();
+		return getSaveFile().getAbsolutePath();
 	}
 
 	private String getUserHomeDirectory() {
@@ -163,9 +374,8 @@ public class StreamIO extends Loggable {
 		try {
 			dir = System.getProperty("user.home");
 		} catch (Exception e) {
-			logError(String.format(
-					StreamConstants.LogMessage.LOAD_FAIL_USER_HOME, e
-							.getClass().getSimpleName(), e.getMessage()));
+			logError(StreamConstants.LogMessage.LOAD_FAIL_USER_HOME,
+					e.getClass().getSimpleName(), e.getMessage());
 		}
 		return dir == null ? "" : dir + File.separator;
 	}
@@ -197,30 +407,15 @@ public class StreamIO extends Loggable {
 		return dir;
 	}
 
-	private String getLogsStorageFile(String logFileName)
-			throws StreamIOException {
-		return getLogsDirectory() + logFileName;
-	}
-
-	//@author A0093874N
+	//@author A0096529N
 	/**
-	 * Saves the log file upon exiting.
+	 * Starts writing log messages into daily log files in the logs directory.
 	 * 
-	 * @param logMessages
-	 *            - the list of log messages to be stored
-	 * @param logFileName
-	 *            - the name of the log file
 	 * @throws StreamIOException
-	 *             if IO failures encountered during accessing of log file.
+	 *             if the logs directory could not be created.
 	 */
-	public void saveLogFile(ArrayList<String> logMessages, String logFileName)
-			throws StreamIOException {
-		try {
-			saver.saveLogFile(logMessages, getLogsStorageFile(logFileName));
-		} catch (IOException e) {
-			throw new StreamIOException(
-					StreamConstants.ExceptionMessage.ERR_SAVE_LOG, e);
-		}
+	public void startLogFile() throws StreamIOException {
+		StreamLogger.startWriter(getLogsDirectory());
 	}
 
 }
\ No newline at end of file
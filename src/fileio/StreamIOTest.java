@@ -1,22 +1,35 @@
 package fileio;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.file.Files;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 
 import model.StreamObject;
 import model.StreamTask;
+import parser.RankParser.RankType;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Before;
@@ -35,7 +48,7 @@ public class StreamIOTest {
 			+ "- %1$s\nDelete the file if already present.";
 	private static final String CHECK_FILE = "streamtestCheckFile.json";
 	private static final String TEST_SAVE_FILENAME = "streamtest";
-	private SimpleDateFormat simpleDateFormat = StreamIO.dateFormat;
+	private SimpleDateFormat simpleDateFormat = StreamIO.dateFormat.get();
 	private StreamTask task1, task2;
 	private StreamIO stio;
 	private StreamObject stobj = StreamObject.init();
@@ -44,7 +57,7 @@ public class StreamIOTest {
 	public void setUp() throws Exception {
 		task1 = new StreamTask("Code Jarvis");
 		Calendar calendar = Calendar.getInstance();
-		Date date = StreamIO.dateFormat.parse("20410719000000");
+		Date date = StreamIO.dateFormat.get().parse("20410719000000");
 		calendar.setTime(date); // instead of Calendar.set(), for loadTest,
 		// serialized calendar.
 		task1.setDeadline(calendar);
@@ -54,7 +67,7 @@ public class StreamIOTest {
 
 		task2 = new StreamTask("Build IoT");
 		Calendar calendar2 = Calendar.getInstance();
-		Date date2 = StreamIO.dateFormat.parse("20180101123456");
+		Date date2 = StreamIO.dateFormat.get().parse("20180101123456");
 		calendar2.setTime(date2); // instead of Calendar.set(), for loadTest,
 		// serialized calendar.
 		task2.setDeadline(calendar2);
@@ -99,7 +112,11 @@ public class StreamIOTest {
 	@After
 	public void tearDown() throws Exception {
 		stio.setFilename(TEST_SAVE_FILENAME);
-		new File(stio.getSaveLocation()).delete();
+		for (StreamIO.StorageFormat format : StreamIO.StorageFormat.values()) {
+			stio.setStorageFormat(format);
+			new File(stio.getSaveLocation()).delete();
+			journalFile().delete();
+		}
 		stio.setFilename(CHECK_FILE);
 		new File(stio.getSaveLocation()).delete();
 	}
@@ -111,13 +128,13 @@ public class StreamIOTest {
 	@Test
 	public void saveTest() {
 		String testMessage = "Write map to file";
-		String expectedFileContent = "{\"taskList\":{\"1\":\"Build IoT\",\"0\":\"Code Jarvis\"},"
+		String expectedFileContent = "{\"taskList\":[\"Code Jarvis\",\"Build IoT\"],"
 				+ "\"allTasks\":[{\"tags\":[\"EPIC\",\"IMPOSSIBLE\"],\"rank\":\"low\",\"done\":false,\"deadline\":\"20410719000000\","
 				+ "\"taskName\":\"Code Jarvis\","
 				+ "\"taskDescription\":\"Just\\na\\nRather\\nVery\\nIntelligent\\nSystem\"},"
 				+ "{\"tags\":[\"EPIC\",\"POPULAR\",\"URGENT\"],\"rank\":\"low\",\"done\":false,\"deadline\":\"20180101123456\","
 				+ "\"taskName\":\"Build IoT\","
-				+ "\"taskDescription\":\"Internet of Things\"}]}";
+				+ "\"taskDescription\":\"Internet of Things\"}],\"version\":2}";
 		try {
 			File saveFile = new File(stio.getSaveLocation());
 			stio.save(stobj);
@@ -153,6 +170,509 @@ public class StreamIOTest {
 		}
 	}
 
+	@Test
+	public void taskFragmentCacheTest() {
+		String encoded = StreamIO.saver.encodeTask(task1);
+		assertSame("Unchanged task reuses fragment", encoded,
+				StreamIO.saver.encodeTask(task1));
+
+		task1.getTags().add("LEGENDARY");
+		String tagged = StreamIO.saver.encodeTask(task1);
+		assertNotSame("Tag change invalidates fragment", encoded, tagged);
+		assertTrue("Fragment has new tag", tagged.contains("LEGENDARY"));
+
+		task1.getTags().remove("LEGENDARY");
+		assertEquals("Tag removal invalidates fragment", encoded,
+				StreamIO.saver.encodeTask(task1));
+
+		task1.setRank(RankType.HI);
+		assertTrue("Rank change invalidates fragment", StreamIO.saver
+				.encodeTask(task1).contains("\"high\""));
+	}
+
+	@Test
+	public void nullTagFragmentTest() {
+		task1.getTags().add(null);
+		assertTrue("Null tag written as null", StreamIO.saver
+				.encodeTask(task1).contains("\"IMPOSSIBLE\",null]"));
+	}
+
+	@Test
+	public void binarySaveLoadTest() throws Exception {
+		String testMessage = "Save and load in binary format";
+		task2.setStartTime(Calendar.getInstance());
+		task2.markAsDone();
+		task2.setRank(RankType.HI);
+		stio.setStorageFormat(StreamIO.StorageFormat.BINARY);
+		File saveFile = new File(stio.getSaveLocation());
+		stio.save(stobj);
+		assertTrue(testMessage + " - header",
+				StreamIO.binaryLoader.isBinary(saveFile));
+
+		StreamObject loaded = StreamObject.init();
+		stio.load(loaded);
+		assertEquals(testMessage, serializeTaskMap(stobj.getTaskMap()),
+				serializeTaskMap(loaded.getTaskMap()));
+		assertEquals(testMessage, stobj.getTaskList(), loaded.getTaskList());
+	}
+
+	@Test
+	public void lazyLoadTest() throws Exception {
+		String testMessage = "Lazily loaded task";
+		stio.setStorageFormat(StreamIO.StorageFormat.BINARY);
+		stio.save(stobj);
+		StreamObject loaded = StreamObject.init();
+		stio.load(loaded);
+
+		StreamTask task = loaded.get(task1.getTaskName());
+		assertEquals(testMessage, task1.getTaskName(), task.getTaskName());
+		assertEquals(testMessage, task1.getDescription(),
+				task.getDescription());
+		assertEquals(testMessage, task1.getTags(), task.getTags());
+		assertEquals("Loading does not modify task", 0, task.version());
+	}
+
+	@Test
+	public void unloadedTaskCopyTest() throws Exception {
+		String testMessage = "Unloaded tasks saved without decoding";
+		byte[] converted = StreamIO.binarySaver.convertTaskMap(stobj
+				.getTaskMap());
+		// converted tasks are not loaded in the background
+		HashMap<String, StreamTask> unloaded = StreamIO.binaryLoader
+				.convertTaskMap(converted);
+		assertTrue(testMessage, Arrays.equals(converted,
+				StreamIO.binarySaver.convertTaskMap(unloaded)));
+		for (StreamTask task : unloaded.values()) {
+			assertTrue(testMessage + " - still unloaded",
+					task.pendingLoader() != null);
+		}
+
+		stio.setStorageFormat(StreamIO.StorageFormat.BINARY);
+		stio.save(stobj);
+		StreamObject loaded = StreamObject.init();
+		stio.load(loaded);
+		loaded.get(task2.getTaskName()).getTags().remove("EPIC");
+		stio.save(loaded);
+		StreamObject reloaded = StreamObject.init();
+		stio.load(reloaded);
+		assertEquals(testMessage, serializeTaskMap(loaded.getTaskMap()),
+				serializeTaskMap(reloaded.getTaskMap()));
+	}
+
+	@Test
+	public void version1BinaryTest() throws Exception {
+		String testMessage = "Load version 1 binary file";
+		stio.setStorageFormat(StreamIO.StorageFormat.BINARY);
+		File saveFile = new File(stio.getSaveLocation());
+		try (DataOutputStream out = new DataOutputStream(
+				new FileOutputStream(saveFile))) {
+			out.write(BinarySaveIO.MAGIC);
+			out.writeByte(BinarySaveIO.FORMAT_VERSION_1);
+			// tag dictionary
+			out.writeByte(1);
+			writeShortString(out, "EPIC");
+			// task records, body inline after the name
+			out.writeByte(2);
+			writeShortString(out, "Code Jarvis");
+			out.writeByte(BinarySaveIO.FLAG_DESCRIPTION
+					| BinarySaveIO.FLAG_DEADLINE | BinarySaveIO.FLAG_DONE);
+			writeShortString(out, "Just");
+			out.writeLong(task1.deadlineMillis());
+			out.writeByte(1); // high
+			out.writeByte(1);
+			out.writeByte(0);
+			writeShortString(out, "Build IoT");
+			out.writeByte(0);
+			out.writeByte(BinarySaveIO.RANK_TEXT);
+			writeShortString(out, "medium");
+			out.writeByte(0);
+			// task list, referring to the records
+			out.writeByte(2);
+			out.writeByte(1);
+			out.writeByte(2);
+		}
+
+		StreamObject loaded = StreamObject.init();
+		stio.load(loaded);
+		assertEquals(testMessage, Arrays.asList("Code Jarvis", "Build IoT"),
+				loaded.getTaskList());
+		StreamTask task = loaded.get("Code Jarvis");
+		assertEquals(testMessage, "Just", task.getDescription());
+		assertEquals(testMessage, task1.deadlineMillis(),
+				task.deadlineMillis());
+		assertTrue(testMessage, task.isDone());
+		assertEquals(testMessage, RankType.HI, task.getRank());
+		assertEquals(testMessage, Arrays.asList("EPIC"), task.getTags());
+		assertEquals("Loading does not modify task", 0, task.version());
+		assertEquals(testMessage, RankType.MED, loaded.get("Build IoT")
+				.getRank());
+	}
+
+	private void writeShortString(DataOutputStream out, String value)
+			throws IOException {
+		out.writeByte(value.length());
+		out.writeBytes(value);
+	}
+
+	@Test(expected = StreamIOException.class)
+	public void corruptTaskBodyTest() throws Exception {
+		stio.setStorageFormat(StreamIO.StorageFormat.BINARY);
+		File saveFile = new File(stio.getSaveLocation());
+		stio.save(stobj);
+		byte[] saved = Files.readAllBytes(saveFile.toPath());
+		// the last byte is a tag id of the last task body
+		saved[saved.length - 1] = 0x7F;
+		Files.write(saveFile.toPath(), saved);
+		stio.load(StreamObject.init());
+	}
+
+	@Test
+	public void journaledBinaryTest() throws Exception {
+		String testMessage = "Journal on top of binary file";
+		stio.setStorageFormat(StreamIO.StorageFormat.BINARY);
+		File saveFile = new File(stio.getSaveLocation());
+		stio.setJournaled(true);
+		try {
+			stio.save(stobj);
+			StreamObject loaded = StreamObject.init();
+			stio.load(loaded);
+			loaded.get(task2.getTaskName()).getTags().add("SHIPPED");
+			stio.save(loaded);
+			assertTrue(testMessage + " - journal written", new File(
+					saveFile.getPath() + JournalIO.JOURNAL_EXTENSION).exists());
+
+			StreamObject reloaded = StreamObject.init();
+			stio.load(reloaded);
+			assertEquals(testMessage, serializeTaskMap(loaded.getTaskMap()),
+					serializeTaskMap(reloaded.getTaskMap()));
+		} finally {
+			stio.setJournaled(false);
+			new File(saveFile.getPath() + JournalIO.JOURNAL_EXTENSION)
+					.delete();
+		}
+	}
+
+	@Test
+	public void journalRecordsTest() throws Exception {
+		String testMessage = "Journal records replayed on load";
+		stio.setJournaled(true);
+		try {
+			stio.save(stobj);
+			StreamTask task3 = new StreamTask("Write docs");
+			stobj.put(task3.getTaskName(), task3, 0);
+			stobj.remove(task1.getTaskName());
+			task2.setDescription("Internet of Everything");
+			stio.save(stobj);
+			String journal = fileToString(journalFile());
+			assertTrue(testMessage + " - put", journal.contains("\"op\":\""
+					+ JournalIO.OP_PUT + "\""));
+			assertTrue(testMessage + " - remove", journal.contains("\"op\":\""
+					+ JournalIO.OP_REMOVE + "\""));
+			assertTrue(testMessage + " - splice", journal.contains("\"op\":\""
+					+ JournalIO.OP_SPLICE + "\""));
+			assertReloaded(testMessage, stobj);
+
+			stobj.clear();
+			stio.save(stobj);
+			assertTrue(testMessage + " - clear", fileToString(journalFile())
+					.contains("\"op\":\"" + JournalIO.OP_CLEAR + "\""));
+			assertReloaded(testMessage, stobj);
+		} finally {
+			stio.setJournaled(false);
+		}
+	}
+
+	/*
+	 * Fault injection - the journal is cut off in the middle of its last
+	 * record, the snapshot and the complete records before it must survive.
+	 */
+	@Test
+	public void tornJournalTest() throws Exception {
+		String testMessage = "Journal torn in the middle of a record";
+		stio.setJournaled(true);
+		try {
+			stio.save(stobj);
+			StreamTask task3 = new StreamTask("Write docs");
+			stobj.put(task3.getTaskName(), task3);
+			stio.save(stobj);
+			String expectedMap = serializeTaskMap(stobj.getTaskMapCopy());
+			List<String> expectedList = stobj.getTaskListCopy();
+
+			task2.setDescription("Internet of Everything");
+			stio.save(stobj);
+			File journalFile = journalFile();
+			try (RandomAccessFile journal = new RandomAccessFile(journalFile,
+					"rw")) {
+				journal.setLength(journal.length() - 10);
+			}
+
+			StreamObject loaded = StreamObject.init();
+			stio.load(loaded);
+			assertEquals(testMessage, expectedMap,
+					serializeTaskMap(loaded.getTaskMap()));
+			assertEquals(testMessage, expectedList, loaded.getTaskList());
+			assertEquals(testMessage + " - journal restarted", 1, Files
+					.readAllLines(journalFile.toPath()).size());
+		} finally {
+			stio.setJournaled(false);
+		}
+	}
+
+	@Test
+	public void staleJournalTest() throws Exception {
+		String testMessage = "Journal older than snapshot is discarded";
+		File saveFile = new File(stio.getSaveLocation());
+		stio.setJournaled(true);
+		try {
+			stio.save(stobj);
+			String expectedMap = serializeTaskMap(stobj.getTaskMapCopy());
+			List<String> expectedList = stobj.getTaskListCopy();
+
+			StreamTask task3 = new StreamTask("Write docs");
+			stobj.put(task3.getTaskName(), task3);
+			stio.save(stobj);
+			assertTrue(testMessage + " - journal written",
+					fileToString(journalFile()).contains(task3.getTaskName()));
+			saveFile.setLastModified(saveFile.lastModified() + 2000);
+
+			StreamObject loaded = StreamObject.init();
+			stio.load(loaded);
+			assertEquals(testMessage, expectedMap,
+					serializeTaskMap(loaded.getTaskMap()));
+			assertEquals(testMessage, expectedList, loaded.getTaskList());
+		} finally {
+			stio.setJournaled(false);
+		}
+	}
+
+	@Test
+	public void journalCompactionTest() throws Exception {
+		String testMessage = "Journal compacted past threshold";
+		File saveFile = new File(stio.getSaveLocation());
+		stio.setJournaled(true);
+		try {
+			stio.save(stobj);
+			long baseLength = journalFile().length();
+			stio.setJournalThreshold(baseLength);
+
+			StreamTask task3 = new StreamTask("Write docs");
+			stobj.put(task3.getTaskName(), task3);
+			stio.save(stobj);
+			assertFalse(testMessage + " - below threshold appends",
+					fileToString(saveFile).contains(task3.getTaskName()));
+			assertTrue(testMessage + " - journal grown",
+					journalFile().length() > baseLength);
+
+			StreamTask task4 = new StreamTask("Review docs");
+			stobj.put(task4.getTaskName(), task4);
+			stio.save(stobj);
+			String snapshot = fileToString(saveFile);
+			assertTrue(testMessage, snapshot.contains(task3.getTaskName()));
+			assertTrue(testMessage, snapshot.contains(task4.getTaskName()));
+			assertEquals(testMessage + " - journal restarted", 1, Files
+					.readAllLines(journalFile().toPath()).size());
+			assertReloaded(testMessage, stobj);
+		} finally {
+			stio.setJournaled(false);
+			stio.setJournalThreshold(StreamIO.DEFAULT_JOURNAL_THRESHOLD);
+		}
+	}
+
+	private void assertReloaded(String testMessage, StreamObject expected)
+			throws StreamIOException {
+		StreamObject reloaded = StreamObject.init();
+		stio.load(reloaded);
+		assertEquals(testMessage, serializeTaskMap(expected.getTaskMap()),
+				serializeTaskMap(reloaded.getTaskMap()));
+		assertEquals(testMessage, expected.getTaskList(),
+				reloaded.getTaskList());
+	}
+
+	private File journalFile() throws StreamIOException {
+		return new File(stio.getSaveLocation() + JournalIO.JOURNAL_EXTENSION);
+	}
+
+	@Test
+	public void migrateToBinaryTest() throws Exception {
+		String testMessage = "Migrate JSON file to binary format";
+		File jsonFile = new File(stio.getSaveLocation());
+		stio.save(stobj);
+		String jsonContent = fileToString(jsonFile);
+
+		stio.setStorageFormat(StreamIO.StorageFormat.BINARY);
+		File saveFile = new File(stio.getSaveLocation());
+		assertTrue(testMessage + " - own extension", saveFile.getName()
+				.endsWith(StreamIO.BINARY_EXTENSION));
+		StreamObject loaded = StreamObject.init();
+		stio.load(loaded);
+		String jsonLoadedMap = serializeTaskMap(loaded.getTaskMap());
+		assertEquals(testMessage + " - loaded from JSON",
+				serializeTaskMap(stobj.getTaskMap()), jsonLoadedMap);
+
+		stio.save(loaded);
+		assertTrue(testMessage + " - header",
+				StreamIO.binaryLoader.isBinary(saveFile));
+		assertEquals(testMessage + " - JSON file kept", jsonContent,
+				fileToString(jsonFile));
+		StreamObject migrated = StreamObject.init();
+		stio.load(migrated);
+		assertEquals(testMessage, jsonLoadedMap,
+				serializeTaskMap(migrated.getTaskMap()));
+		assertEquals(testMessage, stobj.getTaskList(), migrated.getTaskList());
+	}
+
+	/*
+	 * Fault injection - the write is killed halfway through, the previous
+	 * contents of the storage file must survive.
+	 */
+	@Test
+	public void atomicSaveFaultTest() throws Exception {
+		String testMessage = "Interrupted atomic save keeps previous file";
+		File saveFile = new File(stio.getSaveLocation());
+		stio.save(stobj);
+		String previousContent = fileToString(saveFile);
+
+		stobj.put("Ship Stream", new StreamTask("Ship Stream"));
+		try {
+			StreamIO.saver.writeFile(saveFile, SaveIO.WriteMode.ATOMIC_FSYNC,
+					halfWrittenContent());
+			fail(testMessage + " - injected fault not raised");
+		} catch (IOException expected) {
+		}
+		assertEquals(testMessage, previousContent, fileToString(saveFile));
+		assertFalse("Temporary file removed", new File(saveFile.getPath()
+				+ SaveIO.TEMP_EXTENSION).exists());
+	}
+
+	@Test
+	public void inPlaceSaveFaultTest() throws Exception {
+		String testMessage = "Interrupted in place save truncates file";
+		File saveFile = new File(stio.getSaveLocation());
+		stio.save(stobj);
+		String previousContent = fileToString(saveFile);
+
+		try {
+			StreamIO.saver.writeFile(saveFile, SaveIO.WriteMode.IN_PLACE,
+					halfWrittenContent());
+			fail(testMessage + " - injected fault not raised");
+		} catch (IOException expected) {
+		}
+		assertFalse(testMessage,
+				previousContent.equals(fileToString(saveFile)));
+	}
+
+	private SaveIO.FileContent halfWrittenContent() throws IOException {
+		StringWriter state = new StringWriter();
+		StreamIO.saver.writeState(state, stobj.getTaskMap(),
+				stobj.getTaskList());
+		final String content = state.toString();
+		return new SaveIO.FileContent() {
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				out.write(content.substring(0, content.length() / 2)
+						.getBytes());
+				out.flush();
+				throw new IOException("Injected fault");
+			}
+		};
+	}
+
+	@Test
+	public void parallelLoadTest() throws Exception {
+		String testMessage = "Load tasks spanning several chunks";
+		for (int i = 0; i < LoadIO.CHUNK_SIZE * 3 + 1; i++) {
+			StreamTask task = new StreamTask("Task " + i);
+			task.setDeadline(Calendar.getInstance());
+			stobj.put(task.getTaskName(), task);
+		}
+		stio.save(stobj);
+		StreamObject loaded = StreamObject.init();
+		stio.load(loaded);
+		assertEquals(testMessage, stobj.getTaskList(), loaded.getTaskList());
+		assertEquals(testMessage, stobj.getTaskMap().keySet(), loaded
+				.getTaskMap().keySet());
+	}
+
+	@Test(expected = StreamIOException.class)
+	public void parallelLoadFailureTest() throws Exception {
+		JSONArray tasksJson = new JSONArray();
+		for (int i = 0; i < LoadIO.CHUNK_SIZE * 3; i++) {
+			JSONObject taskJson = new JSONObject();
+			taskJson.put(StreamIO.KEY_NAME, "Task " + i);
+			taskJson.put(StreamIO.KEY_DEADLINE, "20410719000000");
+			tasksJson.put(taskJson);
+		}
+		tasksJson.getJSONObject(LoadIO.CHUNK_SIZE * 2).put(
+				StreamIO.KEY_DEADLINE, "not a date");
+		StreamIO.loader.convertTaskMap(tasksJson);
+	}
+
+	@Test
+	public void legacyTaskListTest() throws Exception {
+		String testMessage = "Load legacy task list object";
+		File saveFile = new File(stio.getSaveLocation());
+		Files.write(saveFile.toPath(), ("{\"taskList\":{\"1\":\"Build IoT\","
+				+ "\"0\":\"Code Jarvis\"},\"allTasks\":["
+				+ "{\"taskName\":\"Build IoT\"},"
+				+ "{\"taskName\":\"Code Jarvis\"}]}").getBytes());
+		StreamObject loaded = StreamObject.init();
+		stio.load(loaded);
+		assertEquals(testMessage, stobj.getTaskList(), loaded.getTaskList());
+	}
+
+	@Test
+	public void taskListArrayTest() throws Exception {
+		String testMessage = "Save and load task list array";
+		File saveFile = new File(stio.getSaveLocation());
+		stio.save(stobj);
+		assertTrue(testMessage, fileToString(saveFile).contains(
+				"\"taskList\":[\"Code Jarvis\",\"Build IoT\"]"));
+		StreamObject loaded = StreamObject.init();
+		stio.load(loaded);
+		assertEquals(testMessage, stobj.getTaskList(), loaded.getTaskList());
+	}
+
+	/*
+	 * A rank that cannot be saved back, read from JSON or set directly, loads
+	 * as the default rank in both formats.
+	 */
+	@Test
+	public void unknownRankTest() throws Exception {
+		String testMessage = "Unknown rank loads as default";
+		File saveFile = new File(stio.getSaveLocation());
+		Files.write(saveFile.toPath(), ("{\"taskList\":[\"Build IoT\"],"
+				+ "\"allTasks\":[{\"taskName\":\"Build IoT\","
+				+ "\"rank\":\"urgent\"}]}").getBytes());
+		StreamObject loaded = StreamObject.init();
+		stio.load(loaded);
+		assertEquals(testMessage, RankType.LO, loaded.get("Build IoT")
+				.getRank());
+
+		task1.setRank(RankType.NULL);
+		for (StreamIO.StorageFormat format : StreamIO.StorageFormat.values()) {
+			stio.setStorageFormat(format);
+			stio.save(stobj);
+			loaded = StreamObject.init();
+			stio.load(loaded);
+			assertEquals(testMessage + " - " + format, RankType.LO, loaded
+					.get(task1.getTaskName()).getRank());
+		}
+	}
+
+	@Test(expected = StreamIOException.class)
+	public void unsupportedVersionTest() throws Exception {
+		File saveFile = new File(stio.getSaveLocation());
+		Files.write(saveFile.toPath(), ("{\"version\":"
+				+ (SaveIO.FORMAT_VERSION + 1)
+				+ ",\"taskList\":[],\"allTasks\":[]}").getBytes());
+		try {
+			stio.load(StreamObject.init());
+		} catch (StreamIOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("version"));
+			throw e;
+		}
+	}
+
 	@Test
 	public void mapToJsonTest() {
 		String testMessage = "Map to JSON conversion";
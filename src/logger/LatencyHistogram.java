@@ -0,0 +1,106 @@
+package logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//@author A0096529N
+/**
+ * <p>
+ * Records durations into power-of-two buckets, so recording is a few atomic
+ * increments regardless of the number of samples. Percentiles are reported as
+ * the upper bound of the bucket they fall in, which is within a factor of two
+ * of the actual value.
+ * </p>
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+
+	private static final int BUCKETS = 64;
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * @param nanos
+	 *            the duration to record, in nanoseconds
+	 */
+	void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(bucketOf(nanos));
+		totalNanos.addAndGet(nanos);
+		count.incrementAndGet();
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+
+	/**
+	 * Bucket 0 holds 0, bucket k holds [2^(k-1), 2^k).
+	 */
+	private static int bucketOf(long nanos) {
+		return BUCKETS - Long.numberOfLeadingZeros(nanos);
+	}
+
+	long getTotalNanos() {
+		return totalNanos.get();
+	}
+
+	/**
+	 * @param fraction
+	 *            between 0 and 1, e.g. 0.99 for the 99th percentile
+	 * @return upper bound of the percentile, in nanoseconds
+	 */
+	long getPercentileNanos(double fraction) {
+		long total = count.get();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				long upperBound = i == 0 ? 0 : (1L << i) - 1;
+				return Math.min(upperBound, maxNanos.get());
+			}
+		}
+		return maxNanos.get();
+	}
+
+	@Override
+	public long getCount() {
+		return count.get();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		long total = count.get();
+		return total == 0 ? 0 : totalNanos.get() / NANOS_PER_MILLI / total;
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return maxNanos.get() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getP50Millis() {
+		return getPercentileNanos(0.5) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getP90Millis() {
+		return getPercentileNanos(0.9) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getP99Millis() {
+		return getPercentileNanos(0.99) / NANOS_PER_MILLI;
+	}
+
+}
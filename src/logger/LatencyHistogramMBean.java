@@ -0,0 +1,21 @@
+package logger;
+
+//@author A0096529N
+/**
+ * Management interface of LatencyHistogram, published over JMX.
+ */
+public interface LatencyHistogramMBean {
+
+	long getCount();
+
+	double getMeanMillis();
+
+	double getMaxMillis();
+
+	double getP50Millis();
+
+	double getP90Millis();
+
+	double getP99Millis();
+
+}
@@ -0,0 +1,106 @@
+package logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//@author A0096529N
+/**
+ * <p>
+ * Bounded, lock-free queue for many producers and a single consumer.
+ * </p>
+ *
+ * <p>
+ * Each slot carries a sequence number telling whose turn it is. A producer
+ * claims a position by advancing the tail with compare-and-set, fills the
+ * slot, then publishes it by setting the slot's sequence to position + 1.
+ * The consumer takes the slot once published, and hands it back to producers
+ * by setting the sequence to position + capacity.
+ * </p>
+ */
+class LogRingBuffer<E> {
+
+	private final int capacity;
+	private final int mask;
+	private final AtomicReferenceArray<E> elements;
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong head = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *            number of slots, rounded up to a power of two
+	 */
+	LogRingBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		this.capacity = size;
+		this.mask = size - 1;
+		this.elements = new AtomicReferenceArray<E>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Adds the element if there is space. Safe to call from any thread.
+	 *
+	 * @return false if the buffer is full
+	 */
+	boolean offer(E element) {
+		while (true) {
+			long position = tail.get();
+			int index = (int) position & mask;
+			long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					elements.set(index, element);
+					sequences.set(index, position + 1);
+					return true;
+				}
+			} else if (difference < 0) {
+				// slot not yet consumed since the previous lap
+				return false;
+			}
+			// otherwise another producer claimed the position, retry
+		}
+	}
+
+	/**
+	 * Removes the oldest published element. Only to be called by the single
+	 * consumer.
+	 *
+	 * @return the element, or null if none is published
+	 */
+	E poll() {
+		long position = head.get();
+		int index = (int) position & mask;
+		if (sequences.get(index) != position + 1) {
+			return null;
+		}
+		E element = elements.get(index);
+		elements.set(index, null);
+		head.set(position + 1);
+		sequences.set(index, position + capacity);
+		return element;
+	}
+
+	/**
+	 * @return number of positions claimed by producers so far
+	 */
+	long claimed() {
+		return tail.get();
+	}
+
+	/**
+	 * @return number of elements taken by the consumer so far
+	 */
+	long consumed() {
+		return head.get();
+	}
+
+}
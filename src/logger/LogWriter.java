@@ -0,0 +1,238 @@
+package logger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import logger.StreamLogger.LogLevel;
+import logger.StreamLogger.LogRecord;
+
+//@author A0096529N
+/**
+ * <p>
+ * Background thread draining the log buffer into files in the log directory.
+ * </p>
+ *
+ * <p>
+ * Files are named after the day of their messages, e.g. 20141028.txt. Once
+ * a file reaches the maximum size, writing continues in 20141028-1.txt,
+ * 20141028-2.txt and so on. Output is flushed to disk whenever the buffer has
+ * been drained.
+ * </p>
+ */
+class LogWriter implements Runnable {
+
+	static final long DEFAULT_MAX_FILE_SIZE = 1024 * 1024;
+
+	private static final String THREAD_NAME = "Stream-Logger";
+	private static final String FILE_FORMAT = "%1$s.txt";
+	private static final String ROLLED_FILE_FORMAT = "%1$s-%2$d.txt";
+	private static final String COMPONENT_NAME = "LOGGER";
+	private static final int TIMESTAMP_LENGTH = 19;
+	private static final String MSG_DROPPED = "%1$s log message(s) dropped, buffer full";
+	private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private final LogRingBuffer<LogRecord> buffer;
+	private final File directory;
+	private final Thread thread;
+	private volatile long maxFileSize = DEFAULT_MAX_FILE_SIZE;
+
+	// writer thread only
+	private final SimpleDateFormat dayFormat = new SimpleDateFormat(
+			"yyyyMMdd", Locale.ENGLISH);
+	private final SimpleDateFormat timeFormat = new SimpleDateFormat(
+			"yyyy-MM-dd HH:mm:ss", Locale.ENGLISH);
+	private Writer out = null;
+	private String currentDay = null;
+	private int currentIndex = 0;
+	private long currentSize = 0;
+	private long droppedReported = 0;
+	private long cachedSecond = Long.MIN_VALUE;
+	private String cachedTimestamp = null;
+	private long cachedDaySecond = Long.MIN_VALUE;
+	private String cachedDay = null;
+
+	// records written and flushed, guarded by this
+	private long flushed = 0;
+
+	LogWriter(LogRingBuffer<LogRecord> buffer, File directory) {
+		this.buffer = buffer;
+		this.directory = directory;
+		this.thread = new Thread(this, THREAD_NAME);
+		this.thread.setDaemon(true);
+	}
+
+	void start() {
+		thread.start();
+	}
+
+	boolean isAlive() {
+		return thread.isAlive();
+	}
+
+	void wakeUp() {
+		LockSupport.unpark(thread);
+	}
+
+	void setMaxFileSize(long maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
+	/**
+	 * Blocks until every record added to the buffer before the call has been
+	 * written and flushed.
+	 */
+	void flush() {
+		long target = buffer.claimed();
+		wakeUp();
+		synchronized (this) {
+			try {
+				while (flushed < target && thread.isAlive()) {
+					wait(TimeUnit.NANOSECONDS.toMillis(IDLE_WAIT));
+					wakeUp();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			LogRecord record = buffer.poll();
+			if (record != null) {
+				reportDropped();
+				write(record.time, formatRecord(record));
+			} else {
+				flushOutput();
+				synchronized (this) {
+					flushed = buffer.consumed();
+					notifyAll();
+				}
+				LockSupport.parkNanos(this, IDLE_WAIT);
+			}
+		}
+	}
+
+	private void reportDropped() {
+		long dropped = StreamLogger.getDroppedCount();
+		if (dropped > droppedReported) {
+			long now = System.currentTimeMillis();
+			write(now, formatLine(now, LogLevel.WARNING, COMPONENT_NAME,
+					String.format(MSG_DROPPED, dropped - droppedReported)));
+			droppedReported = dropped;
+		}
+	}
+
+	private String formatRecord(LogRecord record) {
+		return formatLine(record.time, record.level, record.componentName,
+				record.message);
+	}
+
+	/**
+	 * Formats a line as "yyyy-MM-dd HH:mm:ss LEVEL [COMPONENT] message".
+	 */
+	private String formatLine(long time, LogLevel level, String componentName,
+			String message) {
+		String text = String.valueOf(message);
+		return new StringBuilder(TIMESTAMP_LENGTH + text.length() + 32)
+				.append(formatTime(time)).append(' ').append(level.name())
+				.append(" [").append(componentName).append("] ")
+				.append(text).toString();
+	}
+
+	/**
+	 * Formats the time to the second, reusing the previous result while
+	 * still within the same second.
+	 */
+	private String formatTime(long time) {
+		long second = time / 1000;
+		if (second != cachedSecond) {
+			cachedTimestamp = timeFormat.format(new Date(time));
+			cachedSecond = second;
+		}
+		return cachedTimestamp;
+	}
+
+	private String formatDay(long time) {
+		long second = time / 1000;
+		if (second != cachedDaySecond) {
+			cachedDay = dayFormat.format(new Date(time));
+			cachedDaySecond = second;
+		}
+		return cachedDay;
+	}
+
+	private void write(long time, String line) {
+		try {
+			String day = formatDay(time);
+			if (!day.equals(currentDay)) {
+				open(day, 0);
+			} else if (currentSize >= maxFileSize) {
+				open(day, currentIndex + 1);
+			}
+			out.write(line);
+			out.write(System.lineSeparator());
+			currentSize += line.length() + System.lineSeparator().length();
+		} catch (IOException e) {
+			System.err.println(line);
+			close();
+		}
+	}
+
+	/**
+	 * Opens the first file of the day, from the given index, that still has
+	 * room.
+	 */
+	private void open(String day, int index) throws IOException {
+		close();
+		File file = getFile(day, index);
+		while (file.length() >= maxFileSize) {
+			file = getFile(day, ++index);
+		}
+		out = new BufferedWriter(new FileWriter(file, true));
+		currentDay = day;
+		currentIndex = index;
+		currentSize = file.length();
+	}
+
+	private File getFile(String day, int index) {
+		if (index == 0) {
+			return new File(directory, String.format(FILE_FORMAT, day));
+		} else {
+			return new File(directory, String.format(ROLLED_FILE_FORMAT, day,
+					index));
+		}
+	}
+
+	private void flushOutput() {
+		if (out != null) {
+			try {
+				out.flush();
+			} catch (IOException e) {
+				close();
+			}
+		}
+	}
+
+	private void close() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				// nothing more can be done with the file
+			}
+		}
+		out = null;
+		currentDay = null;
+	}
+
+}
@@ -0,0 +1,169 @@
+package logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import logger.StreamLogger.LogLevel;
+import logger.StreamLogger.LogRecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+//@author A0096529N
+
+public class LogWriterTest {
+
+	private static final int PRODUCERS = 4;
+	private static final int RECORDS_PER_PRODUCER = 5000;
+
+	private File logDir;
+
+	@Before
+	public void setUp() throws Exception {
+		logDir = Files.createTempDirectory("streamlogs").toFile();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		File[] files = logDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		logDir.delete();
+	}
+
+	@Test
+	public void ringBufferFullTest() {
+		LogRingBuffer<String> buffer = new LogRingBuffer<String>(3);
+		assertEquals("Capacity rounded up", 4, buffer.capacity());
+		for (int i = 0; i < buffer.capacity(); i++) {
+			assertTrue("Offer accepted", buffer.offer("msg" + i));
+		}
+		assertFalse("Offer rejected when full", buffer.offer("overflow"));
+		assertEquals("Oldest first", "msg0", buffer.poll());
+		assertTrue("Offer accepted after poll", buffer.offer("msg4"));
+		for (int i = 1; i <= buffer.capacity(); i++) {
+			assertEquals("Order kept", "msg" + i, buffer.poll());
+		}
+		assertNull("Empty buffer", buffer.poll());
+	}
+
+	@Test
+	public void ringBufferProducersTest() throws Exception {
+		final LogRingBuffer<Integer> buffer = new LogRingBuffer<Integer>(64);
+		List<Thread> producers = new ArrayList<Thread>();
+		for (int p = 0; p < PRODUCERS; p++) {
+			final int producer = p;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < RECORDS_PER_PRODUCER; i++) {
+						Integer value = producer * RECORDS_PER_PRODUCER + i;
+						while (!buffer.offer(value)) {
+							Thread.yield();
+						}
+					}
+				}
+			});
+			producers.add(thread);
+			thread.start();
+		}
+
+		int[] last = new int[PRODUCERS];
+		for (int p = 0; p < PRODUCERS; p++) {
+			last[p] = -1;
+		}
+		int received = 0;
+		while (received < PRODUCERS * RECORDS_PER_PRODUCER) {
+			Integer value = buffer.poll();
+			if (value == null) {
+				Thread.yield();
+				continue;
+			}
+			int producer = value / RECORDS_PER_PRODUCER;
+			int sequence = value % RECORDS_PER_PRODUCER;
+			assertEquals("In order per producer", last[producer] + 1, sequence);
+			last[producer] = sequence;
+			received++;
+		}
+		for (Thread thread : producers) {
+			thread.join();
+		}
+		assertNull("All consumed", buffer.poll());
+	}
+
+	@Test
+	public void disabledLevelTest() {
+		final int[] formatted = new int[1];
+		Object argument = new Object() {
+			@Override
+			public String toString() {
+				formatted[0]++;
+				return "argument";
+			}
+		};
+		Loggable loggable = new Loggable() {
+			@Override
+			public String getComponentName() {
+				return "TEST";
+			}
+		};
+		try {
+			StreamLogger.setMinimumLevel(LogLevel.ERROR);
+			assertFalse("Debug disabled", loggable.isDebugEnabled());
+			loggable.logDebug("message %1$s", argument);
+			assertEquals("Not formatted when disabled", 0, formatted[0]);
+
+			StreamLogger.setMinimumLevel(LogLevel.DEBUG);
+			loggable.logDebug("message %1$s", argument);
+			assertEquals("Formatted when enabled", 1, formatted[0]);
+		} finally {
+			StreamLogger.setMinimumLevel(LogLevel.DEBUG);
+		}
+	}
+
+	@Test
+	public void rollingFileTest() throws IOException {
+		LogRingBuffer<LogRecord> buffer = new LogRingBuffer<LogRecord>(16);
+		LogWriter writer = new LogWriter(buffer, logDir);
+		writer.setMaxFileSize(200);
+		writer.start();
+
+		long time = System.currentTimeMillis();
+		int count = 40;
+		for (int i = 0; i < count; i++) {
+			while (!buffer.offer(new LogRecord(time, LogLevel.DEBUG, "TEST",
+					"message " + i))) {
+				writer.wakeUp();
+				Thread.yield();
+			}
+		}
+		writer.flush();
+
+		File[] files = logDir.listFiles();
+		assertTrue("Rolled into several files", files.length > 1);
+		int lines = 0;
+		for (File file : files) {
+			assertTrue("Rolled by size", file.length() < 300);
+			for (String line : Files.readAllLines(file.toPath(),
+					StandardCharsets.UTF_8)) {
+				assertTrue("Formatted", line.contains("DEBUG [TEST] message "));
+				lines++;
+			}
+		}
+		assertEquals("All messages written", count, lines);
+	}
+
+}
@@ -16,8 +16,29 @@ public abstract class Loggable {
 		logger.log(LogLevel.DEBUG, logMsg);
 	}
 
+	/**
+	 * Logs the message given by format and args, formatting it only if debug
+	 * messages are logged. Arguments are formatted with %s through their
+	 * toString, so collections can be passed as they are.
+	 */
+	public void logDebug(String format, Object... args) {
+		if (StreamLogger.isEnabled(LogLevel.DEBUG)) {
+			logger.log(LogLevel.DEBUG, String.format(format, args));
+		}
+	}
+
 	public void logError(String logMsg) {
 		logger.log(LogLevel.ERROR, logMsg);
 	}
 
+	public void logError(String format, Object... args) {
+		if (StreamLogger.isEnabled(LogLevel.ERROR)) {
+			logger.log(LogLevel.ERROR, String.format(format, args));
+		}
+	}
+
+	public boolean isDebugEnabled() {
+		return StreamLogger.isEnabled(LogLevel.DEBUG);
+	}
+
 }
@@ -1,51 +1,97 @@
 package logger;
 
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.Locale;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 //@author A0096529N
 /**
  * <h1>StreamLogger - STREAM's logging component</h1>
- * 
+ *
  * <p>
- * Stores log messages in a synchronized list, allowing different component to
- * contribute appropriate log messages.
+ * Queues log messages in a bounded lock-free buffer, allowing different
+ * components to contribute appropriate log messages without contending on a
+ * lock. Once a log directory has been set with startWriter, a background
+ * thread writes the messages into daily log files, rolled over by size.
  * </p>
- * 
+ *
+ * <h3>Overflow policies</h3>
+ * <ul>
+ * <li>BLOCK - the logging thread waits for the writer to make room</li>
+ * <li>DROP - the message is dropped, and the number of dropped messages is
+ * written to the log once there is room</li>
+ * </ul>
+ * <p>
+ * Messages are dropped regardless of the policy while no writer is running.
+ * </p>
+ *
+ * <p>
+ * Messages below the minimum level are discarded before being queued. Use
+ * isEnabled to skip building such messages altogether.
+ * </p>
+ *
  * <h3>Example</h3>
- * 
+ *
  * <pre>
  * {
  * 	&#064;code
  * 	// Initialize logger, similar to Object.getInstance() taught.
  * 	StreamLogger logger = StreamLogger.init(componentName);
- * 
- * 	// Use logger to add log to log stack
+ *
+ * 	// Use logger to add log to log buffer
  * 	logger.log(LogLevel.DEBUG, logMessage);
  * }
  * </pre>
- * 
+ *
  * <p>
  * Refer to method documentation for details.
  * </p>
  */
 public class StreamLogger {
 
+	static final int BUFFER_CAPACITY = 8192;
+
+	private static final long BLOCK_WAIT = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private static final LogRingBuffer<LogRecord> buffer = new LogRingBuffer<LogRecord>(
+			BUFFER_CAPACITY);
+	private static final AtomicLong dropped = new AtomicLong();
+	private static volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+	private static volatile LogLevel minimumLevel = LogLevel.DEBUG;
+	private static volatile LogWriter writer = null;
+
 	private String componentName;
-	private static final ArrayList<String> logStack = new ArrayList<String>();
-	private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat(
-			"yyyy-MM-dd HH:mm:ss", Locale.ENGLISH);
-	private static final String LOG_FORMAT = "%1$s %2$s [%3$s] %4$s";
 
 	public enum LogLevel {
 		DEBUG, INFO, WARNING, ERROR, FATAL;
 	}
 
+	public enum OverflowPolicy {
+		BLOCK, DROP;
+	}
+
+	/**
+	 * A log message waiting to be written.
+	 */
+	static class LogRecord {
+		final long time;
+		final LogLevel level;
+		final String componentName;
+		final String message;
+
+		LogRecord(long time, LogLevel level, String componentName,
+				String message) {
+			this.time = time;
+			this.level = level;
+			this.componentName = componentName;
+			this.message = message;
+		}
+	}
+
 	/**
 	 * Lazy constructor for StreamLogger to obtain an instance.
-	 * 
+	 *
 	 * @param componentName
 	 *            standardized name of component
 	 * @return StreamLogger instance for use to log
@@ -57,47 +103,109 @@ public class StreamLogger {
 	}
 
 	/**
-	 * Adds log message to synchronized log stack.
-	 * 
+	 * Adds log message to the log buffer. Formatting and writing is left to
+	 * the writer thread.
+	 *
 	 * @param logLevel
 	 *            importance level of log message
 	 * @param message
 	 *            the log message to be logged
 	 */
 	public void log(LogLevel logLevel, String message) {
-		synchronized (logStack) {
-			logStack.add(String.format(LOG_FORMAT, getDate(),
-					getLevel(logLevel), componentName, message));
+		if (!isEnabled(logLevel)) {
+			return;
+		}
+		LogRecord record = new LogRecord(System.currentTimeMillis(), logLevel,
+				componentName, message);
+		while (!buffer.offer(record)) {
+			LogWriter current = writer;
+			if (overflowPolicy == OverflowPolicy.DROP || current == null
+					|| !current.isAlive()) {
+				dropped.incrementAndGet();
+				return;
+			}
+			current.wakeUp();
+			LockSupport.parkNanos(BLOCK_WAIT);
+		}
+	}
+
+	/**
+	 * Starts writing log messages, including those already buffered, into
+	 * log files in the given directory. Has no effect if already started.
+	 *
+	 * @param directory
+	 *            the directory to keep log files in
+	 */
+	public static synchronized void startWriter(String directory) {
+		if (writer != null) {
+			return;
+		}
+		final LogWriter logWriter = new LogWriter(buffer, new File(directory));
+		logWriter.start();
+		writer = logWriter;
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				logWriter.flush();
+			}
+		});
+	}
+
+	/**
+	 * Blocks until the messages logged so far have been written to the log
+	 * file. Returns immediately if no writer has been started.
+	 */
+	public static void flush() {
+		LogWriter current = writer;
+		if (current != null) {
+			current.flush();
 		}
 	}
 
 	/**
-	 * Returns a copy of the log stack
-	 * 
-	 * @return logStack list of log messages
+	 * Sets the least important level of messages to be logged.
+	 *
+	 * @param level
+	 *            the minimum log level
 	 */
-	public static ArrayList<String> getLogStack() {
-		return new ArrayList<String>(logStack);
+	public static void setMinimumLevel(LogLevel level) {
+		minimumLevel = level;
 	}
 
-	private static String getDate() {
-		return DATE_FORMAT.format(new Date());
+	/**
+	 * @return whether messages of the given level are logged
+	 */
+	public static boolean isEnabled(LogLevel level) {
+		return level.compareTo(minimumLevel) >= 0;
 	}
 
-	private static String getLevel(LogLevel logLevel) {
-		switch (logLevel) {
-			case DEBUG:
-				return "DEBUG";
-			case INFO:
-				return "INFO";
-			case WARNING:
-				return "WARNING";
-			case ERROR:
-				return "ERROR";
-			case FATAL:
-				return "FATAL";
+	/**
+	 * Sets what happens to messages logged while the buffer is full.
+	 *
+	 * @param policy
+	 *            the overflow policy
+	 */
+	public static void setOverflowPolicy(OverflowPolicy policy) {
+		overflowPolicy = policy;
+	}
+
+	/**
+	 * Sets the size, in bytes, above which logging continues in a new file.
+	 *
+	 * @param maxFileSize
+	 *            maximum log file size
+	 */
+	public static synchronized void setMaxFileSize(long maxFileSize) {
+		if (writer != null) {
+			writer.setMaxFileSize(maxFileSize);
 		}
-		return null;
+	}
+
+	/**
+	 * @return number of messages dropped because the buffer was full
+	 */
+	public static long getDroppedCount() {
+		return dropped.get();
 	}
 
 }
@@ -0,0 +1,385 @@
+package logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import logger.StreamLogger.LogLevel;
+
+//@author A0096529N
+/**
+ * <h1>StreamMetrics - STREAM's metrics registry</h1>
+ *
+ * <p>
+ * Keeps a count and latency histogram of every command, both in total and
+ * per phase, and of background operations such as saving. Each histogram is
+ * published as an MBean under the "stream" domain, and a summary of the
+ * commands run since the previous summary is logged periodically once
+ * startSummary has been called.
+ * </p>
+ *
+ * <h3>Example</h3>
+ *
+ * <pre>
+ * {
+ * 	&#064;code
+ * 	StreamMetrics metrics = StreamMetrics.init();
+ * 	metrics.startCommand();
+ * 	try {
+ * 		metrics.enterPhase(Phase.PARSE);
+ * 		try {
+ * 			// parse
+ * 		} finally {
+ * 			metrics.exitPhase();
+ * 		}
+ * 		metrics.setCommand(commandName);
+ * 	} finally {
+ * 		metrics.endCommand();
+ * 	}
+ * }
+ * </pre>
+ *
+ * <p>
+ * A command and its phases are timed on the thread that started it. Phases
+ * may be nested, in which case time spent in the inner phase is not counted
+ * towards the outer one. Phase calls are ignored when no command has been
+ * started on the current thread.
+ * </p>
+ */
+public class StreamMetrics extends Loggable {
+
+	public enum Phase {
+		PARSE, EXECUTE, SAVE, UI_REFRESH;
+	}
+
+	public static final long DEFAULT_SUMMARY_INTERVAL = 60000;
+
+	private static final String THREAD_NAME = "Stream-Metrics";
+	private static final String DOMAIN = "stream";
+	private static final String TYPE_COMMAND = "Command";
+	private static final String TYPE_OPERATION = "Operation";
+	private static final String PHASE_TOTAL = "TOTAL";
+	private static final String COMMAND_UNKNOWN = "UNKNOWN";
+	private static final String KEY_FORMAT = "%1$s/%2$s/%3$s";
+	private static final String OBJECT_NAME_FORMAT = DOMAIN
+			+ ":type=%1$s,name=%2$s,phase=%3$s";
+	private static final String COMPONENT_NAME_FORMAT = DOMAIN
+			+ ":type=%1$s,name=%2$s";
+	private static final String SUMMARY_FORMAT = "Last %1$ss - %2$s";
+	private static final String SUMMARY_ENTRY_FORMAT = "%1$s n=%2$s avg=%3$.2fms";
+	private static final String LOG_REGISTER_FAILED = "Could not register MBean %1$s - %2$s";
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private static StreamMetrics self = null;
+
+	private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, Long> values = new ConcurrentHashMap<String, Long>();
+	private final ThreadLocal<CommandTimer> timers = new ThreadLocal<CommandTimer>();
+	private Timer summaryTimer = null;
+
+	// summary thread only
+	private final Map<String, long[]> lastSummary = new HashMap<String, long[]>();
+
+	/**
+	 * Time spent so far by the command running on a thread.
+	 */
+	private static class CommandTimer {
+
+		private final long start = System.nanoTime();
+		private final long[] phaseNanos = new long[Phase.values().length];
+		private final boolean[] isPhaseEntered = new boolean[Phase.values().length];
+		private Phase[] outerPhases = new Phase[4];
+		private int depth = 0;
+		private Phase current = null;
+		private long mark = start;
+		private String command = null;
+
+		private void enter(Phase phase) {
+			long now = System.nanoTime();
+			charge(now);
+			if (depth == outerPhases.length) {
+				outerPhases = Arrays.copyOf(outerPhases, depth * 2);
+			}
+			outerPhases[depth++] = current;
+			current = phase;
+			isPhaseEntered[phase.ordinal()] = true;
+			mark = now;
+		}
+
+		private void exit() {
+			long now = System.nanoTime();
+			charge(now);
+			current = depth > 0 ? outerPhases[--depth] : null;
+			mark = now;
+		}
+
+		private void charge(long now) {
+			if (current != null) {
+				phaseNanos[current.ordinal()] += now - mark;
+			}
+		}
+
+	}
+
+	private StreamMetrics() {
+
+	}
+
+	public static synchronized StreamMetrics init() {
+		if (self == null) {
+			self = new StreamMetrics();
+		}
+		return self;
+	}
+
+	@Override
+	public String getComponentName() {
+		return "METRICS";
+	}
+
+	/**
+	 * Starts timing a command on the current thread.
+	 */
+	public void startCommand() {
+		timers.set(new CommandTimer());
+	}
+
+	/**
+	 * Names the command being timed, usually once it has been parsed. Only
+	 * the first name given is kept, so commands run as part of another, such
+	 * as by undo, are counted towards the outer command.
+	 *
+	 * @param command
+	 *            name of the command
+	 */
+	public void setCommand(String command) {
+		CommandTimer timer = timers.get();
+		if (timer != null && timer.command == null) {
+			timer.command = command;
+		}
+	}
+
+	/**
+	 * Starts timing a phase of the current command. Each call must be
+	 * followed by a call to exitPhase, preferably in a finally block.
+	 *
+	 * @param phase
+	 *            the phase entered
+	 */
+	public void enterPhase(Phase phase) {
+		CommandTimer timer = timers.get();
+		if (timer != null) {
+			timer.enter(phase);
+		}
+	}
+
+	/**
+	 * Stops timing the phase last entered, resuming the phase it was entered
+	 * from.
+	 */
+	public void exitPhase() {
+		CommandTimer timer = timers.get();
+		if (timer != null) {
+			timer.exit();
+		}
+	}
+
+	/**
+	 * Stops timing the current command and records its total time and the
+	 * time of each phase entered.
+	 */
+	public void endCommand() {
+		CommandTimer timer = timers.get();
+		if (timer == null) {
+			return;
+		}
+		timers.remove();
+		long now = System.nanoTime();
+		String command = timer.command == null ? COMMAND_UNKNOWN
+				: timer.command;
+		getHistogram(TYPE_COMMAND, command, PHASE_TOTAL).record(
+				now - timer.start);
+		for (Phase phase : Phase.values()) {
+			if (timer.isPhaseEntered[phase.ordinal()]) {
+				getHistogram(TYPE_COMMAND, command, phase.name()).record(
+						timer.phaseNanos[phase.ordinal()]);
+			}
+		}
+	}
+
+	/**
+	 * Records the time taken by an operation not tied to a command, such as
+	 * a save done in the background.
+	 *
+	 * @param operation
+	 *            name of the operation
+	 * @param nanos
+	 *            time taken, in nanoseconds
+	 */
+	public void record(String operation, long nanos) {
+		getHistogram(TYPE_OPERATION, operation, PHASE_TOTAL).record(nanos);
+	}
+
+	/**
+	 * Sets a value to be shown alongside the summary, e.g. the number of
+	 * tasks.
+	 *
+	 * @param name
+	 *            name of the value
+	 * @param value
+	 *            the latest value
+	 */
+	public void setValue(String name, long value) {
+		values.put(name, value);
+	}
+
+	/**
+	 * @return histogram of the command phase, or of the whole command if
+	 *         phase is null
+	 */
+	public LatencyHistogram getCommandHistogram(String command, Phase phase) {
+		return histograms.get(String.format(KEY_FORMAT, TYPE_COMMAND, command,
+				phase == null ? PHASE_TOTAL : phase.name()));
+	}
+
+	/**
+	 * @return histogram of the operation
+	 */
+	public LatencyHistogram getOperationHistogram(String operation) {
+		return histograms.get(String.format(KEY_FORMAT, TYPE_OPERATION,
+				operation, PHASE_TOTAL));
+	}
+
+	/**
+	 * Logs a summary line every interval. Has no effect if already started.
+	 *
+	 * @param interval
+	 *            time between summaries, in milliseconds
+	 */
+	public synchronized void startSummary(final long interval) {
+		if (summaryTimer != null) {
+			return;
+		}
+		summaryTimer = new Timer(THREAD_NAME, true);
+		summaryTimer.scheduleAtFixedRate(new TimerTask() {
+			@Override
+			public void run() {
+				String summary = summarize();
+				if (summary != null) {
+					logger.log(LogLevel.INFO, String.format(SUMMARY_FORMAT,
+							interval / 1000, summary));
+				}
+			}
+		}, interval, interval);
+	}
+
+	/**
+	 * Describes the commands and operations recorded since the previous
+	 * summary, with their count and average time.
+	 *
+	 * @return the summary, or null if nothing has been recorded since
+	 */
+	synchronized String summarize() {
+		StringBuilder summary = new StringBuilder();
+		for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(
+				histograms).entrySet()) {
+			String key = entry.getKey();
+			LatencyHistogram histogram = entry.getValue();
+			long count = histogram.getCount();
+			long total = histogram.getTotalNanos();
+			long[] last = lastSummary.get(key);
+			if (last == null) {
+				last = new long[2];
+				lastSummary.put(key, last);
+			}
+			long countSince = count - last[0];
+			long totalSince = total - last[1];
+			last[0] = count;
+			last[1] = total;
+			if (countSince > 0) {
+				if (summary.length() > 0) {
+					summary.append(", ");
+				}
+				summary.append(String.format(SUMMARY_ENTRY_FORMAT, key,
+						countSince, totalSince / NANOS_PER_MILLI / countSince));
+			}
+		}
+		if (summary.length() == 0) {
+			return null;
+		}
+		for (Map.Entry<String, Long> value : new TreeMap<String, Long>(values)
+				.entrySet()) {
+			summary.append(", ").append(value.getKey()).append('=')
+					.append(value.getValue());
+		}
+		return summary.toString();
+	}
+
+	private LatencyHistogram getHistogram(String type, String name,
+			String phase) {
+		String key = String.format(KEY_FORMAT, type, name, phase);
+		LatencyHistogram histogram = histograms.get(key);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = histograms.putIfAbsent(key, created);
+			if (histogram == null) {
+				histogram = created;
+				register(histogram, type, name, phase);
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Publishes the management interface of a component, such as a cache,
+	 * over JMX under the "stream" domain. If another component is already
+	 * published under the same name, such as the cache of an earlier
+	 * instance, it is replaced by this one.
+	 *
+	 * @param mbean
+	 *            the component, implementing its MBean interface
+	 * @param type
+	 *            type of the component
+	 * @param name
+	 *            name of the component
+	 */
+	public void register(Object mbean, String type, String name) {
+		register(mbean, String.format(COMPONENT_NAME_FORMAT, type, name));
+	}
+
+	private void register(LatencyHistogram histogram, String type,
+			String name, String phase) {
+		register(histogram,
+				String.format(OBJECT_NAME_FORMAT, type, name, phase));
+	}
+
+	private void register(Object mbean, String objectName) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(objectName);
+			synchronized (server) {
+				try {
+					server.registerMBean(mbean, name);
+				} catch (InstanceAlreadyExistsException e) {
+					// published by an earlier instance, which is stale now
+					server.unregisterMBean(name);
+					server.registerMBean(mbean, name);
+				}
+			}
+		} catch (JMException e) {
+			logError(LOG_REGISTER_FAILED, objectName, e.getMessage());
+		}
+	}
+
+}
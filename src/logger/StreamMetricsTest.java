@@ -0,0 +1,135 @@
+package logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import logger.StreamMetrics.Phase;
+
+import org.junit.Test;
+
+//@author A0096529N
+
+public class StreamMetricsTest {
+
+	private static final long SLEEP = 20;
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private StreamMetrics metrics = StreamMetrics.init();
+
+	@Test
+	public void nestedPhaseTest() throws Exception {
+		metrics.startCommand();
+		try {
+			metrics.enterPhase(Phase.EXECUTE);
+			try {
+				Thread.sleep(SLEEP);
+				metrics.enterPhase(Phase.UI_REFRESH);
+				try {
+					Thread.sleep(SLEEP);
+				} finally {
+					metrics.exitPhase();
+				}
+			} finally {
+				metrics.exitPhase();
+			}
+			metrics.setCommand("NESTEDTEST");
+			metrics.setCommand("IGNORED");
+		} finally {
+			metrics.endCommand();
+		}
+
+		LatencyHistogram total = metrics.getCommandHistogram("NESTEDTEST", null);
+		LatencyHistogram execute = metrics.getCommandHistogram("NESTEDTEST",
+				Phase.EXECUTE);
+		LatencyHistogram refresh = metrics.getCommandHistogram("NESTEDTEST",
+				Phase.UI_REFRESH);
+		assertEquals("Command counted", 1, total.getCount());
+		assertNull("Phase not entered", metrics.getCommandHistogram(
+				"NESTEDTEST", Phase.PARSE));
+		assertNull("First name kept", metrics.getCommandHistogram("IGNORED",
+				null));
+		assertTrue("Inner phase excluded from outer",
+				execute.getMeanMillis() < 2 * SLEEP);
+		assertTrue("Inner phase timed", refresh.getMeanMillis() >= SLEEP);
+		assertTrue("Total covers phases", total.getMeanMillis() >= 2 * SLEEP);
+
+		ObjectName name = new ObjectName(
+				"stream:type=Command,name=NESTEDTEST,phase=TOTAL");
+		assertEquals("Published over JMX", 1L, ManagementFactory
+				.getPlatformMBeanServer().getAttribute(name, "Count"));
+	}
+
+	@Test
+	public void commandAndOperationTest() {
+		metrics.startCommand();
+		metrics.setCommand("SAMENAMETEST");
+		metrics.endCommand();
+		metrics.record("SAMENAMETEST", (long) (2 * NANOS_PER_MILLI));
+		LatencyHistogram command = metrics.getCommandHistogram(
+				"SAMENAMETEST", null);
+		LatencyHistogram operation = metrics
+				.getOperationHistogram("SAMENAMETEST");
+		assertTrue("Kept apart by type", command != operation);
+		assertEquals("Command counted once", 1, command.getCount());
+		assertEquals("Operation counted once", 1, operation.getCount());
+	}
+
+	@Test
+	public void replaceRegisteredTest() throws Exception {
+		LatencyHistogram first = new LatencyHistogram();
+		LatencyHistogram second = new LatencyHistogram();
+		second.record((long) NANOS_PER_MILLI);
+		metrics.register(first, "Test", "REPLACETEST");
+		metrics.register(second, "Test", "REPLACETEST");
+		ObjectName name = new ObjectName("stream:type=Test,name=REPLACETEST");
+		assertEquals("Later component published", 1L, ManagementFactory
+				.getPlatformMBeanServer().getAttribute(name, "Count"));
+	}
+
+	@Test
+	public void noCommandTest() {
+		metrics.enterPhase(Phase.SAVE);
+		metrics.exitPhase();
+		metrics.endCommand();
+		assertNull("Not recorded outside a command",
+				metrics.getCommandHistogram("UNKNOWN", Phase.SAVE));
+	}
+
+	@Test
+	public void percentileTest() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i * 1000000L);
+		}
+		assertEquals("Count", 100, histogram.getCount());
+		assertEquals("Mean", 50.5, histogram.getMeanMillis(), 0.001);
+		assertEquals("Max", 100, histogram.getMaxMillis(), 0.001);
+		assertTrue("Median within a factor of two",
+				histogram.getP50Millis() >= 50
+						&& histogram.getP50Millis() < 100);
+		assertTrue("Percentiles ordered",
+				histogram.getP90Millis() <= histogram.getP99Millis());
+		assertEquals("P99 capped at max", 100, histogram.getP99Millis(),
+				0.001);
+	}
+
+	@Test
+	public void summaryTest() {
+		metrics.summarize();
+		metrics.record("SUMMARYTEST", (long) (2 * NANOS_PER_MILLI));
+		metrics.record("SUMMARYTEST", (long) (4 * NANOS_PER_MILLI));
+		String summary = metrics.summarize();
+		assertNotNull("Summary of new records", summary);
+		assertTrue(summary, summary.contains("SUMMARYTEST/TOTAL n=2 avg=3.00ms"));
+		String next = metrics.summarize();
+		assertTrue("Only records since last summary", next == null
+				|| !next.contains("SUMMARYTEST"));
+	}
+
+}
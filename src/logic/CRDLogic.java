@@ -2,19 +2,24 @@ package logic;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Set;
 import java.util.Stack;
 
 import parser.StreamParser;
-import parser.FilterParser.FilterType;
-import parser.RankParser.RankType;
+import parser.FilterPredicate;
 
 import exception.StreamRetrievalException;
 import exception.StreamModificationException;
 import util.StreamConstants;
 import logger.Loggable;
+import logger.StreamMetrics;
 import model.StreamObject;
 import model.StreamTask;
+import model.TagDictionary;
+import model.TaskColumns;
+import model.TaskIndex;
 
 //@author A0118007R
 /**
@@ -28,11 +33,21 @@ public class CRDLogic extends Loggable implements StackLogic {
 	private Stack<StreamTask> taskStack;
 
 	//@author A0096529N
+	private static final String QUERY_SEARCH = "search ";
+	private static final String QUERY_FILTER = "filter ";
+	private static final String CACHE_TYPE = "Cache";
+	private static final String CACHE_NAME = "Query";
+	private static final String VALUE_CACHE_HITS = "queryCacheHits";
+	private static final String VALUE_CACHE_MISSES = "queryCacheMisses";
+
+	private final QueryCache queryCache = new QueryCache();
+	private final StreamMetrics metrics = StreamMetrics.init();
 
 	public static CRDLogic init(StreamObject stobj) {
 		CRDLogic crdLogic = new CRDLogic();
 		crdLogic.stobj = stobj;
 		crdLogic.taskStack = new Stack<StreamTask>();
+		crdLogic.metrics.register(crdLogic.queryCache, CACHE_TYPE, CACHE_NAME);
 		return crdLogic;
 	}
 
@@ -41,15 +56,15 @@ public class CRDLogic extends Loggable implements StackLogic {
 		StreamTask deletedTask = (StreamTask) obj;
 		assert (deletedTask != null) : StreamConstants.Assertion.NULL_INVERSE_TASK;
 		taskStack.push(deletedTask);
-		logDebug(String.format(StreamConstants.LogMessage.PUSH_INVERSE_TASK,
-				deletedTask.getTaskName()));
+		logDebug(StreamConstants.LogMessage.PUSH_INVERSE_TASK,
+				deletedTask.getTaskName());
 	}
 
 	@Override
 	public StreamTask pop() {
 		StreamTask deletedTask = taskStack.pop();
-		logDebug(String.format(StreamConstants.LogMessage.POP_INVERSE_TASK,
-				deletedTask.getTaskName()));
+		logDebug(StreamConstants.LogMessage.POP_INVERSE_TASK,
+				deletedTask.getTaskName());
 		return deletedTask;
 	}
 
@@ -71,15 +86,13 @@ public class CRDLogic extends Loggable implements StackLogic {
 	 */
 	StreamTask addTask(String newTaskName) throws StreamModificationException {
 		if (hasTask(newTaskName)) {
-			logDebug(String.format(
-					StreamConstants.LogMessage.ADD_DUPLICATE_TASK, newTaskName));
+			logDebug(StreamConstants.LogMessage.ADD_DUPLICATE_TASK, newTaskName);
 			throw new StreamModificationException(String.format(
 					StreamConstants.ExceptionMessage.ERR_TASK_ALREADY_EXISTS,
 					newTaskName));
 		} else {
 			stobj.put(newTaskName, new StreamTask(newTaskName));
-			logDebug(String.format(StreamConstants.LogMessage.ADDED_TASK,
-					newTaskName));
+			logDebug(StreamConstants.LogMessage.ADDED_TASK, newTaskName);
 			try {
 				return getTask(newTaskName);
 			} catch (StreamRetrievalException wonthappen) {
@@ -111,10 +124,8 @@ public class CRDLogic extends Loggable implements StackLogic {
 		logDebug(StreamConstants.LogMessage.CLEARED_TASKS);
 	}
 
-	void updateTaskName(String oldName, String newName, StreamTask task,
-			int index) {
-		stobj.remove(oldName);
-		stobj.put(newName, task, index);
+	void updateTaskName(String oldName, StreamTask task) {
+		stobj.rename(oldName, task);
 	}
 
 	//@author A0118007R
@@ -176,10 +187,6 @@ public class CRDLogic extends Loggable implements StackLogic {
 		return stobj.containsKey(taskName);
 	}
 
-	int getIndex(String taskName) {
-		return stobj.indexOf(taskName);
-	}
-
 	//@author A0093874N
 	/**
 	 * Adds the given task back into storage
@@ -189,8 +196,7 @@ public class CRDLogic extends Loggable implements StackLogic {
 	 */
 	void addTask(StreamTask task) {
 		stobj.put(task.getTaskName(), task);
-		logDebug(String.format(StreamConstants.LogMessage.RECOVERED_TASK,
-				task.getTaskName()));
+		logDebug(StreamConstants.LogMessage.RECOVERED_TASK, task.getTaskName());
 	}
 
 	//@author A0096529N
@@ -210,6 +216,21 @@ public class CRDLogic extends Loggable implements StackLogic {
 	 *         nothing matches
 	 */
 	ArrayList<Integer> findTasks(String keyphrase) {
+		// search is case-insensitive throughout
+		String query = QUERY_SEARCH + keyphrase.toLowerCase();
+		long modCount = stobj.getModCount();
+		ArrayList<Integer> tasks = getCachedResult(query, modCount, null);
+		if (tasks != null) {
+			logDebug(StreamConstants.LogMessage.SEARCHED_TASKS, keyphrase,
+					tasks);
+			return tasks;
+		}
+		tasks = searchTasks(keyphrase);
+		queryCache.put(query, modCount, null, tasks);
+		return tasks;
+	}
+
+	private ArrayList<Integer> searchTasks(String keyphrase) {
 		// Split key phrase into keywords
 		String[] keywords = null;
 		if (keyphrase.contains(" ")) {
@@ -218,36 +239,61 @@ public class CRDLogic extends Loggable implements StackLogic {
 			keywords = new String[] { keyphrase };
 		}
 
-		ArrayList<Integer> tasks = new ArrayList<Integer>();
-		for (int i = 0; i < stobj.size(); i++) {
-			StreamTask task = stobj.get(stobj.get(i));
+		TaskIndex index = stobj.getIndex();
+		Set<StreamTask> candidates = index.findCandidates(keyphrase);
+		if (candidates == null) {
+			return scanTasks(keyphrase, keywords);
+		}
 
-			// check for matches between keywords and tags
-			if (task.hasTag(keywords)) {
-				tasks.add(i + 1);
-				continue;
+		// candidates only share trigrams with the key phrase, so check each
+		String lowerCaseKeyphrase = keyphrase.toLowerCase();
+		Set<StreamTask> matches = index.findTagged(keywords);
+		for (StreamTask task : candidates) {
+			if (!matches.contains(task)
+					&& containsKeyphrase(task, lowerCaseKeyphrase)) {
+				matches.add(task);
 			}
-			// improved by A0093874N: case-insensitive search
-			// check if task description contains key phrase
-			if (task.getDescription() != null
-					&& task.getDescription().toLowerCase()
-							.contains(keyphrase.toLowerCase())) {
-				tasks.add(i + 1);
-				continue;
-			}
-			// check if task name contains key phrase
-			if (task.getTaskName().toLowerCase()
-					.contains(keyphrase.toLowerCase())) {
+		}
+
+		ArrayList<Integer> tasks = positionsOf(matches);
+
+		logDebug(StreamConstants.LogMessage.SEARCHED_TASKS, keyphrase, tasks);
+		return tasks;
+	}
+
+	/**
+	 * Searches by checking every task, for key phrases the index cannot
+	 * narrow down.
+	 */
+	private ArrayList<Integer> scanTasks(String keyphrase, String[] keywords) {
+		String lowerCaseKeyphrase = keyphrase.toLowerCase();
+		int[] tagIds = TagDictionary.init().lookupIgnoringCase(keywords);
+		TaskColumns columns = stobj.getColumns();
+		BitSet tagged = columns.selectTagged(tagIds);
+		ArrayList<Integer> tasks = new ArrayList<Integer>();
+		for (int i = 0; i < columns.size(); i++) {
+			if (tagged.get(i)
+					|| containsKeyphrase(columns.get(i), lowerCaseKeyphrase)) {
 				tasks.add(i + 1);
-				continue;
 			}
 		}
-
-		logDebug(String.format(StreamConstants.LogMessage.SEARCHED_TASKS,
-				keyphrase, Arrays.toString(tasks.toArray())));
+		logDebug(StreamConstants.LogMessage.SEARCHED_TASKS, keyphrase, tasks);
 		return tasks;
 	}
 
+	// improved by A0093874N: case-insensitive search
+	private boolean containsKeyphrase(StreamTask task,
+			String lowerCaseKeyphrase) {
+		// check if task description contains key phrase
+		if (task.getDescription() != null
+				&& task.getDescription().toLowerCase()
+						.contains(lowerCaseKeyphrase)) {
+			return true;
+		}
+		// check if task name contains key phrase
+		return task.getTaskName().toLowerCase().contains(lowerCaseKeyphrase);
+	}
+
 	//@author A0093874N
 	/**
 	 * Filter tasks by various categories
@@ -257,104 +303,75 @@ public class CRDLogic extends Loggable implements StackLogic {
 	 * 
 	 */
 	ArrayList<Integer> filterTasks(String criteria) {
+		FilterPredicate filter = StreamParser.fp.compile(criteria);
+		if (!filter.isValid()) {
+			return filterTasks(criteria, filter);
+		}
+		// time-dependent results stay valid only while the filter's dates do
+		String query = QUERY_FILTER + filter.describe();
+		Object basis = filter.isTimeDependent() ? filter : null;
+		long modCount = stobj.getModCount();
+		ArrayList<Integer> tasks = getCachedResult(query, modCount, basis);
+		if (tasks != null) {
+			logDebug(StreamConstants.LogMessage.FILTERED_TASKS, criteria, tasks);
+			return tasks;
+		}
+		tasks = filterTasks(criteria, filter);
+		queryCache.put(query, modCount, basis, tasks);
+		return tasks;
+	}
+
+	private ArrayList<Integer> filterTasks(String criteria,
+			FilterPredicate filter) {
 		ArrayList<Integer> tasks = new ArrayList<Integer>();
-		FilterType type = StreamParser.fp.parse(criteria);
-		String[] contents;
-		Calendar dueDate;
-		for (int i = 1; i <= stobj.size(); i++) {
-			StreamTask task = stobj.get(stobj.get(i - 1));
-			switch (type) {
-				case DONE:
-					if (task.isDone()) {
-						tasks.add(i);
-					}
-					break;
-				case NOT:
-					if (!task.isDone()) {
-						tasks.add(i);
-					}
-					break;
-				case HIRANK:
-					if (StreamParser.rp.parse(task.getRank()) == RankType.HI) {
-						tasks.add(i);
-					}
-					break;
-				case MEDRANK:
-					if (StreamParser.rp.parse(task.getRank()) == RankType.MED) {
-						tasks.add(i);
-					}
-					break;
-				case LORANK:
-					if (StreamParser.rp.parse(task.getRank()) == RankType.LO) {
-						tasks.add(i);
-					}
-					break;
-				case STARTBEF:
-					contents = criteria.split(" ", 3);
-					dueDate = StreamParser.tp.parse(contents[2]);
-					if (task.getStartTime() != null
-							&& task.getStartTime().before(dueDate)) {
-						tasks.add(i);
-					}
-					break;
-				case STARTAFT:
-					contents = criteria.split(" ", 3);
-					dueDate = StreamParser.tp.parse(contents[2]);
-					if (task.getStartTime() != null
-							&& task.getStartTime().after(dueDate)) {
-						tasks.add(i);
-					}
-					break;
-				case DUEBEF:
-					contents = criteria.split(" ", 3);
-					dueDate = StreamParser.tp.parse(contents[2]);
-					if (task.getDeadline() != null
-							&& task.getDeadline().before(dueDate)) {
-						tasks.add(i);
-					}
-					break;
-				case DUEAFT:
-					contents = criteria.split(" ", 3);
-					dueDate = StreamParser.tp.parse(contents[2]);
-					if (task.getDeadline() != null
-							&& task.getDeadline().after(dueDate)) {
-						tasks.add(i);
-					}
-					break;
-				case NOTIMING:
-					if (task.isFloatingTask()) {
-						tasks.add(i);
-					}
-					break;
-				case DEADLINED:
-					if (task.isDeadlineTask()) {
-						tasks.add(i);
-					}
-					break;
-				case EVENT:
-					if (task.isTimedTask()) {
-						tasks.add(i);
-					}
-					break;
-				case OVERDUE:
-					if (task.isOverdue()) {
-						tasks.add(i);
-					}
-					break;
-				case INACTIVE:
-					if (task.isInactive()) {
-						tasks.add(i);
-					}
-					break;
-				default:
-					// shouldn't happen, but in case it happens, pretend
-					// that there is no filter
-					tasks.add(i);
-					break;
+		Set<StreamTask> candidates = filter.findCandidates(stobj.getIndex());
+		if (candidates == null) {
+			BitSet matched = filter.select(stobj.getColumns());
+			tasks.ensureCapacity(matched.cardinality());
+			for (int i = matched.nextSetBit(0); i >= 0; i = matched
+					.nextSetBit(i + 1)) {
+				tasks.add(i + 1);
 			}
+		} else {
+			// only the candidates need checking, the rest are skipped
+			ArrayList<StreamTask> matches = new ArrayList<StreamTask>();
+			for (StreamTask task : candidates) {
+				if (filter.matches(task)) {
+					matches.add(task);
+				}
+			}
+			tasks = positionsOf(matches);
 		}
-		logDebug(String.format(StreamConstants.LogMessage.FILTERED_TASKS,
-				criteria, Arrays.toString(tasks.toArray())));
+		logDebug(StreamConstants.LogMessage.FILTERED_TASKS, criteria, tasks);
+		return tasks;
+	}
+
+	//@author A0096529N
+	/**
+	 * @return the 1-based positions of the tasks in the task list, in order
+	 */
+	private ArrayList<Integer> positionsOf(Collection<StreamTask> matches) {
+		int[] positions = new int[matches.size()];
+		int count = 0;
+		for (StreamTask task : matches) {
+			int position = stobj.indexOf(task);
+			if (position >= 0) {
+				positions[count++] = position + 1;
+			}
+		}
+		Arrays.sort(positions, 0, count);
+		ArrayList<Integer> tasks = new ArrayList<Integer>(count);
+		for (int i = 0; i < count; i++) {
+			tasks.add(positions[i]);
+		}
+		return tasks;
+	}
+
+	private ArrayList<Integer> getCachedResult(String query, long modCount,
+			Object basis) {
+		ArrayList<Integer> tasks = queryCache.get(query, modCount, basis);
+		metrics.setValue(VALUE_CACHE_HITS, queryCache.getHits());
+		metrics.setValue(VALUE_CACHE_MISSES, queryCache.getMisses());
 		return tasks;
 	}
 
@@ -61,12 +61,10 @@ public class ModificationLogic extends Loggable {
 			throws StreamModificationException {
 		assert (newTaskName != null) : StreamConstants.Assertion.NULL_INPUT;
 		String taskName = task.getTaskName();
-		int index = crdLogic.getIndex(taskName);
 		if (!taskName.equals(newTaskName)) {
 			if (crdLogic.hasTask(newTaskName)) {
-				logDebug(String.format(
-						StreamConstants.LogMessage.UPDATE_TASK_NAME_DUPLICATE,
-						newTaskName));
+				logDebug(StreamConstants.LogMessage.UPDATE_TASK_NAME_DUPLICATE,
+						newTaskName);
 				throw new StreamModificationException(
 						String.format(
 								StreamConstants.ExceptionMessage.ERR_NEW_TASK_NAME_NOT_AVAILABLE,
@@ -74,7 +72,7 @@ public class ModificationLogic extends Loggable {
 			}
 		}
 		task.setTaskName(newTaskName);
-		crdLogic.updateTaskName(taskName, newTaskName, task, index);
+		crdLogic.updateTaskName(taskName, task);
 		String result = String.format(StreamConstants.LogMessage.NAME, taskName,
 				newTaskName);
 		logDebug(result);
@@ -106,8 +104,8 @@ public class ModificationLogic extends Loggable {
 	 *         object
 	 */
 	ArrayList<String> addTags(StreamTask task, String... tags) {
-		logDebug(String.format(StreamConstants.LogMessage.TAGS_TO_ADD,
-				task.getTaskName(), Arrays.toString(tags)));
+		logDebug(StreamConstants.LogMessage.TAGS_TO_ADD, task.getTaskName(),
+				Arrays.asList(tags));
 		ArrayList<String> tagsAdded = new ArrayList<String>();
 		for (String tag : tags) {
 			if (tag.contains(" ")) {
@@ -121,8 +119,8 @@ public class ModificationLogic extends Loggable {
 			}
 		}
 
-		logDebug(String.format(StreamConstants.LogMessage.TAGS_ADDED,
-				task.getTaskName(), Arrays.toString(tagsAdded.toArray())));
+		logDebug(StreamConstants.LogMessage.TAGS_ADDED, task.getTaskName(),
+				tagsAdded);
 		Collections.sort(task.getTags());
 		return tagsAdded;
 	}
@@ -136,8 +134,8 @@ public class ModificationLogic extends Loggable {
 	 *         task object
 	 */
 	ArrayList<String> removeTags(StreamTask task, String... tags) {
-		logDebug(String.format(StreamConstants.LogMessage.TAGS_TO_REMOVE,
-				task.getTaskName(), Arrays.toString(tags)));
+		logDebug(StreamConstants.LogMessage.TAGS_TO_REMOVE, task.getTaskName(),
+				Arrays.asList(tags));
 		ArrayList<String> tagsRemoved = new ArrayList<String>();
 		for (String tag : tags) {
 			tag = tag.toUpperCase();
@@ -147,8 +145,8 @@ public class ModificationLogic extends Loggable {
 			}
 		}
 
-		logDebug(String.format(StreamConstants.LogMessage.TAGS_REMOVED,
-				task.getTaskName(), Arrays.toString(tags)));
+		logDebug(StreamConstants.LogMessage.TAGS_REMOVED, task.getTaskName(),
+				Arrays.asList(tags));
 		Collections.sort(task.getTags());
 		return tagsRemoved;
 	}
@@ -246,7 +244,7 @@ public class ModificationLogic extends Loggable {
 			case MED:
 			case LO:
 				String translatedRank = StreamParser.rp.translate(parsedRankType);
-				task.setRank(translatedRank);
+				task.setRank(parsedRankType);
 				result = String.format(StreamConstants.LogMessage.RANK,
 						task.getTaskName(), translatedRank);
 			default:
@@ -363,8 +361,8 @@ public class ModificationLogic extends Loggable {
 				}
 				break;
 		}
-		logDebug(String.format(StreamConstants.LogMessage.NEW_MODIFICATION,
-				task.getTaskName(), attribute, contents));
+		logDebug(StreamConstants.LogMessage.NEW_MODIFICATION,
+				task.getTaskName(), attribute, contents);
 	}
 
 	// @author A0096529N
@@ -442,7 +440,7 @@ public class ModificationLogic extends Loggable {
 		if (!StreamUtil.calEqual(taskA.getDeadline(), taskB.getDeadline())) {
 			ATTR_ARRAY[ATTR_POS_DEADLINE] = true;
 		}
-		if (!taskA.getRank().equals(taskB.getRank())) {
+		if (taskA.getRank() != taskB.getRank()) {
 			ATTR_ARRAY[ATTR_POS_RANK] = true;
 		}
 		if (!taskA.isDone() ^ taskB.isDone()) {
@@ -1,8 +1,8 @@
 package logic;
 
-import java.util.Arrays;
-import java.util.Stack;
 import java.util.ArrayList;
+import java.util.Stack;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -10,24 +10,34 @@ import java.util.List;
 import logger.Loggable;
 import model.StreamObject;
 import model.StreamTask;
-import parser.StreamParser;
+import model.TaskColumns;
+import model.TaskIndex.TimeField;
+import parser.RankParser.RankType;
 import parser.SortParser.SortType;
 import util.StreamConstants;
-import util.StreamUtil;
 
 //@author A0096529N
 /**
  * Executes ordering-related processes such as sorting. Previous task orderings
- * are kept in a stack should any of them needs to be restored.
+ * are kept in a stack, as arrays of task ids, should any of them needs to be
+ * restored.
+ * 
+ * <p>
+ * Sorting by a time reads the times from the task columns and merge sorts
+ * them as primitives, keeping the current order of tasks with equal times.
+ * Other sorts compare the tasks themselves.
+ * </p>
  */
 public class OrderLogic extends Loggable implements StackLogic {
 
+	private static final long NO_TIME = StreamTask.NO_TIME;
+
 	private StreamObject stobj;
-	private Stack<ArrayList<String>> orderStack;
+	private Stack<int[]> orderStack;
 
 	private OrderLogic(StreamObject stobj) {
 		this.stobj = stobj;
-		this.orderStack = new Stack<ArrayList<String>>();
+		this.orderStack = new Stack<int[]>();
 	}
 
 	public static OrderLogic init(StreamObject stobj) {
@@ -35,26 +45,23 @@ public class OrderLogic extends Loggable implements StackLogic {
 	}
 
 	@Override
-	@SuppressWarnings("unchecked")
 	public void push(Object obj) {
-		ArrayList<String> newOrder = (ArrayList<String>) obj;
-		assert (newOrder != null && !newOrder.isEmpty()) : StreamConstants.Assertion.EMPTY_INVERSE_ORDER;
+		int[] newOrder = (int[]) obj;
+		assert (newOrder != null && newOrder.length > 0) : StreamConstants.Assertion.EMPTY_INVERSE_ORDER;
 		orderStack.push(newOrder);
-		logDebug(String.format(StreamConstants.LogMessage.PUSH_ORDER,
-				Arrays.toString(newOrder.toArray())));
+		logDebug(StreamConstants.LogMessage.PUSH_ORDER,
+				Arrays.toString(newOrder));
 	}
 
 	@Override
 	/**
 	 * Pops the order on the top of the ordering stack
 	 * 
-	 * @return taskList List of taskNames in the order that was pushed
-	 *         previously
+	 * @return order ids of the tasks in the order that was pushed previously
 	 */
-	public ArrayList<String> pop() {
-		ArrayList<String> order = orderStack.pop();
-		logDebug(String.format(StreamConstants.LogMessage.POP_ORDER,
-				Arrays.toString(order.toArray())));
+	public int[] pop() {
+		int[] order = orderStack.pop();
+		logDebug(StreamConstants.LogMessage.POP_ORDER, Arrays.toString(order));
 		return order;
 	}
 
@@ -88,14 +95,8 @@ public class OrderLogic extends Loggable implements StackLogic {
 	 *            true to reverse the order
 	 * @return result of the sort
 	 */
-	String sortStartTime(List<StreamTask> initList, final boolean isDescending) {
-		sort(initList, new Comparator<StreamTask>() {
-			@Override
-			public int compare(StreamTask o1, StreamTask o2) {
-				return isDescending ? compareStartTime(o1, o2, true)
-						: compareStartTime(o2, o1, false);
-			}
-		});
+	String sortStartTime(boolean isDescending) {
+		sortByTime(SortType.START, isDescending);
 		return "Sort by start time "
 				+ (isDescending ? "descending." : "ascending.");
 	}
@@ -107,14 +108,8 @@ public class OrderLogic extends Loggable implements StackLogic {
 	 *            true to reverse the order
 	 * @return result of the sort
 	 */
-	String sortDeadline(List<StreamTask> initList, final boolean isDescending) {
-		sort(initList, new Comparator<StreamTask>() {
-			@Override
-			public int compare(StreamTask o1, StreamTask o2) {
-				return isDescending ? compareDeadline(o1, o2, true)
-						: compareDeadline(o2, o1, false);
-			}
-		});
+	String sortDeadline(boolean isDescending) {
+		sortByTime(SortType.END, isDescending);
 		return "Sort by deadline "
 				+ (isDescending ? "descending." : "ascending.");
 	}
@@ -185,40 +180,8 @@ public class OrderLogic extends Loggable implements StackLogic {
 	 */
 	// Sort the task based on the time given, if start time is known, then
 	// sort based on start time, if not, then sort based on deadline
-	String sortTime(List<StreamTask> initList, final boolean isDescending) {
-		sort(initList, new Comparator<StreamTask>() {
-			@Override
-			public int compare(StreamTask o1, StreamTask o2) {
-				if (o1.getStartTime() == null && o1.getDeadline() == null
-						&& o2.getStartTime() == null
-						&& o2.getDeadline() == null) {
-					return 0;
-				} else if (o1.getStartTime() == null
-						&& o1.getDeadline() == null) {
-					return 1;
-				} else if (o2.getStartTime() == null
-						&& o2.getDeadline() == null) {
-					return -1;
-				} else if (o1.getStartTime() == null
-						&& o2.getStartTime() == null) {
-					return isDescending ? o2.getDeadline().compareTo(
-							o1.getDeadline()) : o1.getDeadline().compareTo(
-							o2.getDeadline());
-				} else if (o1.getStartTime() == null) {
-					return isDescending ? o2.getStartTime().compareTo(
-							o1.getDeadline()) : o1.getDeadline().compareTo(
-							o2.getStartTime());
-				} else if (o2.getStartTime() == null) {
-					return isDescending ? o2.getDeadline().compareTo(
-							o1.getStartTime()) : o1.getStartTime().compareTo(
-							o2.getDeadline());
-				} else {
-					return isDescending ? o2.getStartTime().compareTo(
-							o1.getStartTime()) : o1.getStartTime().compareTo(
-							o2.getStartTime());
-				}
-			}
-		});
+	String sortTime(boolean isDescending) {
+		sortByTime(SortType.TIME, isDescending);
 		return "Sort by time " + (isDescending ? "descending." : "ascending.");
 	}
 
@@ -234,18 +197,111 @@ public class OrderLogic extends Loggable implements StackLogic {
 		assert (comparator != null);
 		Collections.sort(initialList, comparator);
 
-		ArrayList<String> orderList = new ArrayList<String>();
-		for (StreamTask task : initialList) {
-			orderList.add(task.getTaskName());
+		assert (initialList.size() == stobj.size()) : StreamConstants.Assertion.NOT_EQUAL;
+		stobj.setOrder(initialList);
+		logDebug(StreamConstants.LogMessage.REORDER_TASKS, stobj.getTaskList());
+	}
+
+	/**
+	 * Sorts by start time, deadline or either, whichever the sort type is,
+	 * with tasks having no such time last. Tasks with equal times, and those
+	 * without, keep their current order.
+	 * 
+	 * @param type
+	 *            START, END or TIME
+	 * @param isDescending
+	 *            true to reverse the order of tasks having the time
+	 */
+	private void sortByTime(SortType type, boolean isDescending) {
+		TaskColumns columns = stobj.getColumns();
+		int size = columns.size();
+		long[] keys = new long[size];
+		int[] positions = new int[size];
+		int[] untimed = new int[size];
+		int timedCount = 0;
+		int untimedCount = 0;
+		for (int i = 0; i < size; i++) {
+			long time = timeOf(columns, type, i);
+			if (time == NO_TIME) {
+				untimed[untimedCount++] = i;
+			} else {
+				// negated rather than compared in reverse, so that the sort
+				// stays stable; NO_TIME, which cannot be negated, is left out
+				keys[timedCount] = isDescending ? -time : time;
+				positions[timedCount++] = i;
+			}
 		}
-		setOrdering(orderList);
+		positions = sortPositions(keys, positions, timedCount);
+
+		ArrayList<StreamTask> ordered = new ArrayList<StreamTask>(size);
+		for (int i = 0; i < timedCount; i++) {
+			ordered.add(columns.get(positions[i]));
+		}
+		for (int i = 0; i < untimedCount; i++) {
+			ordered.add(columns.get(untimed[i]));
+		}
+		assert (ordered.size() == stobj.size()) : StreamConstants.Assertion.NOT_EQUAL;
+		stobj.setOrder(ordered);
+		logDebug(StreamConstants.LogMessage.REORDER_TASKS, stobj.getTaskList());
 	}
 
-	void setOrdering(ArrayList<String> orderList) {
-		assert (StreamUtil.listEqual(stobj.getTaskList(), orderList)) : StreamConstants.Assertion.NOT_EQUAL;
-		stobj.setTaskList(orderList);
-		logDebug(String.format(StreamConstants.LogMessage.REORDER_TASKS,
-				Arrays.toString(orderList.toArray())));
+	private static long timeOf(TaskColumns columns, SortType type,
+			int position) {
+		switch (type) {
+			case START:
+				return columns.getTime(TimeField.START_TIME, position);
+			case END:
+				return columns.getTime(TimeField.DEADLINE, position);
+			default:
+				// start time if known, else deadline
+				long startTime = columns.getTime(TimeField.START_TIME,
+						position);
+				return startTime != NO_TIME ? startTime : columns.getTime(
+						TimeField.DEADLINE, position);
+		}
+	}
+
+	/**
+	 * Sorts the first count positions by their keys, by merging runs of
+	 * doubling length, so that positions with equal keys keep their order.
+	 * 
+	 * @return the sorted positions, which may be either array given
+	 */
+	private static int[] sortPositions(long[] keys, int[] positions, int count) {
+		long[] fromKeys = keys;
+		int[] fromPositions = positions;
+		long[] toKeys = new long[count];
+		int[] toPositions = new int[count];
+		for (int width = 1; width < count; width *= 2) {
+			for (int start = 0; start < count; start += 2 * width) {
+				int middle = Math.min(start + width, count);
+				int end = Math.min(start + 2 * width, count);
+				int left = start;
+				int right = middle;
+				for (int i = start; i < end; i++) {
+					if (left < middle
+							&& (right == end || fromKeys[left] <= fromKeys[right])) {
+						toKeys[i] = fromKeys[left];
+						toPositions[i] = fromPositions[left++];
+					} else {
+						toKeys[i] = fromKeys[right];
+						toPositions[i] = fromPositions[right++];
+					}
+				}
+			}
+			long[] swapKeys = fromKeys;
+			fromKeys = toKeys;
+			toKeys = swapKeys;
+			int[] swapPositions = fromPositions;
+			fromPositions = toPositions;
+			toPositions = swapPositions;
+		}
+		return fromPositions;
+	}
+
+	void setOrdering(int[] order) {
+		stobj.setOrder(order);
+		logDebug(StreamConstants.LogMessage.REORDER_TASKS, stobj.getTaskList());
 	}
 
 	/**
@@ -283,15 +339,8 @@ public class OrderLogic extends Loggable implements StackLogic {
 
 	private int compareDeadline(StreamTask task1, StreamTask task2,
 			boolean reverse) {
-		if (task1.getDeadline() == null && task2.getDeadline() == null) {
-			return 0;
-		} else if (task1.getDeadline() == null) {
-			return reverse ? 1 : -1;
-		} else if (task2.getDeadline() == null) {
-			return reverse ? -1 : 1;
-		} else {
-			return task2.getDeadline().compareTo(task1.getDeadline());
-		}
+		return compareTime(task1.deadlineMillis(), task2.deadlineMillis(),
+				reverse);
 	}
 
 	private int compareName(StreamTask task1, StreamTask task2) {
@@ -300,19 +349,24 @@ public class OrderLogic extends Loggable implements StackLogic {
 
 	private int compareStartTime(StreamTask task1, StreamTask task2,
 			boolean reverse) {
-		if (task1.getStartTime() == null && task2.getStartTime() == null) {
+		return compareTime(task1.startTimeMillis(), task2.startTimeMillis(),
+				reverse);
+	}
+
+	private int compareTime(long time1, long time2, boolean reverse) {
+		if (time1 == NO_TIME && time2 == NO_TIME) {
 			return 0;
-		} else if (task1.getStartTime() == null) {
+		} else if (time1 == NO_TIME) {
 			return reverse ? 1 : -1;
-		} else if (task2.getStartTime() == null) {
+		} else if (time2 == NO_TIME) {
 			return reverse ? -1 : 1;
 		} else {
-			return task2.getStartTime().compareTo(task1.getStartTime());
+			return Long.compare(time2, time1);
 		}
 	}
 
-	private int valueRank(String rank) {
-		switch (StreamParser.rp.parse(rank)) {
+	private int valueRank(RankType rank) {
+		switch (rank) {
 			case HI:
 				return 2;
 			case MED:
@@ -324,24 +378,24 @@ public class OrderLogic extends Loggable implements StackLogic {
 		}
 	}
 
-	String sort(List<StreamTask> initialList, SortType type,
-			Boolean isDescending) {
+	String sort(SortType type, Boolean isDescending) {
 		String result = null;
 		switch (type) {
 			case ALPHA:
-				result = sortAlpha(initialList, isDescending);
+				result = sortAlpha(stobj.getStreamTaskList(), isDescending);
 				break;
 			case END:
-				result = sortDeadline(initialList, isDescending);
+				result = sortDeadline(isDescending);
 				break;
 			case START:
-				result = sortStartTime(initialList, isDescending);
+				result = sortStartTime(isDescending);
 				break;
 			case TIME:
-				result = sortTime(initialList, isDescending);
+				result = sortTime(isDescending);
 				break;
 			case IMPORTANCE:
-				result = sortImportance(initialList, isDescending);
+				result = sortImportance(stobj.getStreamTaskList(),
+						isDescending);
 				break;
 			default:
 				// WILL NOT HAPPEN
@@ -0,0 +1,135 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+//@author A0096529N
+/**
+ * <p>
+ * Keeps the results of recent searches and filters, each tagged with the
+ * StreamObject modification count it was computed at. A result is only
+ * returned while the count is unchanged, so any change to the tasks makes
+ * every result stale without visiting them.
+ * </p>
+ *
+ * <p>
+ * Least recently used results are evicted once there are more than
+ * MAX_ENTRIES of them or they hold more than MAX_INDICES task indices in
+ * total.
+ * </p>
+ */
+public class QueryCache implements QueryCacheMBean {
+
+	static final int MAX_ENTRIES = 64;
+	static final int MAX_INDICES = 1 << 18;
+
+	// guarded by this
+	private final LinkedHashMap<String, Result> results = new LinkedHashMap<String, Result>(
+			MAX_ENTRIES, 0.75f, true);
+	private int cachedIndices = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	private static class Result {
+		private final long modCount;
+		private final Object basis;
+		private final int[] indices;
+
+		private Result(long modCount, Object basis, int[] indices) {
+			this.modCount = modCount;
+			this.basis = basis;
+			this.indices = indices;
+		}
+	}
+
+	/**
+	 * @param query
+	 *            the normalized query
+	 * @param modCount
+	 *            current modification count of the StreamObject
+	 * @param basis
+	 *            what else the result depends on, compared by identity, or
+	 *            null
+	 * @return a copy of the cached result, or null if none is valid
+	 */
+	synchronized ArrayList<Integer> get(String query, long modCount,
+			Object basis) {
+		Result result = results.get(query);
+		if (result == null || result.modCount != modCount
+				|| result.basis != basis) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		ArrayList<Integer> indices = new ArrayList<Integer>(
+				result.indices.length);
+		for (int index : result.indices) {
+			indices.add(index);
+		}
+		return indices;
+	}
+
+	/**
+	 * @param query
+	 *            the normalized query
+	 * @param modCount
+	 *            modification count of the StreamObject read before the
+	 *            result was computed
+	 * @param basis
+	 *            what else the result depends on, compared by identity, or
+	 *            null
+	 * @param indices
+	 *            the result
+	 */
+	synchronized void put(String query, long modCount, Object basis,
+			ArrayList<Integer> indices) {
+		if (indices.size() > MAX_INDICES) {
+			return;
+		}
+		int[] copy = new int[indices.size()];
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = indices.get(i);
+		}
+		Result previous = results.put(query, new Result(modCount, basis, copy));
+		if (previous != null) {
+			cachedIndices -= previous.indices.length;
+		}
+		cachedIndices += copy.length;
+		Iterator<Result> eldest = results.values().iterator();
+		while (results.size() > MAX_ENTRIES || cachedIndices > MAX_INDICES) {
+			cachedIndices -= eldest.next().indices.length;
+			eldest.remove();
+		}
+	}
+
+	@Override
+	public long getHits() {
+		return hits.get();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.get();
+	}
+
+	@Override
+	public double getHitRate() {
+		long total = hits.get() + misses.get();
+		return total == 0 ? 0 : (double) hits.get() / total;
+	}
+
+	@Override
+	public synchronized int getEntries() {
+		return results.size();
+	}
+
+	@Override
+	public synchronized int getCachedIndices() {
+		return cachedIndices;
+	}
+
+}
@@ -0,0 +1,19 @@
+package logic;
+
+//@author A0096529N
+/**
+ * Management interface of QueryCache, published over JMX.
+ */
+public interface QueryCacheMBean {
+
+	long getHits();
+
+	long getMisses();
+
+	double getHitRate();
+
+	int getEntries();
+
+	int getCachedIndices();
+
+}
@@ -0,0 +1,72 @@
+package logic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import model.StreamObject;
+import model.StreamTask;
+
+import org.junit.Test;
+
+//@author A0096529N
+
+public class QueryCacheTest {
+
+	private QueryCache cache = new QueryCache();
+
+	@Test
+	public void modCountTest() {
+		StreamObject stobj = StreamObject.init();
+		long modCount = stobj.getModCount();
+		cache.put("search a", modCount, null, indices(1, 2));
+		assertEquals("Hit while unchanged", indices(1, 2),
+				cache.get("search a", stobj.getModCount(), null));
+
+		stobj.put("task", new StreamTask("task"));
+		assertNull("Miss after adding a task",
+				cache.get("search a", stobj.getModCount(), null));
+
+		modCount = stobj.getModCount();
+		stobj.get("task").setDescription("changed");
+		assertEquals("Modifying a task is counted", true,
+				stobj.getModCount() != modCount);
+		assertEquals("Hits counted", 1, cache.getHits());
+		assertEquals("Misses counted", 1, cache.getMisses());
+	}
+
+	@Test
+	public void basisTest() {
+		Object basis = new Object();
+		cache.put("filter overdue", 0, basis, indices(3));
+		assertEquals("Same basis", indices(3),
+				cache.get("filter overdue", 0, basis));
+		assertNull("Other basis", cache.get("filter overdue", 0, new Object()));
+	}
+
+	@Test
+	public void evictionTest() {
+		for (int i = 0; i <= QueryCache.MAX_ENTRIES; i++) {
+			cache.put("search " + i, 0, null, indices(i));
+		}
+		assertEquals("Entries capped", QueryCache.MAX_ENTRIES,
+				cache.getEntries());
+		assertNull("Eldest evicted", cache.get("search 0", 0, null));
+
+		ArrayList<Integer> large = new ArrayList<Integer>();
+		for (int i = 0; i < QueryCache.MAX_INDICES; i++) {
+			large.add(i);
+		}
+		cache.put("search large", 0, null, large);
+		assertEquals("Indices capped", QueryCache.MAX_INDICES,
+				cache.getCachedIndices());
+		assertEquals("Only the newest kept", 1, cache.getEntries());
+	}
+
+	private static ArrayList<Integer> indices(Integer... indices) {
+		return new ArrayList<Integer>(Arrays.asList(indices));
+	}
+
+}
@@ -6,8 +6,8 @@ import java.util.Calendar;
 
 import parser.StreamCommand;
 import parser.StreamParser;
-import parser.FilterParser.FilterType;
 import parser.MarkParser.MarkType;
+import parser.RankParser.RankType;
 import parser.SortParser.SortType;
 import parser.StreamCommand.CommandType;
 import stream.Stream;
@@ -20,6 +20,8 @@ import exception.StreamModificationException;
 import exception.StreamParserException;
 import exception.StreamRestriction;
 import logger.Loggable;
+import logger.StreamMetrics;
+import logger.StreamMetrics.Phase;
 import model.StreamObject;
 import model.StreamTask;
 
@@ -36,6 +38,8 @@ public class StreamLogic extends Loggable {
 	private Stream st;
 	private StreamObject stobj;
 	private StreamParser stpar = StreamParser.init();
+	private StreamMetrics metrics = StreamMetrics.init();
+	private boolean isExitRequested = false;
 
 	public UndoLogic undoLogic = UndoLogic.init();
 	public CRDLogic crdLogic;
@@ -90,14 +94,41 @@ public class StreamLogic extends Loggable {
 		return stobj.size();
 	}
 
+	//@author A0096529N
+	/**
+	 * Checks whether an exit command has been executed. Exiting is left to
+	 * the caller, so that it happens after the StreamObject's monitor is
+	 * released.
+	 * 
+	 * @return true if the application should exit
+	 */
+	public boolean isExitRequested() {
+		return isExitRequested;
+	}
+
 	//@author A0118007R
 	public String parseAndExecute(String input)
 			throws StreamModificationException, StreamIOException,
 			StreamParserException, StreamRetrievalException {
-		StreamCommand cmd = stpar.parseCommand(input);
-		CommandType command = cmd.getKey();
-		Integer index = cmd.getIndex();
-		Object content = cmd.getContent();
+		StreamCommand cmd;
+		metrics.enterPhase(Phase.PARSE);
+		try {
+			cmd = stpar.parseCommand(input);
+		} finally {
+			metrics.exitPhase();
+		}
+		metrics.setCommand(cmd.getKey().name());
+		metrics.enterPhase(Phase.EXECUTE);
+		try {
+			return execute(cmd.getKey(), cmd.getIndex(), cmd.getContent());
+		} finally {
+			metrics.exitPhase();
+		}
+	}
+
+	private String execute(CommandType command, Integer index, Object content)
+			throws StreamModificationException, StreamIOException,
+			StreamParserException, StreamRetrievalException {
 		String result;
 		switch (command) {
 			case ADD:
@@ -209,7 +240,9 @@ public class StreamLogic extends Loggable {
 				break;
 
 			case EXIT:
-				st.exit();
+				isExitRequested = true;
+				result = null;
+				break;
 
 			default: // WILL NOT HAPPEN
 				result = null;
@@ -286,7 +319,7 @@ public class StreamLogic extends Loggable {
 	private String executeDelete(Integer taskIndex)
 			throws StreamRetrievalException {
 		StreamTask deletedTask = crdLogic.getTask(taskIndex);
-		ArrayList<String> order = stobj.getTaskListCopy();
+		int[] order = stobj.getOrder();
 		String taskName = deletedTask.getTaskName();
 
 		crdLogic.deleteTask(taskName);
@@ -347,11 +380,11 @@ public class StreamLogic extends Loggable {
 	 * Clears all tasks upon receiving the command "clear".
 	 */
 	private String executeClear() {
-		orderLogic.push(stobj.getTaskListCopy());
+		orderLogic.push(stobj.getOrder());
 		for (StreamTask task : stobj.getStreamTaskList()) {
 			crdLogic.push(task);
 		}
-		undoLogic.pushInverseClearCommand(stobj.getTaskListCopy(),
+		undoLogic.pushInverseClearCommand(stobj.getOrder(),
 				stobj.getStreamTaskList());
 		crdLogic.clear();
 		refreshUI(null);
@@ -411,7 +444,7 @@ public class StreamLogic extends Loggable {
 	private String executeRank(Integer taskIndex, String taskRank)
 			throws StreamRetrievalException {
 		StreamTask task = crdLogic.getTask(taskIndex);
-		String oldRank = task.getRank();
+		RankType oldRank = task.getRank();
 		String result = modLogic.setRank(task, taskRank);
 		refreshUI(task);
 
@@ -612,7 +645,7 @@ public class StreamLogic extends Loggable {
 	//@author A0096529N
 	// updated by A0119401U
 	private String executeSort(String content) {
-		ArrayList<String> oldOrdering = stobj.getTaskListCopy();
+		int[] oldOrdering = stobj.getOrder();
 		undoLogic.pushInverseSortCommand(oldOrdering);
 		orderLogic.push(oldOrdering);
 
@@ -634,7 +667,7 @@ public class StreamLogic extends Loggable {
 			// ok to ignore
 		}
 
-		result = orderLogic.sort(stobj.getStreamTaskList(), type, descending);
+		result = orderLogic.sort(type, descending);
 		refreshUI(null);
 		return result;
 	}
@@ -645,7 +678,7 @@ public class StreamLogic extends Loggable {
 	 * @return <strong>String</strong> - the log message
 	 */
 	private String executeUnsort() {
-		ArrayList<String> order = orderLogic.pop();
+		int[] order = orderLogic.pop();
 		undoLogic.pushPlaceholderInput();
 		orderLogic.setOrdering(order);
 		refreshUI(null);
@@ -682,18 +715,7 @@ public class StreamLogic extends Loggable {
 		ArrayList<Integer> filterResult = crdLogic.filterTasks(content);
 		refreshUiAfterSearch(filterResult);
 
-		FilterType type = StreamParser.fp.parse(content);
-		String log = StreamParser.fp.translate(type);
-		switch (type) {
-			case DUEBEF:
-			case DUEAFT:
-			case STARTBEF:
-			case STARTAFT:
-				String time = content.split(" ", 3)[2];
-				log += time;
-			default:
-				// no extra work needed
-		}
+		String log = StreamParser.fp.compile(content).describe();
 		String result = String.format(StreamConstants.LogMessage.FILTER, log,
 				filterResult.size());
 		return result;
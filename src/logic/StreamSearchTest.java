@@ -1,14 +1,18 @@
 package logic;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 
 import model.StreamObject;
 import model.StreamTask;
+import parser.RankParser.RankType;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -55,6 +59,104 @@ public class StreamSearchTest {
 	public void testSearch3() {
 		testOneSearch("Search for panda", stobj.getStreamTaskList(crdLogic.findTasks("im looking for a panda")), task2);
 	}
+	@Test 
+	public void testSearchAcrossWords() throws Exception {
+		addFillerTasks();
+		testOneSearch("Search within and across words", stobj.getStreamTaskList(crdLogic.findTasks("ora's bo")), task2);
+		testOneSearch("Search for part of a word", stobj.getStreamTaskList(crdLogic.findTasks("ambo")), task2);
+		testOneSearch("Search for words not adjacent", stobj.getStreamTaskList(crdLogic.findTasks("pandora box")));
+	}
+	@Test 
+	public void testSearchWithoutWords() {
+		testOneSearch("Search for punctuation", stobj.getStreamTaskList(crdLogic.findTasks(", ")), task1);
+	}
+	@Test 
+	public void testSearchAfterModification() throws Exception {
+		addFillerTasks();
+		task1.setDescription("Quantum mechanics");
+		testOneSearch("Search for new description", stobj.getStreamTaskList(crdLogic.findTasks("quantum")), task1);
+		testOneSearch("Search for old description", stobj.getStreamTaskList(crdLogic.findTasks("bamboo")), task2);
+
+		task2.setTaskName("Lost Box");
+		crdLogic.updateTaskName("Find Pandora's Box", task2);
+		testOneSearch("Search for new name", stobj.getStreamTaskList(crdLogic.findTasks("lost")), task2);
+		testOneSearch("Search for old name", stobj.getStreamTaskList(crdLogic.findTasks("pandora")));
+
+		task2.getTags().remove("PANDA");
+		testOneSearch("Search for removed tag", stobj.getStreamTaskList(crdLogic.findTasks("panda")));
+
+		crdLogic.deleteTask("Find X");
+		testOneSearch("Search for deleted task", stobj.getStreamTaskList(crdLogic.findTasks("quantum")));
+		crdLogic.addTask(task1);
+		testOneSearch("Search for recovered task", stobj.getStreamTaskList(crdLogic.findTasks("quantum")), task1);
+	}
+	@Test 
+	public void testSearchByTag() throws Exception {
+		addFillerTasks();
+		testOneSearch("Search for tag", stobj.getStreamTaskList(crdLogic.findTasks("simple")), task1);
+		task1.getTags().set(task1.getTags().indexOf("SIMPLE"), "EASY");
+		testOneSearch("Search for replaced tag", stobj.getStreamTaskList(crdLogic.findTasks("simple")));
+		testOneSearch("Search for new tag", stobj.getStreamTaskList(crdLogic.findTasks("Easy")), task1);
+		for (Iterator<String> tags = task2.getTags().iterator(); tags.hasNext();) {
+			if (tags.next().startsWith("P")) {
+				tags.remove();
+			}
+		}
+		assertEquals("Tag removed in bulk", false, task2.hasTag("panda"));
+		assertEquals("Other tags kept", true, task2.hasTag(new String[] {"panda", "noline"}));
+		crdLogic.getTask("Filler 0").getTags().add(new String("EASY"));
+		assertSame("Tags shared between tasks", task1.getTags().get(task1.getTags().indexOf("EASY")),
+				crdLogic.getTask("Filler 0").getTags().get(0));
+	}
+	@Test 
+	public void testFilterByTime() throws Exception {
+		addFillerTasks();
+		Calendar yesterday = Calendar.getInstance();
+		yesterday.add(Calendar.DAY_OF_MONTH, -1);
+		Calendar nextWeek = Calendar.getInstance();
+		nextWeek.add(Calendar.DAY_OF_MONTH, 7);
+		task1.setDeadline(yesterday);
+		task2.setStartTime(yesterday);
+		task2.setDeadline(nextWeek);
+		testOneSearch("Due before", stobj.getStreamTaskList(crdLogic.filterTasks("due before today")), task1);
+		testOneSearch("Due after", stobj.getStreamTaskList(crdLogic.filterTasks("due after today")), task2);
+		testOneSearch("Start before", stobj.getStreamTaskList(crdLogic.filterTasks("start before today")), task2);
+		testOneSearch("Combined with or", stobj.getStreamTaskList(crdLogic.filterTasks("due before today or start before today")), task1, task2);
+
+		task1.setDeadline(nextWeek);
+		testOneSearch("Due before after modification", stobj.getStreamTaskList(crdLogic.filterTasks("due before today")));
+		testOneSearch("Combined with and", stobj.getStreamTaskList(crdLogic.filterTasks("due after today and not done")), task1, task2);
+		task2.markAsDone();
+		testOneSearch("Combined after modification", stobj.getStreamTaskList(crdLogic.filterTasks("due after today and not done")), task1);
+		crdLogic.deleteTask("Find X");
+		testOneSearch("Due after deletion", stobj.getStreamTaskList(crdLogic.filterTasks("due after today")), task2);
+	}
+
+	@Test 
+	public void testFilterAfterModification() throws Exception {
+		addFillerTasks();
+		task1.setRank(RankType.HI);
+		testOneSearch("Rank", stobj.getStreamTaskList(crdLogic.filterTasks("rank high")), task1);
+		testOneSearch("Short key phrase", stobj.getStreamTaskList(crdLogic.findTasks("x")), task1, task2);
+
+		task2.setRank(RankType.HI);
+		task1.markAsDone();
+		testOneSearch("Rank after modification", stobj.getStreamTaskList(crdLogic.filterTasks("rank high")), task1, task2);
+		testOneSearch("Combined after modification", stobj.getStreamTaskList(crdLogic.filterTasks("rank high and not done")), task2);
+		StreamTask filler = crdLogic.getTask("Filler 0");
+		filler.getTags().add("X");
+		testOneSearch("Short key phrase after modification", stobj.getStreamTaskList(crdLogic.findTasks("x")), task1, task2, filler);
+		crdLogic.deleteTask("Find X");
+		testOneSearch("Rank after deletion", stobj.getStreamTaskList(crdLogic.filterTasks("rank high")), task2);
+	}
+
+	// enough unrelated tasks for the search index to be used
+	private void addFillerTasks() throws Exception {
+		for (int i = 0; i < 50; i++) {
+			crdLogic.addTask("Filler " + i);
+			crdLogic.getTask("Filler " + i).setDescription("Nothing to see");
+		}
+	}
 
 	private void testOneSearch(String testMessage, List<StreamTask> actualTasks, StreamTask...tasks) {
 		List<StreamTask> expectedTasks = Arrays.asList(tasks);
@@ -2,6 +2,8 @@ package logic;
 
 import java.util.ArrayList;
 
+import logger.StreamMetrics;
+import logger.StreamMetrics.Phase;
 import model.StreamTask;
 import ui.StreamUI;
 
@@ -14,6 +16,7 @@ import ui.StreamUI;
 public class UIUpdaterLogic {
 
 	private StreamUI stui;
+	private StreamMetrics metrics = StreamMetrics.init();
 
 	private UIUpdaterLogic(StreamUI ui) {
 		this.stui = ui;
@@ -25,7 +28,12 @@ public class UIUpdaterLogic {
 
 	void refreshUI(ArrayList<Integer> indices, ArrayList<StreamTask> tasks,
 			Boolean isReset, Boolean isSearching) {
-		stui.resetAvailableTasks(indices, tasks, isReset, isSearching);
+		metrics.enterPhase(Phase.UI_REFRESH);
+		try {
+			stui.resetAvailableTasks(indices, tasks, isReset, isSearching);
+		} finally {
+			metrics.exitPhase();
+		}
 	}
 
 	String goToFirstPage() {
@@ -5,6 +5,7 @@ import java.util.Calendar;
 import java.util.Stack;
 
 import parser.StreamParser;
+import parser.RankParser.RankType;
 import util.StreamConstants;
 import util.StreamUtil;
 import logger.Loggable;
@@ -46,15 +47,15 @@ public class UndoLogic extends Loggable implements StackLogic {
 		String inverseCommand = (String) obj;
 		assert (inverseCommand != null && !inverseCommand.isEmpty()) : StreamConstants.Assertion.EMPTY_INVERSE_COMMAND;
 		inputStack.push(inverseCommand);
-		logDebug(String.format(StreamConstants.LogMessage.PUSH_INVERSE_COMMAND,
-				inverseCommand));
+		logDebug(StreamConstants.LogMessage.PUSH_INVERSE_COMMAND,
+				inverseCommand);
 	}
 
 	@Override
 	public String pop() {
 		String inverseCommand = inputStack.pop();
-		logDebug(String.format(StreamConstants.LogMessage.POP_INVERSE_COMMAND,
-				inverseCommand));
+		logDebug(StreamConstants.LogMessage.POP_INVERSE_COMMAND,
+				inverseCommand);
 		return inverseCommand;
 	}
 
@@ -114,8 +115,7 @@ public class UndoLogic extends Loggable implements StackLogic {
 	 * @param order
 	 *            order of tasks to be reverted to
 	 */
-	void pushInverseDeleteCommand(StreamTask deletedTask,
-			ArrayList<String> order) {
+	void pushInverseDeleteCommand(StreamTask deletedTask, int[] order) {
 		push(String.format(CMD_RECOVER, 1));
 	}
 
@@ -128,7 +128,7 @@ public class UndoLogic extends Loggable implements StackLogic {
 	 * @param deletedTasks
 	 *            tasks that were deleted
 	 */
-	void pushInverseClearCommand(ArrayList<String> originalOrder,
+	void pushInverseClearCommand(int[] originalOrder,
 			ArrayList<StreamTask> deletedTasks) {
 		push(String.format(CMD_RECOVER, deletedTasks.size()));
 	}
@@ -142,8 +142,9 @@ public class UndoLogic extends Loggable implements StackLogic {
 	 * @param oldRank
 	 *            rank to be reverted to
 	 */
-	void pushInverseSetRankingCommand(int index, String oldRank) {
-		push(String.format(CMD_RANK, index, oldRank));
+	void pushInverseSetRankingCommand(int index, RankType oldRank) {
+		push(String.format(CMD_RANK, index,
+				StreamParser.rp.translate(oldRank)));
 	}
 
 	//@author A0093874N
@@ -204,7 +205,7 @@ public class UndoLogic extends Loggable implements StackLogic {
 	 * @param oldOrdering
 	 *            order of tasks to be reverted to
 	 */
-	void pushInverseSortCommand(ArrayList<String> oldOrdering) {
+	void pushInverseSortCommand(int[] oldOrdering) {
 		push(CMD_UNSORT);
 	}
 
@@ -269,8 +270,10 @@ public class UndoLogic extends Loggable implements StackLogic {
 	private String buildInverseModifyRank(StreamTask currTask,
 			String inverseCommand, Boolean isDone) {
 		inverseCommand = determineStatus(inverseCommand, isDone);
-		String oldRank = currTask.getRank();
-		inverseCommand += "-rank " + oldRank + " ";
+		String oldRank = StreamParser.rp.translate(currTask.getRank());
+		if (oldRank != null) {
+			inverseCommand += "-rank " + oldRank + " ";
+		}
 		return inverseCommand;
 	}
 
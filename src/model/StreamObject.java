@@ -1,22 +1,42 @@
 package model;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 //@author A0118007R
 /**
  * Storing all added tasks in form of <b>HashMap</b> to pair up the task name
- * and the task model, and <b>ArrayList</b> to determine the order of the tasks.
+ * and the task model, and a <b>TaskOrder</b> to determine the order of the
+ * tasks.
+ * 
+ * <p>
+ * The order holds tasks by their ids, so renaming a task only rekeys the
+ * name map, and snapshots of the order are arrays of ids.
+ * </p>
  */
 public class StreamObject {
 
 	private HashMap<String, StreamTask> taskMap;
-	private ArrayList<String> taskList;
+	private TaskOrder taskOrder;
+	private final List<String> taskList = new TaskNames();
+	private TaskIndex index;
+	private TaskColumns columns;
+	private final Set<StreamTask> changedTasks = Collections
+			.newSetFromMap(new IdentityHashMap<StreamTask, Boolean>());
+	private final AtomicLong modCount = new AtomicLong();
 
 	private StreamObject() {
 		this.taskMap = new HashMap<String, StreamTask>();
-		this.taskList = new ArrayList<String>();
+		this.taskOrder = new TaskOrder();
+		this.index = new TaskIndex(this);
 	}
 
 	/**
@@ -47,27 +67,102 @@ public class StreamObject {
 	 *            - the new hashmap containing all new tasks
 	 */
 	public void setTaskMap(HashMap<String, StreamTask> taskMap) {
+		index.invalidate();
 		this.taskMap = taskMap;
+		index.attachAll();
+		reorder(getTaskListCopy());
+		modified();
 	}
 
 	/**
-	 * Gets the ArrayList containing all current tasks stored as task names.
+	 * Gets the names of all current tasks, in order. The list is a read-only
+	 * view that follows later changes.
 	 * 
-	 * @return taskList - the ArrayList containing all current tasks
+	 * @return taskList - the list containing all current tasks
 	 */
-	public ArrayList<String> getTaskList() {
+	public List<String> getTaskList() {
 		return taskList;
 	}
 
 	/**
-	 * Sets the arraylist of the current tasks to be the one that is inputted.
-	 * For loading purposes.
+	 * Orders the current tasks by the names given. For loading purposes, after
+	 * setTaskMap. Names without a task are ignored, and tasks not named are
+	 * placed last.
 	 * 
 	 * @param taskList
-	 *            - the new arraylist containing all new tasks
+	 *            - the names of the tasks in their new order
 	 */
-	public void setTaskList(ArrayList<String> taskList) {
-		this.taskList = taskList;
+	public void setTaskList(List<String> taskList) {
+		reorder(taskList);
+		modified();
+	}
+
+	//@author A0096529N
+	/**
+	 * @return order - ids of the current tasks, in order
+	 */
+	public int[] getOrder() {
+		return taskOrder.ids();
+	}
+
+	/**
+	 * Restores an order returned by getOrder. Ids of tasks that have since
+	 * been removed are ignored, and tasks added since are placed last.
+	 * 
+	 * @param order
+	 *            - ids of the tasks in their new order
+	 */
+	public void setOrder(int[] order) {
+		ArrayList<StreamTask> tasks = new ArrayList<StreamTask>(order.length);
+		for (int id : order) {
+			StreamTask task = taskOrder.getById(id);
+			if (task != null) {
+				tasks.add(task);
+			}
+		}
+		setOrder(tasks);
+	}
+
+	/**
+	 * @return the current task with the given id, or null if there is none
+	 */
+	StreamTask getById(int id) {
+		return taskOrder.getById(id);
+	}
+
+	/**
+	 * Orders the current tasks as given. Tasks not given are placed last.
+	 * 
+	 * @param tasks
+	 *            - the tasks in their new order
+	 */
+	public void setOrder(List<StreamTask> tasks) {
+		ArrayList<StreamTask> current = new ArrayList<StreamTask>(tasks.size());
+		for (StreamTask task : tasks) {
+			if (taskOrder.contains(task)) {
+				current.add(task);
+			}
+		}
+		taskOrder = orderWithRemaining(current, taskOrder);
+		modified();
+	}
+
+	/**
+	 * Renames a task already set to its new name, keeping its place in the
+	 * order.
+	 * 
+	 * @param oldName
+	 *            - the name the task was stored under
+	 * @param task
+	 *            - the task, with its new name
+	 */
+	public void rename(String oldName, StreamTask task) {
+		String oldKey = oldName.toLowerCase();
+		if (taskMap.get(oldKey) == task) {
+			taskMap.remove(oldKey);
+		}
+		taskMap.put(task.getTaskName().toLowerCase(), task);
+		modified();
 	}
 
 	//@author A0096529N
@@ -80,7 +175,7 @@ public class StreamObject {
 	 * @return size - the number of tasks.
 	 */
 	public int size() {
-		return taskList.size();
+		return taskOrder.size();
 	}
 
 	/**
@@ -100,7 +195,7 @@ public class StreamObject {
 	 * @return task name - the name of the task
 	 */
 	public String get(int index) {
-		return taskList.get(index);
+		return taskOrder.get(index).getTaskName();
 	}
 
 	/**
@@ -112,8 +207,10 @@ public class StreamObject {
 	 * @return
 	 */
 	public StreamTask put(String taskName, StreamTask task) {
-		taskList.add(taskName);
-		return taskMap.put(taskName.toLowerCase(), task);
+		StreamTask previous = putIndexed(taskName, task);
+		taskOrder.add(task);
+		modified();
+		return previous;
 	}
 
 	/**
@@ -125,8 +222,10 @@ public class StreamObject {
 	 * @return
 	 */
 	public StreamTask put(String taskName, StreamTask task, int index) {
-		taskList.add(index, taskName);
-		return taskMap.put(taskName.toLowerCase(), task);
+		StreamTask previous = putIndexed(taskName, task);
+		taskOrder.add(index, task);
+		modified();
+		return previous;
 	}
 
 	/**
@@ -166,7 +265,21 @@ public class StreamObject {
 	 * @return index - the index of the task
 	 */
 	public int indexOf(String taskName) {
-		return taskList.indexOf(taskName);
+		StreamTask task = taskMap.get(taskName.toLowerCase());
+		if (task == null || !task.getTaskName().equals(taskName)) {
+			return -1;
+		}
+		return taskOrder.indexOf(task);
+	}
+
+	/**
+	 * Gets the index of a given task in the order
+	 * 
+	 * @param task
+	 * @return index - the index of the task, or -1 if it is not stored
+	 */
+	public int indexOf(StreamTask task) {
+		return taskOrder.indexOf(task);
 	}
 
 	/**
@@ -176,7 +289,8 @@ public class StreamObject {
 	 * @return true if it is already used, false otherwise
 	 */
 	public boolean contains(String taskName) {
-		return taskList.contains(taskName);
+		StreamTask task = taskMap.get(taskName.toLowerCase());
+		return task != null && task.getTaskName().equals(taskName);
 	}
 
 	/**
@@ -186,26 +300,30 @@ public class StreamObject {
 	 * @param taskName
 	 */
 	public void remove(String taskName) {
-		taskMap.remove(taskName.toLowerCase());
-		taskList.remove(taskName);
+		StreamTask removed = taskMap.remove(taskName.toLowerCase());
+		if (removed != null) {
+			index.remove(removed);
+			taskOrder.remove(removed);
+		}
+		modified();
 	}
 
 	/**
 	 * Clears all tasks
 	 */
 	public void clear() {
+		index.invalidate();
 		taskMap.clear();
-		taskList.clear();
+		taskOrder.clear();
+		modified();
 	}
 	
 	//@author A0093874N
 
 	public ArrayList<StreamTask> getStreamTaskList(ArrayList<Integer> indices) {
 		ArrayList<StreamTask> tasks = new ArrayList<StreamTask>();
-		HashMap<String, StreamTask> taskMap = getTaskMap();
-		ArrayList<String> taskList = getTaskList();
 		for (Integer index : indices) {
-			tasks.add(taskMap.get(taskList.get(index - 1).toLowerCase()));
+			tasks.add(taskOrder.get(index - 1));
 		}
 		return tasks;
 	}
@@ -225,6 +343,160 @@ public class StreamObject {
 		return new ArrayList<String>(getTaskList());
 	}
 
+	/**
+	 * @return the index over the tasks' names, descriptions and tags
+	 */
+	public TaskIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Gets the tasks' fields held column by column, for checking against
+	 * every task at once. Tasks modified since the last call are updated in
+	 * place, while adding, removing or reordering tasks has the columns built
+	 * anew.
+	 * 
+	 * @return columns - the columns of the current tasks, in order, valid
+	 *         until the next change
+	 */
+	public synchronized TaskColumns getColumns() {
+		// updating most tasks one by one would cost more than building anew
+		if (columns == null
+				|| changedTasks.size() > taskOrder.size()
+						/ TaskIndex.SCAN_FRACTION) {
+			columns = new TaskColumns(taskOrder);
+		} else {
+			for (StreamTask task : changedTasks) {
+				int position = taskOrder.indexOf(task);
+				if (position >= 0) {
+					columns.update(position, task);
+				}
+			}
+		}
+		changedTasks.clear();
+		return columns;
+	}
+
+	/**
+	 * Gets the modification count, which changes whenever a task is added,
+	 * removed or modified, or the order of tasks changes.
+	 * 
+	 * @return modCount - the modification count
+	 */
+	public long getModCount() {
+		return modCount.get();
+	}
+
+	synchronized void modified() {
+		columns = null;
+		changedTasks.clear();
+		modCount.incrementAndGet();
+	}
+
+	/**
+	 * Counts a change to one of the tasks that leaves the order as is.
+	 */
+	synchronized void modified(StreamTask task) {
+		if (columns != null) {
+			changedTasks.add(task);
+		}
+		modCount.incrementAndGet();
+	}
+
+	private StreamTask putIndexed(String taskName, StreamTask task) {
+		StreamTask previous = taskMap.put(taskName.toLowerCase(), task);
+		if (previous != null) {
+			index.remove(previous);
+			taskOrder.remove(previous);
+		}
+		index.add(task);
+		return previous;
+	}
+
+	private void reorder(List<String> taskNames) {
+		ArrayList<StreamTask> tasks = new ArrayList<StreamTask>(
+				taskNames.size());
+		for (String taskName : taskNames) {
+			StreamTask task = taskMap.get(taskName.toLowerCase());
+			if (task != null) {
+				tasks.add(task);
+			}
+		}
+		taskOrder = orderWithRemaining(tasks, taskMap.values());
+	}
+
+	/**
+	 * @return an order of the tasks given, followed by any of the current
+	 *         tasks not given
+	 */
+	private TaskOrder orderWithRemaining(List<StreamTask> tasks,
+			Collection<StreamTask> current) {
+		TaskOrder order = new TaskOrder(tasks);
+		ArrayList<StreamTask> remaining = new ArrayList<StreamTask>();
+		for (StreamTask task : current) {
+			if (!order.contains(task)) {
+				remaining.add(task);
+			}
+		}
+		if (remaining.isEmpty()) {
+			return order;
+		}
+		ArrayList<StreamTask> all = new ArrayList<StreamTask>(order);
+		all.addAll(remaining);
+		return new TaskOrder(all);
+	}
+
+	/**
+	 * Names of the tasks in order, as a read-only view.
+	 */
+	private class TaskNames extends AbstractList<String> {
+
+		@Override
+		public String get(int index) {
+			return taskOrder.get(index).getTaskName();
+		}
+
+		@Override
+		public int size() {
+			return taskOrder.size();
+		}
+
+		@Override
+		public int indexOf(Object taskName) {
+			return taskName instanceof String ? StreamObject.this
+					.indexOf((String) taskName) : -1;
+		}
+
+		@Override
+		public boolean contains(Object taskName) {
+			return indexOf(taskName) >= 0;
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			final Iterator<StreamTask> tasks = taskOrder.iterator();
+			return new Iterator<String>() {
+
+				@Override
+				public boolean hasNext() {
+					return tasks.hasNext();
+				}
+
+				@Override
+				public String next() {
+					return tasks.next().getTaskName();
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+
+			};
+		}
+
+	}
+
 	/**
 	 * @return taskList a copy of the task list.
 	 */
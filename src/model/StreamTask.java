@@ -2,35 +2,191 @@ package model;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import parser.RankParser.RankType;
 
 //@author A0118007R
 /**
  * The task object acting as the heart of the software. Contains all the
  * attributes, constructor, and attribute getters and setters for the task
  * object.
+ * 
+ * <p>
+ * Every change made through the setters or the tag list increments the task's
+ * version, which lets serialized forms of the task be reused until it
+ * changes.
+ * </p>
+ * 
+ * <p>
+ * Start time and deadline are held as epoch milliseconds, or NO_TIME if not
+ * set. The Calendar getters create a new Calendar on each call, so code that
+ * only compares times should use startTimeMillis and deadlineMillis instead.
+ * </p>
+ * 
+ * <p>
+ * Each task is given an id when created, which never changes, so the task can
+ * be found by id however it is renamed.
+ * </p>
+ * 
+ * <p>
+ * A task may be created with only its name, and the remaining attributes
+ * supplied by a Loader when first accessed. This lets large files be loaded
+ * without decoding every task up front.
+ * </p>
+ * 
+ * <p>
+ * Test fixtures compare task maps by serializing them with new
+ * JSONObject(taskMap), which includes every public getX and isX method of the
+ * task. Accessors for bookkeeping rather than task attributes, such as the
+ * id, version and pending loader, are therefore either not public or not
+ * named as getters.
+ * </p>
  */
 public class StreamTask {
 
+	//@author A0096529N
+	/**
+	 * Supplies the attributes of a task that was created before they were
+	 * read.
+	 */
+	public interface Loader {
+
+		/**
+		 * @return a task holding the attributes of the task being loaded, its
+		 *         name is ignored
+		 */
+		public StreamTask load();
+
+	}
+
+	//@author A0096529N
+	/**
+	 * Start time or deadline of a task that has none.
+	 */
+	public static final long NO_TIME = Long.MIN_VALUE;
+
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	//@author A0118007R
+
 	// Attributes
+	private final int id;
 	private String taskName;
 	private String taskDescription;
-	private Calendar startTime;
-	private Calendar deadline;
-	private ArrayList<String> tags;
+	private long startTime;
+	private long deadline;
+	private TagList tags;
 	private boolean isDone;
-	private String rank;
+	private RankType rank;
+	private long version;
+	private volatile Loader loader;
+	volatile TaskIndex index;
 
 	// Constructor
 	public StreamTask(String taskName) {
+		this.id = nextId.getAndIncrement();
 		this.taskName = taskName;
 		this.taskDescription = null;
-		this.startTime = null;
-		this.deadline = null;
-		this.tags = new ArrayList<String>();
+		this.startTime = NO_TIME;
+		this.deadline = NO_TIME;
+		this.tags = new TagList(this);
 		this.isDone = false;
-		this.rank = "low";
+		this.rank = RankType.LO;
 	}
 
+	//@author A0096529N
+	/**
+	 * Creates a task whose attributes are supplied by the loader when first
+	 * accessed.
+	 */
+	public StreamTask(String taskName, Loader loader) {
+		this(taskName);
+		this.loader = loader;
+	}
+
+	private StreamTask(StreamTask task) {
+		this.id = task.id;
+		this.taskName = task.taskName;
+		this.version = task.version;
+		this.loader = task.loader;
+		if (loader == null) {
+			this.taskDescription = task.taskDescription;
+			this.startTime = task.startTime;
+			this.deadline = task.deadline;
+			this.tags = new TagList(this, task.tags);
+			this.isDone = task.isDone;
+			this.rank = task.rank;
+		} else {
+			this.tags = new TagList(this);
+		}
+	}
+
+	/**
+	 * Copies the task as it is now, with the same id and version, for the
+	 * copy to be read on another thread while the task is modified. A task
+	 * not loaded yet is copied with its loader rather than loaded.
+	 * 
+	 * @return the copy, which is not to be modified
+	 */
+	public StreamTask snapshot() {
+		synchronized (this) {
+			return new StreamTask(this);
+		}
+	}
+
+	/**
+	 * Checks whether the given task is this task or a snapshot of it.
+	 * 
+	 * @return true if both tasks have the same id
+	 */
+	public boolean isSameTask(StreamTask task) {
+		return task != null && task.id == this.id;
+	}
+
+	/**
+	 * Gets the loader of a task that has not been loaded yet, so that its
+	 * stored form can be written out again without being decoded.
+	 * 
+	 * @return the loader, or null if the task is loaded
+	 */
+	public Loader pendingLoader() {
+		return loader;
+	}
+
+	/**
+	 * Loads the attributes of the task from its loader, if not done already.
+	 * Loading does not change the version of the task.
+	 */
+	public void ensureLoaded() {
+		if (loader != null) {
+			synchronized (this) {
+				if (loader != null) {
+					StreamTask loaded = loader.load();
+					this.taskDescription = loaded.taskDescription;
+					this.startTime = loaded.startTime;
+					this.deadline = loaded.deadline;
+					this.tags = new TagList(this, loaded.tags);
+					this.isDone = loaded.isDone;
+					this.rank = loaded.rank;
+					this.loader = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the id of a task, unique among all tasks created since the
+	 * application started.
+	 * 
+	 * @return this.id - the id of the task
+	 */
+	int getId() {
+		return this.id;
+	}
+
+	//@author A0118007R
+
 	// Getters and Setters
 
 	/**
@@ -50,6 +206,7 @@ public class StreamTask {
 	 */
 	public void setTaskName(String newTaskName) {
 		this.taskName = newTaskName;
+		touch();
 	}
 
 	/**
@@ -58,6 +215,7 @@ public class StreamTask {
 	 * @return this.taskDescription - the description of the task
 	 */
 	public String getDescription() {
+		ensureLoaded();
 		return this.taskDescription;
 	}
 
@@ -68,17 +226,20 @@ public class StreamTask {
 	 *            - the new description of the task
 	 */
 	public void setDescription(String description) {
+		ensureLoaded();
 		this.taskDescription = description;
+		touch();
 	}
 
 	//@author A0093874N
 	/**
 	 * Gets the start time of a task
 	 * 
-	 * @return this.startTime - the start time of the task
+	 * @return a new Calendar at the start time of the task, or null if none
 	 */
 	public Calendar getStartTime() {
-		return this.startTime;
+		ensureLoaded();
+		return toCalendar(this.startTime);
 	}
 
 	/**
@@ -88,7 +249,9 @@ public class StreamTask {
 	 *            - the new start time of the task
 	 */
 	public void setStartTime(Calendar startTime) {
-		this.startTime = startTime;
+		ensureLoaded();
+		this.startTime = toMillis(startTime);
+		touch();
 	}
 
 	/**
@@ -97,10 +260,11 @@ public class StreamTask {
 	 * @return true if not overdue, false otherwise
 	 */
 	public boolean isOverdue() {
-		if (deadline == null) {
+		ensureLoaded();
+		if (deadline == NO_TIME) {
 			return false;
 		} else {
-			return deadline.before(Calendar.getInstance());
+			return deadline < System.currentTimeMillis();
 		}
 	}
 
@@ -110,10 +274,11 @@ public class StreamTask {
 	 * @return true if inactive, false otherwise
 	 */
 	public boolean isInactive() {
-		if (startTime == null) {
+		ensureLoaded();
+		if (startTime == NO_TIME) {
 			return false;
 		} else {
-			return startTime.after(Calendar.getInstance());
+			return startTime > System.currentTimeMillis();
 		}
 	}
 
@@ -121,10 +286,11 @@ public class StreamTask {
 	/**
 	 * Gets the deadline of a task
 	 * 
-	 * @return this.deadline - the deadline of the task
+	 * @return a new Calendar at the deadline of the task, or null if none
 	 */
 	public Calendar getDeadline() {
-		return this.deadline;
+		ensureLoaded();
+		return toCalendar(this.deadline);
 	}
 
 	/**
@@ -134,13 +300,16 @@ public class StreamTask {
 	 *            - the new deadline of the task
 	 */
 	public void setDeadline(Calendar deadline) {
-		this.deadline = deadline;
+		ensureLoaded();
+		this.deadline = toMillis(deadline);
+		touch();
 	}
 
 	/**
 	 * Only used during loading
 	 */
 	public void addTag(String tag) {
+		ensureLoaded();
 		this.tags.add(tag);
 	}
 
@@ -150,6 +319,7 @@ public class StreamTask {
 	 * @return tags - the tags of the task
 	 */
 	public ArrayList<String> getTags() {
+		ensureLoaded();
 		return tags;
 	}
 
@@ -158,7 +328,8 @@ public class StreamTask {
 	 * 
 	 * @return this.rank - The rank of the task
 	 */
-	public String getRank() {
+	public RankType getRank() {
+		ensureLoaded();
 		return this.rank;
 	}
 
@@ -168,8 +339,10 @@ public class StreamTask {
 	 * @param newRank
 	 *            - the new rank of the task
 	 */
-	public void setRank(String newRank) {
+	public void setRank(RankType newRank) {
+		ensureLoaded();
 		this.rank = newRank;
+		touch();
 	}
 
 	/**
@@ -178,6 +351,7 @@ public class StreamTask {
 	 * @return true if done, false otherwise
 	 */
 	public boolean isDone() {
+		ensureLoaded();
 		return this.isDone;
 	}
 
@@ -204,7 +378,78 @@ public class StreamTask {
 	 * @param done
 	 */
 	public void setDone(boolean done) {
+		ensureLoaded();
 		this.isDone = done;
+		touch();
+	}
+
+	/**
+	 * Gets the start time of a task without creating a Calendar.
+	 * 
+	 * @return startTime - the start time in epoch milliseconds, or NO_TIME
+	 */
+	public long startTimeMillis() {
+		ensureLoaded();
+		return startTime;
+	}
+
+	/**
+	 * Gets the deadline of a task without creating a Calendar.
+	 * 
+	 * @return deadline - the deadline in epoch milliseconds, or NO_TIME
+	 */
+	public long deadlineMillis() {
+		ensureLoaded();
+		return deadline;
+	}
+
+	/**
+	 * Sets the start time of a task, as from startTimeMillis.
+	 * 
+	 * @param startTime
+	 *            - the start time in epoch milliseconds, or NO_TIME
+	 */
+	public void setStartTimeMillis(long startTime) {
+		ensureLoaded();
+		this.startTime = startTime;
+		touch();
+	}
+
+	/**
+	 * Sets the deadline of a task, as from deadlineMillis.
+	 * 
+	 * @param deadline
+	 *            - the deadline in epoch milliseconds, or NO_TIME
+	 */
+	public void setDeadlineMillis(long deadline) {
+		ensureLoaded();
+		this.deadline = deadline;
+		touch();
+	}
+
+	/**
+	 * Gets the version of a task, which changes whenever the task is modified.
+	 * 
+	 * @return version - the version of the task
+	 */
+	public long version() {
+		return version;
+	}
+
+	/**
+	 * @return sorted ids of the task's tags in TagDictionary
+	 */
+	int[] tagIds() {
+		ensureLoaded();
+		return tags.ids();
+	}
+
+	void touch() {
+		version++;
+		TaskIndex currentIndex = index;
+		if (currentIndex != null) {
+			currentIndex.markDirty(this);
+		}
 	}
 
 	/**
@@ -213,7 +458,8 @@ public class StreamTask {
 	 * @return true if it is a timed task, false otherwise
 	 */
 	public boolean isTimedTask() {
-		return startTime != null;
+		ensureLoaded();
+		return startTime != NO_TIME;
 	}
 
 	/**
@@ -222,7 +468,8 @@ public class StreamTask {
 	 * @return true if it has a deadline, false otherwise
 	 */
 	public boolean isDeadlineTask() {
-		return deadline != null;
+		ensureLoaded();
+		return deadline != NO_TIME;
 	}
 
 	/**
@@ -231,7 +478,8 @@ public class StreamTask {
 	 * @return true if it is floating, false otherwise
 	 */
 	public boolean isFloatingTask() {
-		return startTime == null && deadline == null;
+		ensureLoaded();
+		return startTime == NO_TIME && deadline == NO_TIME;
 	}
 
 	/**
@@ -242,7 +490,8 @@ public class StreamTask {
 	 * @return true if the task contains the specified tag, false otherwise
 	 */
 	public boolean hasTag(String tag) {
-		return tags.contains(tag.toUpperCase());
+		ensureLoaded();
+		return tags.containsId(TagDictionary.init().lookupIgnoringCase(tag));
 	}
 
 	/**
@@ -262,4 +511,44 @@ public class StreamTask {
 		return false;
 	}
 
-}
\ No newline at end of file
+	//@author A0096529N
+	/**
+	 * Checks whether a task has any of the tags, given by their ids in
+	 * TagDictionary. Lets a search look up its tags once rather than for
+	 * every task.
+	 * 
+	 * @param tagIds
+	 *            - sorted ids of the tags to be checked
+	 * @return true if the task has any of the tags, false otherwise
+	 */
+	public boolean hasTagId(int[] tagIds) {
+		int[] ids = tagIds();
+		int i = 0;
+		int j = 0;
+		while (i < ids.length && j < tagIds.length) {
+			if (ids[i] == tagIds[j]) {
+				return true;
+			} else if (ids[i] < tagIds[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return false;
+	}
+
+	//@author A0096529N
+	private static Calendar toCalendar(long millis) {
+		if (millis == NO_TIME) {
+			return null;
+		}
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(millis);
+		return calendar;
+	}
+
+	private static long toMillis(Calendar calendar) {
+		return calendar == null ? NO_TIME : calendar.getTimeInMillis();
+	}
+
+}
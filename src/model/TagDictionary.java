@@ -0,0 +1,130 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+//@author A0096529N
+/**
+ * <p>
+ * Dictionary of every tag used by any task, giving each distinct tag an int
+ * id. Tag lists keep the dictionary's copy of each tag, so a tag shared by
+ * many tasks is held once, and compare tags by id.
+ * </p>
+ *
+ * <p>
+ * Ids are never reused, so an id stays valid for as long as the application
+ * runs. Looking up a tag does not add it, so searching for tags no task has
+ * leaves the dictionary unchanged.
+ * </p>
+ */
+public class TagDictionary {
+
+	public static final int NO_ID = -1;
+
+	private static TagDictionary self = null;
+
+	private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+	// guarded by this for writes
+	private volatile String[] tags = new String[64];
+	private int size = 0;
+
+	private TagDictionary() {
+
+	}
+
+	public static synchronized TagDictionary init() {
+		if (self == null) {
+			self = new TagDictionary();
+		}
+		return self;
+	}
+
+	/**
+	 * Adds the tag if not already in the dictionary.
+	 *
+	 * @param tag
+	 *            the tag, exactly as stored in a tag list
+	 * @return id of the tag
+	 */
+	public int intern(String tag) {
+		Integer id = ids.get(tag);
+		if (id != null) {
+			return id;
+		}
+		synchronized (this) {
+			id = ids.get(tag);
+			if (id == null) {
+				if (size == tags.length) {
+					tags = Arrays.copyOf(tags, size * 2);
+				}
+				tags[size] = tag;
+				id = size++;
+				ids.put(tag, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * @param tag
+	 *            the tag, exactly as stored in a tag list
+	 * @return id of the tag, or NO_ID if no task has ever had the tag
+	 */
+	public int lookup(String tag) {
+		Integer id = ids.get(tag);
+		return id == null ? NO_ID : id;
+	}
+
+	/**
+	 * @param tag
+	 *            the tag as entered by the user, in any case
+	 * @return id of the upper-cased tag, as tags are stored by
+	 *         ModificationLogic, or NO_ID if no task has ever had it
+	 */
+	public int lookupIgnoringCase(String tag) {
+		return lookup(isUpperCase(tag) ? tag : tag.toUpperCase());
+	}
+
+	/**
+	 * Looks up several tags at once, as lookupIgnoringCase would each.
+	 *
+	 * @param tags
+	 *            the tags as entered by the user, in any case
+	 * @return ids of the tags some task has had, sorted
+	 */
+	public int[] lookupIgnoringCase(String[] tags) {
+		int[] found = new int[tags.length];
+		int count = 0;
+		for (String tag : tags) {
+			int id = lookupIgnoringCase(tag);
+			if (id != NO_ID) {
+				found[count++] = id;
+			}
+		}
+		found = Arrays.copyOf(found, count);
+		Arrays.sort(found);
+		return found;
+	}
+
+	/**
+	 * @param id
+	 *            id given by intern
+	 * @return the dictionary's copy of the tag
+	 */
+	public String getTag(int id) {
+		return tags[id];
+	}
+
+	private static boolean isUpperCase(String tag) {
+		for (int i = 0; i < tag.length(); i++) {
+			char c = tag.charAt(i);
+			if (Character.toUpperCase(c) != c) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
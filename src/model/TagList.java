@@ -0,0 +1,278 @@
+package model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+//@author A0096529N
+/**
+ * The tag list of a StreamTask. Behaves as an ArrayList, and marks its task
+ * as modified whenever the list is changed, including through its iterators
+ * and sublists.
+ *
+ * <p>
+ * ArrayList changes its elements directly in removeIf, replaceAll, sort and
+ * the set of its sublists, without going through the methods overridden
+ * here, so these are overridden too, and sublists are views that go through
+ * the list's own methods.
+ * </p>
+ *
+ * <p>
+ * Tags are stored as the TagDictionary's copy, and the list keeps the sorted
+ * ids of its tags so membership is a binary search over ints. The ids are
+ * recomputed after any change, which ArrayList signals through modCount for
+ * every change but set.
+ * </p>
+ */
+class TagList extends ArrayList<String> {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int[] NO_IDS = new int[0];
+
+	private final StreamTask owner;
+	private final TagDictionary dictionary = TagDictionary.init();
+
+	private volatile int[] ids = NO_IDS;
+	private volatile int idsModCount = modCount;
+
+	TagList(StreamTask owner) {
+		this.owner = owner;
+	}
+
+	TagList(StreamTask owner, Collection<String> tags) {
+		this.owner = owner;
+		super.addAll(intern(tags));
+	}
+
+	/**
+	 * @param id
+	 *            id of the tag, may be TagDictionary.NO_ID
+	 * @return whether the list has the tag
+	 */
+	boolean containsId(int id) {
+		return id != TagDictionary.NO_ID && Arrays.binarySearch(ids(), id) >= 0;
+	}
+
+	/**
+	 * @return sorted distinct ids of the tags, not to be modified
+	 */
+	int[] ids() {
+		int currentModCount = modCount;
+		int[] current = ids;
+		if (current == null || idsModCount != currentModCount) {
+			current = new int[size()];
+			int count = 0;
+			for (String tag : this) {
+				if (tag != null) {
+					current[count++] = dictionary.intern(tag);
+				}
+			}
+			Arrays.sort(current, 0, count);
+			int distinct = 0;
+			for (int i = 0; i < count; i++) {
+				if (i == 0 || current[i] != current[i - 1]) {
+					current[distinct++] = current[i];
+				}
+			}
+			current = Arrays.copyOf(current, distinct);
+			ids = current;
+			idsModCount = currentModCount;
+		}
+		return current;
+	}
+
+	private String intern(String tag) {
+		return tag == null ? null : dictionary.getTag(dictionary.intern(tag));
+	}
+
+	private Collection<String> intern(Collection<? extends String> tags) {
+		ArrayList<String> interned = new ArrayList<String>(tags.size());
+		for (String tag : tags) {
+			interned.add(intern(tag));
+		}
+		return interned;
+	}
+
+	@Override
+	public boolean add(String tag) {
+		owner.touch();
+		return super.add(intern(tag));
+	}
+
+	@Override
+	public void add(int index, String tag) {
+		owner.touch();
+		super.add(index, intern(tag));
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends String> tags) {
+		owner.touch();
+		return super.addAll(intern(tags));
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends String> tags) {
+		owner.touch();
+		return super.addAll(index, intern(tags));
+	}
+
+	@Override
+	public String set(int index, String tag) {
+		owner.touch();
+		String previous = super.set(index, intern(tag));
+		ids = null;
+		return previous;
+	}
+
+	@Override
+	public String remove(int index) {
+		owner.touch();
+		return super.remove(index);
+	}
+
+	@Override
+	public boolean remove(Object tag) {
+		owner.touch();
+		return super.remove(tag);
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> tags) {
+		owner.touch();
+		return super.removeAll(tags);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> tags) {
+		owner.touch();
+		return super.retainAll(tags);
+	}
+
+	@Override
+	public void clear() {
+		owner.touch();
+		super.clear();
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		owner.touch();
+		super.removeRange(fromIndex, toIndex);
+	}
+
+	@Override
+	public boolean removeIf(Predicate<? super String> filter) {
+		owner.touch();
+		return super.removeIf(filter);
+	}
+
+	@Override
+	public void replaceAll(UnaryOperator<String> operator) {
+		owner.touch();
+		for (int i = 0; i < size(); i++) {
+			super.set(i, intern(operator.apply(get(i))));
+		}
+		ids = null;
+	}
+
+	@Override
+	public void sort(Comparator<? super String> comparator) {
+		owner.touch();
+		super.sort(comparator);
+	}
+
+	@Override
+	public List<String> subList(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+			throw new IndexOutOfBoundsException("From: " + fromIndex
+					+ ", To: " + toIndex + ", Size: " + size());
+		}
+		return new SubList(fromIndex, toIndex);
+	}
+
+	/**
+	 * A range of the list, changed only through the list's own methods. The
+	 * bulk operations inherited from AbstractList are built on these.
+	 */
+	private class SubList extends AbstractList<String> {
+
+		private final int offset;
+		private int size;
+		private int expectedModCount = TagList.this.modCount;
+
+		private SubList(int fromIndex, int toIndex) {
+			this.offset = fromIndex;
+			this.size = toIndex - fromIndex;
+		}
+
+		@Override
+		public String get(int index) {
+			checkIndex(index, size);
+			return TagList.this.get(offset + index);
+		}
+
+		@Override
+		public String set(int index, String tag) {
+			checkIndex(index, size);
+			return TagList.this.set(offset + index, tag);
+		}
+
+		@Override
+		public void add(int index, String tag) {
+			checkIndex(index, size + 1);
+			TagList.this.add(offset + index, tag);
+			changedSize(1);
+		}
+
+		@Override
+		public String remove(int index) {
+			checkIndex(index, size);
+			String removed = TagList.this.remove(offset + index);
+			changedSize(-1);
+			return removed;
+		}
+
+		@Override
+		protected void removeRange(int fromIndex, int toIndex) {
+			checkIndex(fromIndex, size + 1);
+			TagList.this.removeRange(offset + fromIndex, offset + toIndex);
+			changedSize(fromIndex - toIndex);
+		}
+
+		@Override
+		public int size() {
+			checkForComodification();
+			return size;
+		}
+
+		private void changedSize(int change) {
+			size += change;
+			expectedModCount = TagList.this.modCount;
+			modCount++;
+		}
+
+		private void checkIndex(int index, int bound) {
+			checkForComodification();
+			if (index < 0 || index >= bound) {
+				throw new IndexOutOfBoundsException("Index: " + index
+						+ ", Size: " + size);
+			}
+		}
+
+		private void checkForComodification() {
+			if (TagList.this.modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,105 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+//@author A0096529N
+
+public class TagListTest {
+
+	private StreamTask task;
+	private List<String> tags;
+
+	@Before
+	public void setUp() {
+		task = new StreamTask("Code Jarvis");
+		tags = task.getTags();
+		tags.addAll(Arrays.asList("EPIC", "IMPOSSIBLE", "URGENT"));
+	}
+
+	@Test
+	public void removeIfTest() {
+		long version = task.version();
+		tags.removeIf(new Predicate<String>() {
+			@Override
+			public boolean test(String tag) {
+				return tag.startsWith("I");
+			}
+		});
+		assertModified("removeIf", version);
+		assertFalse("Removed tag", task.hasTag("IMPOSSIBLE"));
+	}
+
+	@Test
+	public void replaceAllTest() {
+		long version = task.version();
+		tags.replaceAll(new UnaryOperator<String>() {
+			@Override
+			public String apply(String tag) {
+				return tag.equals("EPIC") ? "LEGENDARY" : tag;
+			}
+		});
+		assertModified("replaceAll", version);
+		assertTrue("Replaced tag", task.hasTag("LEGENDARY"));
+		assertFalse("Replaced tag", task.hasTag("EPIC"));
+	}
+
+	@Test
+	public void sortTest() {
+		long version = task.version();
+		Collections.sort(tags, Collections.reverseOrder());
+		assertModified("sort", version);
+		assertEquals("Sorted", Arrays.asList("URGENT", "IMPOSSIBLE", "EPIC"),
+				tags);
+	}
+
+	@Test
+	public void subListTest() {
+		long version = task.version();
+		tags.subList(1, 3).set(0, "LEGENDARY");
+		assertModified("subList set", version);
+		assertTrue("Set through sublist", task.hasTag("LEGENDARY"));
+		assertFalse("Set through sublist", task.hasTag("IMPOSSIBLE"));
+
+		version = task.version();
+		tags.subList(0, 2).removeIf(new Predicate<String>() {
+			@Override
+			public boolean test(String tag) {
+				return tag.equals("EPIC");
+			}
+		});
+		assertModified("subList removeIf", version);
+		assertEquals("Removed through sublist",
+				Arrays.asList("LEGENDARY", "URGENT"), tags);
+
+		version = task.version();
+		Collections.sort(tags.subList(0, 2), Collections.reverseOrder());
+		assertModified("subList sort", version);
+		assertEquals("Sorted through sublist",
+				Arrays.asList("URGENT", "LEGENDARY"), tags);
+
+		version = task.version();
+		List<String> range = tags.subList(1, 2);
+		range.clear();
+		range.add("EPIC");
+		assertModified("subList clear", version);
+		assertEquals("Changed through sublist",
+				Arrays.asList("URGENT", "EPIC"), tags);
+	}
+
+	private void assertModified(String testMessage, long version) {
+		assertTrue(testMessage + " marks task modified",
+				task.version() > version);
+	}
+
+}
@@ -0,0 +1,232 @@
+package model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+import model.TaskIndex.TimeField;
+import parser.RankParser.RankType;
+
+//@author A0096529N
+/**
+ * <p>
+ * The fields filters and sorts look at, for every task of a StreamObject,
+ * held column by column in parallel arrays indexed by the task's position in
+ * the order: start time, deadline, rank and whether done, along with a bitmap
+ * of positions for each tag. Checking a criterion against every task is then
+ * a loop over one array, rather than a visit to each task.
+ * </p>
+ *
+ * <p>
+ * Kept by StreamObject, which builds the columns on first request and
+ * afterwards updates the positions of tasks modified since, or builds them
+ * anew if tasks were added, removed or reordered. Columns are only valid
+ * until the next change to the tasks.
+ * </p>
+ */
+public class TaskColumns {
+
+	private static final byte NO_RANK = -1;
+
+	private final int size;
+	private final StreamTask[] tasks;
+	private final long[] startTimes;
+	private final long[] deadlines;
+	private final byte[] ranks;
+	private final BitSet done;
+	private BitSet[] tagged = new BitSet[16];
+
+	/**
+	 * @param order
+	 *            the tasks, in order
+	 */
+	TaskColumns(Collection<StreamTask> order) {
+		this.size = order.size();
+		this.tasks = new StreamTask[size];
+		this.startTimes = new long[size];
+		this.deadlines = new long[size];
+		this.ranks = new byte[size];
+		this.done = new BitSet(size);
+		int position = 0;
+		for (StreamTask task : order) {
+			fill(position++, task);
+		}
+	}
+
+	/**
+	 * @return number of tasks
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param position
+	 *            0-based position of the task in the order
+	 * @return the task
+	 */
+	public StreamTask get(int position) {
+		return tasks[position];
+	}
+
+	/**
+	 * @param field
+	 *            the time wanted
+	 * @param position
+	 *            0-based position of the task in the order
+	 * @return the task's start time or deadline in epoch milliseconds, or
+	 *         StreamTask.NO_TIME if it has none
+	 */
+	public long getTime(TimeField field, int position) {
+		return timesOf(field)[position];
+	}
+
+	/**
+	 * @return positions of every task
+	 */
+	public BitSet selectAll() {
+		BitSet selected = new BitSet(size);
+		selected.set(0, size);
+		return selected;
+	}
+
+	/**
+	 * @param isDone
+	 *            whether the tasks selected are done or not done
+	 * @return positions of the tasks selected
+	 */
+	public BitSet selectDone(boolean isDone) {
+		if (isDone) {
+			return (BitSet) done.clone();
+		}
+		BitSet selected = selectAll();
+		selected.andNot(done);
+		return selected;
+	}
+
+	/**
+	 * @return positions of the tasks having the rank
+	 */
+	public BitSet selectRank(RankType rank) {
+		byte value = (byte) rank.ordinal();
+		BitSet selected = new BitSet(size);
+		for (int i = 0; i < size; i++) {
+			if (ranks[i] == value) {
+				selected.set(i);
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * @param field
+	 *            the time compared
+	 * @param hasTime
+	 *            whether the tasks selected have the time or not
+	 * @return positions of the tasks selected
+	 */
+	public BitSet selectTimed(TimeField field, boolean hasTime) {
+		long[] times = timesOf(field);
+		BitSet selected = new BitSet(size);
+		for (int i = 0; i < size; i++) {
+			if ((times[i] != StreamTask.NO_TIME) == hasTime) {
+				selected.set(i);
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * @param field
+	 *            the time compared
+	 * @param millis
+	 *            the time, in epoch milliseconds
+	 * @return positions of the tasks whose time is strictly before the given
+	 *         time, without tasks having no such time
+	 */
+	public BitSet selectBefore(TimeField field, long millis) {
+		long[] times = timesOf(field);
+		BitSet selected = new BitSet(size);
+		for (int i = 0; i < size; i++) {
+			if (times[i] != StreamTask.NO_TIME && times[i] < millis) {
+				selected.set(i);
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * @param field
+	 *            the time compared
+	 * @param millis
+	 *            the time, in epoch milliseconds
+	 * @return positions of the tasks whose time is strictly after the given
+	 *         time
+	 */
+	public BitSet selectAfter(TimeField field, long millis) {
+		// NO_TIME is never after any time
+		long[] times = timesOf(field);
+		BitSet selected = new BitSet(size);
+		for (int i = 0; i < size; i++) {
+			if (times[i] > millis) {
+				selected.set(i);
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * @param tagIds
+	 *            TagDictionary ids of the tags
+	 * @return positions of the tasks having any of the tags
+	 */
+	public BitSet selectTagged(int[] tagIds) {
+		BitSet selected = new BitSet(size);
+		for (int tag : tagIds) {
+			if (tag >= 0 && tag < tagged.length && tagged[tag] != null) {
+				selected.or(tagged[tag]);
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Replaces what is held for the task at the position, after the task was
+	 * modified.
+	 */
+	void update(int position, StreamTask task) {
+		for (BitSet positions : tagged) {
+			if (positions != null) {
+				positions.clear(position);
+			}
+		}
+		fill(position, task);
+	}
+
+	private void fill(int position, StreamTask task) {
+		tasks[position] = task;
+		startTimes[position] = task.startTimeMillis();
+		deadlines[position] = task.deadlineMillis();
+		RankType rank = task.getRank();
+		ranks[position] = rank == null ? NO_RANK : (byte) rank.ordinal();
+		done.set(position, task.isDone());
+		for (int tag : task.tagIds()) {
+			tagPositions(tag).set(position);
+		}
+	}
+
+	private long[] timesOf(TimeField field) {
+		return field == TimeField.START_TIME ? startTimes : deadlines;
+	}
+
+	private BitSet tagPositions(int tag) {
+		if (tag >= tagged.length) {
+			tagged = Arrays.copyOf(tagged, Math.max(tag + 1, tagged.length * 2));
+		}
+		if (tagged[tag] == null) {
+			tagged[tag] = new BitSet();
+		}
+		return tagged[tag];
+	}
+
+}
@@ -0,0 +1,506 @@
+package model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+//@author A0096529N
+/**
+ * <p>
+ * Index over the tasks of a StreamObject, mapping each trigram (run of three
+ * characters) of a task's lower-cased name and description, and each of its
+ * tags, to the tasks containing it. A task containing a key phrase contains
+ * every trigram of the key phrase, so intersecting their postings narrows a
+ * substring search down to a few candidates. Tags are indexed by their
+ * TagDictionary id, each with a bitmap of the tasks having it. Postings and
+ * bitmaps hold the tasks' own ids, and are resolved back to tasks through the
+ * StreamObject's order.
+ * </p>
+ *
+ * <p>
+ * Start times and deadlines are kept in separate sorted indexes, answering
+ * "before" and "after" filters with a binary search. The text and time
+ * indexes are built and updated independently, each on its first query, so
+ * filtering by time does not pay for indexing text.
+ * </p>
+ *
+ * <p>
+ * Tasks added or removed through StreamObject are indexed or dropped
+ * accordingly, and tasks modified through their setters or tag list are
+ * re-indexed before the next query. Replacing the whole task map, e.g. when
+ * loading, rebuilds the index on the next query.
+ * </p>
+ */
+public class TaskIndex {
+
+	static final int GRAM_LENGTH = 3;
+	static final int SCAN_FRACTION = 4;
+
+	private static final int CHAR_BITS = 10;
+	private static final int CHAR_MASK = (1 << CHAR_BITS) - 1;
+
+	private final StreamObject stobj;
+	private final TagDictionary dictionary = TagDictionary.init();
+
+	// guarded by this
+	private final HashMap<Integer, Postings> gramPostings = new HashMap<Integer, Postings>();
+	private final HashMap<Integer, BitSet> tagPostings = new HashMap<Integer, BitSet>();
+	private final Map<StreamTask, Entry> entries = new IdentityHashMap<StreamTask, Entry>();
+	private final Set<StreamTask> dirty = newTaskSet();
+	private boolean isStale = true;
+
+	// guarded by this
+	private final TimeIndex startTimes = new TimeIndex();
+	private final TimeIndex deadlines = new TimeIndex();
+	private final Map<StreamTask, long[]> timeEntries = new IdentityHashMap<StreamTask, long[]>();
+	private final Set<StreamTask> timeDirty = newTaskSet();
+	private boolean isTimeStale = true;
+
+	public enum TimeField {
+		START_TIME, DEADLINE;
+	}
+
+	/**
+	 * Trigrams and tags a task was indexed under.
+	 */
+	private static class Entry {
+		private final int[] grams;
+		private final int[] tags;
+
+		private Entry(int[] grams, int[] tags) {
+			this.grams = grams;
+			this.tags = tags;
+		}
+	}
+
+	/**
+	 * Sorted set of task ids.
+	 */
+	private static class Postings {
+		private int[] ids = new int[4];
+		private int size = 0;
+
+		private void add(int id) {
+			int position = Arrays.binarySearch(ids, 0, size, id);
+			if (position < 0) {
+				position = -position - 1;
+				if (size == ids.length) {
+					ids = Arrays.copyOf(ids, size * 2);
+				}
+				System.arraycopy(ids, position, ids, position + 1, size
+						- position);
+				ids[position] = id;
+				size++;
+			}
+		}
+
+		private void remove(int id) {
+			int position = Arrays.binarySearch(ids, 0, size, id);
+			if (position >= 0) {
+				System.arraycopy(ids, position + 1, ids, position, size
+						- position - 1);
+				size--;
+			}
+		}
+	}
+
+	TaskIndex(StreamObject stobj) {
+		this.stobj = stobj;
+	}
+
+	/**
+	 * Finds the tasks that may have the key phrase in their name or
+	 * description. Every task that does is returned, but some returned tasks
+	 * may not, so the caller has to check each of them.
+	 *
+	 * @param keyphrase
+	 *            the key phrase searched for
+	 * @return the candidate tasks, or null if the key phrase is too short or
+	 *         too common to narrow down the tasks with
+	 */
+	public synchronized Set<StreamTask> findCandidates(String keyphrase) {
+		int[] grams = toGrams(keyphrase.toLowerCase(), null);
+		if (grams.length == 0) {
+			return null;
+		}
+		refresh();
+		// start from the rarest trigram, then check the candidates' own
+		// trigrams for the rest
+		Postings rarest = null;
+		for (int gram : grams) {
+			Postings postings = gramPostings.get(gram);
+			if (postings == null) {
+				return newTaskSet();
+			}
+			if (rarest == null || postings.size < rarest.size) {
+				rarest = postings;
+			}
+		}
+		if (rarest.size > entries.size() / SCAN_FRACTION) {
+			// checking candidates one by one would cost more than a scan
+			return null;
+		}
+		Set<StreamTask> candidates = newTaskSet();
+		for (int i = 0; i < rarest.size; i++) {
+			StreamTask task = stobj.getById(rarest.ids[i]);
+			if (containsAll(entries.get(task).grams, grams)) {
+				candidates.add(task);
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Finds the tasks having any of the tags, as StreamTask.hasTag(String[])
+	 * would.
+	 *
+	 * @param tags
+	 *            the tags searched for
+	 * @return the tasks having at least one of the tags
+	 */
+	public synchronized Set<StreamTask> findTagged(String[] tags) {
+		refresh();
+		BitSet matched = new BitSet();
+		for (String tag : tags) {
+			BitSet postings = tagPostings.get(dictionary
+					.lookupIgnoringCase(tag));
+			if (postings != null) {
+				matched.or(postings);
+			}
+		}
+		Set<StreamTask> tagged = newTaskSet();
+		for (int id = matched.nextSetBit(0); id >= 0; id = matched
+				.nextSetBit(id + 1)) {
+			tagged.add(stobj.getById(id));
+		}
+		return tagged;
+	}
+
+	/**
+	 * Finds the tasks whose start time or deadline is strictly before the
+	 * given time, as Calendar.before would.
+	 *
+	 * @param field
+	 *            the time compared
+	 * @param millis
+	 *            the time, in epoch milliseconds
+	 * @return the tasks found, without tasks having no such time, or null if
+	 *         too many are found to be worth narrowing down to
+	 */
+	public synchronized Set<StreamTask> findBefore(TimeField field,
+			long millis) {
+		refreshTimes();
+		TimeIndex timeIndex = getTimeIndex(field);
+		if (isTooMany(timeIndex.countBefore(millis))) {
+			return null;
+		}
+		Set<StreamTask> found = newTaskSet();
+		timeIndex.addBefore(millis, found);
+		return found;
+	}
+
+	/**
+	 * Finds the tasks whose start time or deadline is strictly after the
+	 * given time, as Calendar.after would.
+	 *
+	 * @param field
+	 *            the time compared
+	 * @param millis
+	 *            the time, in epoch milliseconds
+	 * @return the tasks found, without tasks having no such time, or null if
+	 *         too many are found to be worth narrowing down to
+	 */
+	public synchronized Set<StreamTask> findAfter(TimeField field, long millis) {
+		refreshTimes();
+		TimeIndex timeIndex = getTimeIndex(field);
+		if (isTooMany(timeIndex.countAfter(millis))) {
+			return null;
+		}
+		Set<StreamTask> found = newTaskSet();
+		timeIndex.addAfter(millis, found);
+		return found;
+	}
+
+	synchronized void add(StreamTask task) {
+		task.index = this;
+		markDirty(task);
+	}
+
+	synchronized void remove(StreamTask task) {
+		if (task.index == this) {
+			task.index = null;
+		}
+		dirty.remove(task);
+		timeDirty.remove(task);
+		unindex(task);
+		unindexTimes(task);
+	}
+
+	synchronized void markDirty(StreamTask task) {
+		stobj.modified(task);
+		// a stale index is rebuilt from every task anyway
+		if (!isStale) {
+			dirty.add(task);
+		}
+		if (!isTimeStale) {
+			timeDirty.add(task);
+		}
+	}
+
+	/**
+	 * Drops every task, and rebuilds from the StreamObject on the next query.
+	 * Must be called before the StreamObject's tasks are replaced, so that
+	 * they stop reporting changes to this index.
+	 */
+	synchronized void invalidate() {
+		for (StreamTask task : stobj.getTaskMap().values()) {
+			if (task.index == this) {
+				task.index = null;
+			}
+		}
+		for (StreamTask task : entries.keySet()) {
+			if (task.index == this) {
+				task.index = null;
+			}
+		}
+		for (StreamTask task : dirty) {
+			if (task.index == this) {
+				task.index = null;
+			}
+		}
+		for (StreamTask task : timeEntries.keySet()) {
+			if (task.index == this) {
+				task.index = null;
+			}
+		}
+		for (StreamTask task : timeDirty) {
+			if (task.index == this) {
+				task.index = null;
+			}
+		}
+		startTimes.clear();
+		deadlines.clear();
+		timeEntries.clear();
+		timeDirty.clear();
+		isTimeStale = true;
+		gramPostings.clear();
+		tagPostings.clear();
+		entries.clear();
+		dirty.clear();
+		isStale = true;
+	}
+
+	/**
+	 * Has every task of the StreamObject report changes to this index, so
+	 * they are counted as modifications even before the index is built.
+	 */
+	synchronized void attachAll() {
+		for (StreamTask task : stobj.getTaskMap().values()) {
+			task.index = this;
+		}
+	}
+
+	private void refresh() {
+		if (isStale) {
+			dirty.clear();
+			for (StreamTask task : stobj.getTaskMap().values()) {
+				task.index = this;
+				index(task);
+			}
+			isStale = false;
+		}
+		for (StreamTask task : dirty) {
+			unindex(task);
+			if (task.index == this) {
+				index(task);
+			}
+		}
+		dirty.clear();
+	}
+
+	private void refreshTimes() {
+		if (isTimeStale) {
+			timeDirty.clear();
+			for (StreamTask task : stobj.getTaskMap().values()) {
+				task.index = this;
+				indexTimes(task, true);
+			}
+			startTimes.sort();
+			deadlines.sort();
+			isTimeStale = false;
+		}
+		for (StreamTask task : timeDirty) {
+			unindexTimes(task);
+			if (task.index == this) {
+				indexTimes(task, false);
+			}
+		}
+		timeDirty.clear();
+	}
+
+	/**
+	 * @param isBuilding
+	 *            whether the time indexes are being built, to be sorted once
+	 *            every task has been added
+	 */
+	private void indexTimes(StreamTask task, boolean isBuilding) {
+		long startTime = task.startTimeMillis();
+		long deadline = task.deadlineMillis();
+		if (startTime == StreamTask.NO_TIME && deadline == StreamTask.NO_TIME) {
+			return;
+		}
+		long[] times = new long[TimeField.values().length];
+		times[TimeField.START_TIME.ordinal()] = indexTime(startTimes,
+				startTime, task, isBuilding);
+		times[TimeField.DEADLINE.ordinal()] = indexTime(deadlines, deadline,
+				task, isBuilding);
+		timeEntries.put(task, times);
+	}
+
+	private void unindexTimes(StreamTask task) {
+		long[] times = timeEntries.remove(task);
+		if (times == null) {
+			return;
+		}
+		unindexTime(startTimes, times[TimeField.START_TIME.ordinal()], task);
+		unindexTime(deadlines, times[TimeField.DEADLINE.ordinal()], task);
+	}
+
+	private static long indexTime(TimeIndex timeIndex, long time,
+			StreamTask task, boolean isBuilding) {
+		if (time == StreamTask.NO_TIME) {
+			return time;
+		}
+		if (isBuilding) {
+			timeIndex.append(time, task);
+		} else {
+			timeIndex.add(time, task);
+		}
+		return time;
+	}
+
+	private static void unindexTime(TimeIndex timeIndex, long millis,
+			StreamTask task) {
+		if (millis != StreamTask.NO_TIME) {
+			timeIndex.remove(millis, task);
+		}
+	}
+
+	/**
+	 * @return whether checking the tasks found one by one would cost more
+	 *         than a scan
+	 */
+	private boolean isTooMany(int found) {
+		return found > stobj.getTaskMap().size() / SCAN_FRACTION;
+	}
+
+	private TimeIndex getTimeIndex(TimeField field) {
+		return field == TimeField.START_TIME ? startTimes : deadlines;
+	}
+
+	private void index(StreamTask task) {
+		int id = task.getId();
+		String description = task.getDescription();
+		int[] grams = toGrams(task.getTaskName().toLowerCase(),
+				description == null ? null : description.toLowerCase());
+		for (int gram : grams) {
+			Postings postings = gramPostings.get(gram);
+			if (postings == null) {
+				postings = new Postings();
+				gramPostings.put(gram, postings);
+			}
+			postings.add(id);
+		}
+		int[] tags = task.tagIds();
+		for (int tag : tags) {
+			BitSet tasks = tagPostings.get(tag);
+			if (tasks == null) {
+				tasks = new BitSet();
+				tagPostings.put(tag, tasks);
+			}
+			tasks.set(id);
+		}
+		entries.put(task, new Entry(grams, tags));
+	}
+
+	private void unindex(StreamTask task) {
+		Entry entry = entries.remove(task);
+		if (entry == null) {
+			return;
+		}
+		int id = task.getId();
+		for (int gram : entry.grams) {
+			Postings postings = gramPostings.get(gram);
+			postings.remove(id);
+			if (postings.size == 0) {
+				gramPostings.remove(gram);
+			}
+		}
+		for (int tag : entry.tags) {
+			BitSet tasks = tagPostings.get(tag);
+			tasks.clear(id);
+			if (tasks.isEmpty()) {
+				tagPostings.remove(tag);
+			}
+		}
+	}
+
+	/**
+	 * @return whether the sorted array of trigrams contains every one of the
+	 *         sorted trigrams searched for
+	 */
+	private static boolean containsAll(int[] grams, int[] searched) {
+		int position = 0;
+		for (int gram : searched) {
+			position = Arrays.binarySearch(grams, position, grams.length, gram);
+			if (position < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Collects the distinct trigrams of the lower-cased texts, sorted. Each
+	 * trigram is packed into an int from the low bits of its characters, so
+	 * distinct trigrams may share a value, which only adds candidates.
+	 */
+	private static int[] toGrams(String text, String otherText) {
+		int count = gramCount(text) + gramCount(otherText);
+		int[] grams = new int[count];
+		int size = addGrams(text, grams, 0);
+		size = addGrams(otherText, grams, size);
+		Arrays.sort(grams, 0, size);
+		int distinct = 0;
+		for (int i = 0; i < size; i++) {
+			if (i == 0 || grams[i] != grams[i - 1]) {
+				grams[distinct++] = grams[i];
+			}
+		}
+		return distinct == grams.length ? grams : Arrays.copyOf(grams,
+				distinct);
+	}
+
+	private static int gramCount(String text) {
+		return text == null ? 0 : Math.max(0, text.length() - GRAM_LENGTH + 1);
+	}
+
+	private static int addGrams(String text, int[] grams, int size) {
+		for (int i = 0; i < gramCount(text); i++) {
+			grams[size++] = (text.charAt(i) & CHAR_MASK) << (2 * CHAR_BITS)
+					| (text.charAt(i + 1) & CHAR_MASK) << CHAR_BITS
+					| (text.charAt(i + 2) & CHAR_MASK);
+		}
+		return size;
+	}
+
+	private static Set<StreamTask> newTaskSet() {
+		return Collections
+				.newSetFromMap(new IdentityHashMap<StreamTask, Boolean>());
+	}
+
+}
@@ -0,0 +1,475 @@
+package model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+//@author A0096529N
+/**
+ * <p>
+ * The display order of a StreamObject's tasks. Held as a treap ordered by
+ * position, where each node knows the size of its subtree and its parent,
+ * along with a map from each task's id to its node. Getting, inserting and
+ * removing at a position, and finding the position of a task, all take
+ * O(log n) expected time.
+ * </p>
+ *
+ * <p>
+ * Tasks are found by id rather than by name, so renaming a task leaves the
+ * order untouched. A task may appear only once.
+ * </p>
+ */
+class TaskOrder extends AbstractList<StreamTask> {
+
+	private final NodeMap nodes;
+	private final Random random = new Random();
+	private Node root = null;
+
+	// results of split
+	private Node splitLeft;
+	private Node splitRight;
+
+	// while building
+	private int[] priorities;
+	private int priorityCount;
+
+	private static class Node {
+		private StreamTask task;
+		private int id;
+		private int priority;
+		private int size = 1;
+		private Node left;
+		private Node right;
+		private Node parent;
+
+		private Node(StreamTask task, int priority) {
+			this.task = task;
+			this.id = task.getId();
+			this.priority = priority;
+		}
+	}
+
+	TaskOrder() {
+		this.nodes = new NodeMap(NodeMap.INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Builds the order from the tasks in one pass, rather than inserting them
+	 * one at a time. Repeats of a task after its first are ignored.
+	 */
+	TaskOrder(Collection<StreamTask> tasks) {
+		this.nodes = new NodeMap(tasks.size());
+		Node[] ordered = new Node[tasks.size()];
+		int[] priorities = new int[ordered.length];
+		for (int i = 0; i < priorities.length; i++) {
+			priorities[i] = random.nextInt();
+		}
+		// handed out highest first in preorder, so parents outrank children
+		Arrays.sort(priorities);
+		this.priorities = priorities;
+		int count = 0;
+		for (StreamTask task : tasks) {
+			Node node = new Node(task, 0);
+			if (nodes.put(node)) {
+				ordered[count++] = node;
+			}
+		}
+		priorityCount = count;
+		root = build(ordered, 0, count - 1);
+		if (root != null) {
+			root.parent = null;
+		}
+		this.priorities = null;
+	}
+
+	@Override
+	public int size() {
+		return sizeOf(root);
+	}
+
+	@Override
+	public StreamTask get(int index) {
+		return nodeAt(index).task;
+	}
+
+	/**
+	 * @return the task with the given id, or null if it is not in the order
+	 */
+	StreamTask getById(int id) {
+		Node node = nodes.get(id);
+		return node == null ? null : node.task;
+	}
+
+	@Override
+	public void add(int index, StreamTask task) {
+		if (index < 0 || index > size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size());
+		}
+		Node node = new Node(task, random.nextInt());
+		if (!nodes.put(node)) {
+			throw new IllegalArgumentException("Task already ordered: "
+					+ task.getTaskName());
+		}
+		split(root, index);
+		Node right = splitRight;
+		root = merge(merge(splitLeft, node), right);
+		root.parent = null;
+		modCount++;
+	}
+
+	/**
+	 * Replaces the task at the position, keeping its node in place, so the
+	 * shape of the tree is unchanged.
+	 */
+	@Override
+	public StreamTask set(int index, StreamTask task) {
+		Node node = nodeAt(index);
+		StreamTask previous = node.task;
+		if (task != previous) {
+			if (nodes.get(task.getId()) != null) {
+				throw new IllegalArgumentException("Task already ordered: "
+						+ task.getTaskName());
+			}
+			nodes.remove(node.id);
+			node.task = task;
+			node.id = task.getId();
+			nodes.put(node);
+		}
+		return previous;
+	}
+
+	@Override
+	public StreamTask remove(int index) {
+		Node node = nodeAt(index);
+		removeNode(node, index);
+		return node.task;
+	}
+
+	@Override
+	public boolean remove(Object task) {
+		Node node = nodeOf(task);
+		if (node == null) {
+			return false;
+		}
+		removeNode(node, positionOf(node));
+		return true;
+	}
+
+	@Override
+	public int indexOf(Object task) {
+		Node node = nodeOf(task);
+		return node == null ? -1 : positionOf(node);
+	}
+
+	@Override
+	public int lastIndexOf(Object task) {
+		return indexOf(task);
+	}
+
+	@Override
+	public boolean contains(Object task) {
+		return nodeOf(task) != null;
+	}
+
+	@Override
+	public void clear() {
+		root = null;
+		nodes.clear();
+		modCount++;
+	}
+
+	/**
+	 * @return ids of the tasks, in order
+	 */
+	int[] ids() {
+		int[] ids = new int[size()];
+		int i = 0;
+		for (Node node = first(root); node != null; node = successor(node)) {
+			ids[i++] = node.id;
+		}
+		return ids;
+	}
+
+	@Override
+	public Iterator<StreamTask> iterator() {
+		return new Iterator<StreamTask>() {
+
+			private Node next = first(root);
+			private Node lastReturned = null;
+			private int position = 0;
+			private int expectedModCount = modCount;
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public StreamTask next() {
+				if (modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+				lastReturned = next;
+				next = successor(next);
+				position++;
+				return lastReturned.task;
+			}
+
+			@Override
+			public void remove() {
+				if (lastReturned == null) {
+					throw new IllegalStateException();
+				}
+				if (modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+				removeNode(lastReturned, --position);
+				lastReturned = null;
+				expectedModCount = modCount;
+			}
+
+		};
+	}
+
+	private Node nodeOf(Object task) {
+		if (!(task instanceof StreamTask)) {
+			return null;
+		}
+		Node node = nodes.get(((StreamTask) task).getId());
+		return node != null && node.task == task ? node : null;
+	}
+
+	private Node build(Node[] ordered, int low, int high) {
+		if (low > high) {
+			return null;
+		}
+		int middle = (low + high) >>> 1;
+		Node node = ordered[middle];
+		node.priority = priorities[--priorityCount];
+		node.left = build(ordered, low, middle - 1);
+		node.right = build(ordered, middle + 1, high);
+		update(node);
+		return node;
+	}
+
+	private void removeNode(Node node, int index) {
+		split(root, index);
+		Node left = splitLeft;
+		split(splitRight, 1);
+		root = merge(left, splitRight);
+		if (root != null) {
+			root.parent = null;
+		}
+		nodes.remove(node.id);
+		node.left = null;
+		node.right = null;
+		node.parent = null;
+		modCount++;
+	}
+
+	private Node nodeAt(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size());
+		}
+		Node node = root;
+		while (true) {
+			int leftSize = sizeOf(node.left);
+			if (index < leftSize) {
+				node = node.left;
+			} else if (index == leftSize) {
+				return node;
+			} else {
+				index -= leftSize + 1;
+				node = node.right;
+			}
+		}
+	}
+
+	private static int positionOf(Node node) {
+		int position = sizeOf(node.left);
+		while (node.parent != null) {
+			if (node == node.parent.right) {
+				position += sizeOf(node.parent.left) + 1;
+			}
+			node = node.parent;
+		}
+		return position;
+	}
+
+	/**
+	 * Splits the tree into its first count nodes, left in splitLeft, and the
+	 * rest, left in splitRight.
+	 */
+	private void split(Node node, int count) {
+		if (node == null) {
+			splitLeft = null;
+			splitRight = null;
+		} else if (sizeOf(node.left) >= count) {
+			split(node.left, count);
+			node.left = splitRight;
+			update(node);
+			splitRight = node;
+		} else {
+			split(node.right, count - sizeOf(node.left) - 1);
+			node.right = splitLeft;
+			update(node);
+			splitLeft = node;
+		}
+	}
+
+	private static Node merge(Node left, Node right) {
+		if (left == null) {
+			return right;
+		} else if (right == null) {
+			return left;
+		} else if (left.priority > right.priority) {
+			left.right = merge(left.right, right);
+			update(left);
+			return left;
+		} else {
+			right.left = merge(left, right.left);
+			update(right);
+			return right;
+		}
+	}
+
+	private static void update(Node node) {
+		node.size = 1 + sizeOf(node.left) + sizeOf(node.right);
+		if (node.left != null) {
+			node.left.parent = node;
+		}
+		if (node.right != null) {
+			node.right.parent = node;
+		}
+	}
+
+	private static int sizeOf(Node node) {
+		return node == null ? 0 : node.size;
+	}
+
+	private static Node first(Node node) {
+		if (node == null) {
+			return null;
+		}
+		while (node.left != null) {
+			node = node.left;
+		}
+		return node;
+	}
+
+	private static Node successor(Node node) {
+		if (node.right != null) {
+			return first(node.right);
+		}
+		while (node.parent != null && node == node.parent.right) {
+			node = node.parent;
+		}
+		return node.parent;
+	}
+
+	/**
+	 * Nodes by task id, in an open-addressed table so that ids are not boxed.
+	 */
+	private static class NodeMap {
+
+		private static final int INITIAL_CAPACITY = 16;
+
+		private Node[] table;
+		private int size = 0;
+
+		private NodeMap(int expectedSize) {
+			int capacity = INITIAL_CAPACITY;
+			while (capacity < expectedSize * 2) {
+				capacity *= 2;
+			}
+			table = new Node[capacity];
+		}
+
+		private Node get(int id) {
+			int mask = table.length - 1;
+			for (int i = hash(id) & mask; table[i] != null; i = (i + 1) & mask) {
+				if (table[i].id == id) {
+					return table[i];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * @return false if a node with the same id is already held
+		 */
+		private boolean put(Node node) {
+			if ((size + 1) * 2 > table.length) {
+				resize(table.length * 2);
+			}
+			int mask = table.length - 1;
+			int i = hash(node.id) & mask;
+			for (; table[i] != null; i = (i + 1) & mask) {
+				if (table[i].id == node.id) {
+					return false;
+				}
+			}
+			table[i] = node;
+			size++;
+			return true;
+		}
+
+		private void remove(int id) {
+			int mask = table.length - 1;
+			int i = hash(id) & mask;
+			while (table[i] != null && table[i].id != id) {
+				i = (i + 1) & mask;
+			}
+			if (table[i] == null) {
+				return;
+			}
+			table[i] = null;
+			size--;
+			// move back any later node that can no longer be reached
+			for (int j = (i + 1) & mask; table[j] != null; j = (j + 1) & mask) {
+				int home = hash(table[j].id) & mask;
+				if (((j - home) & mask) >= ((j - i) & mask)) {
+					table[i] = table[j];
+					table[j] = null;
+					i = j;
+				}
+			}
+		}
+
+		private void clear() {
+			table = new Node[INITIAL_CAPACITY];
+			size = 0;
+		}
+
+		private void resize(int capacity) {
+			Node[] old = table;
+			table = new Node[capacity];
+			int mask = capacity - 1;
+			for (Node node : old) {
+				if (node != null) {
+					int i = hash(node.id) & mask;
+					while (table[i] != null) {
+						i = (i + 1) & mask;
+					}
+					table[i] = node;
+				}
+			}
+		}
+
+		private static int hash(int id) {
+			int h = id * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+
+	}
+
+}
@@ -0,0 +1,218 @@
+package model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+//@author A0096529N
+
+public class TaskOrderTest {
+
+	private static final long SEED = 2041;
+	private static final int OPERATIONS = 20000;
+	private static final int CHECK_INTERVAL = 250;
+
+	/*
+	 * Applies the same random operations to TaskOrder and an ArrayList, and
+	 * checks that they agree throughout.
+	 */
+	@Test
+	public void randomOperationsTest() {
+		Random random = new Random(SEED);
+		TaskOrder order = new TaskOrder();
+		ArrayList<StreamTask> expected = new ArrayList<StreamTask>();
+		ArrayList<StreamTask> unordered = new ArrayList<StreamTask>();
+		for (int i = 0; i < OPERATIONS; i++) {
+			int size = expected.size();
+			switch (random.nextInt(8)) {
+				case 0:
+				case 1:
+					int index = random.nextInt(size + 1);
+					StreamTask added = takeUnordered(random, unordered);
+					order.add(index, added);
+					expected.add(index, added);
+					break;
+				case 2:
+					if (size > 0) {
+						int removed = random.nextInt(size);
+						StreamTask task = expected.remove(removed);
+						assertSame("remove at " + removed, task,
+								order.remove(removed));
+						unordered.add(task);
+					}
+					break;
+				case 3:
+					if (size > 0) {
+						StreamTask task = expected.get(random.nextInt(size));
+						assertTrue("remove task", order.remove(task));
+						expected.remove(task);
+						unordered.add(task);
+					}
+					break;
+				case 4:
+					if (size > 0) {
+						int replaced = random.nextInt(size);
+						StreamTask task = takeUnordered(random, unordered);
+						StreamTask previous = expected.set(replaced, task);
+						assertSame("set at " + replaced, previous,
+								order.set(replaced, task));
+						unordered.add(previous);
+					}
+					break;
+				case 5:
+					if (size > 0) {
+						int position = random.nextInt(size);
+						assertSame("get " + position, expected.get(position),
+								order.get(position));
+					}
+					break;
+				default:
+					StreamTask task = size > 0 && random.nextBoolean() ? expected
+							.get(random.nextInt(size)) : takeUnordered(random,
+							unordered);
+					assertEquals("indexOf", expected.indexOf(task),
+							order.indexOf(task));
+					assertEquals("contains", expected.contains(task),
+							order.contains(task));
+					if (!expected.contains(task)) {
+						unordered.add(task);
+					}
+			}
+			assertEquals("size", expected.size(), order.size());
+			if (i % CHECK_INTERVAL == 0) {
+				assertOrder(expected, order);
+			}
+		}
+		assertOrder(expected, order);
+	}
+
+	@Test
+	public void removeThroughIteratorTest() {
+		TaskOrder order = new TaskOrder();
+		ArrayList<StreamTask> expected = new ArrayList<StreamTask>();
+		for (int i = 0; i < 100; i++) {
+			StreamTask task = new StreamTask("Task " + i);
+			order.add(task);
+			expected.add(task);
+		}
+		Iterator<StreamTask> tasks = order.iterator();
+		Iterator<StreamTask> expectedTasks = expected.iterator();
+		int i = 0;
+		while (tasks.hasNext()) {
+			assertSame(expectedTasks.next(), tasks.next());
+			if (i++ % 3 == 0) {
+				tasks.remove();
+				expectedTasks.remove();
+			}
+		}
+		assertOrder(expected, order);
+	}
+
+	/*
+	 * Grows the id map through several resizes, then removes most tasks so
+	 * that later lookups probe past the removed entries.
+	 */
+	@Test
+	public void nodeMapResizeTest() {
+		TaskOrder order = new TaskOrder();
+		ArrayList<StreamTask> expected = new ArrayList<StreamTask>();
+		for (int i = 0; i < 5000; i++) {
+			StreamTask task = new StreamTask("Task " + i);
+			order.add(i / 2, task);
+			expected.add(i / 2, task);
+		}
+		assertOrder(expected, order);
+
+		ArrayList<StreamTask> removed = new ArrayList<StreamTask>();
+		Random random = new Random(SEED);
+		for (int i = 0; i < 4000; i++) {
+			StreamTask task = expected.remove(random.nextInt(expected.size()));
+			assertTrue("remove task", order.remove(task));
+			removed.add(task);
+		}
+		assertOrder(expected, order);
+		for (StreamTask task : removed) {
+			assertNull("removed id", order.getById(task.getId()));
+			assertEquals("removed index", -1, order.indexOf(task));
+		}
+
+		for (StreamTask task : removed) {
+			order.add(0, task);
+			expected.add(0, task);
+		}
+		assertOrder(expected, order);
+	}
+
+	@Test
+	public void bulkBuildTest() {
+		ArrayList<StreamTask> expected = new ArrayList<StreamTask>();
+		for (int i = 0; i < 1000; i++) {
+			expected.add(new StreamTask("Task " + i));
+		}
+		ArrayList<StreamTask> withRepeats = new ArrayList<StreamTask>(expected);
+		withRepeats.addAll(expected.subList(0, 10));
+		TaskOrder order = new TaskOrder(withRepeats);
+		assertOrder(expected, order);
+
+		StreamTask task = new StreamTask("Task 1000");
+		order.add(500, task);
+		expected.add(500, task);
+		assertOrder(expected, order);
+	}
+
+	@Test
+	public void duplicateTaskTest() {
+		TaskOrder order = new TaskOrder();
+		StreamTask first = new StreamTask("First");
+		StreamTask second = new StreamTask("Second");
+		order.add(first);
+		order.add(second);
+		try {
+			order.add(0, first);
+			fail("Duplicate added");
+		} catch (IllegalArgumentException expected) {
+		}
+		try {
+			order.set(1, first);
+			fail("Duplicate set");
+		} catch (IllegalArgumentException expected) {
+		}
+		assertSame("Set to itself", second, order.set(1, second));
+		assertOrder(Arrays.asList(first, second), order);
+		assertFalse("Snapshot is not ordered", order.contains(first.snapshot()));
+	}
+
+	private StreamTask takeUnordered(Random random, List<StreamTask> unordered) {
+		if (!unordered.isEmpty() && random.nextBoolean()) {
+			return unordered.remove(unordered.size() - 1);
+		}
+		return new StreamTask("Task");
+	}
+
+	private void assertOrder(List<StreamTask> expected, TaskOrder order) {
+		assertEquals("size", expected.size(), order.size());
+		int[] ids = new int[expected.size()];
+		for (int i = 0; i < expected.size(); i++) {
+			StreamTask task = expected.get(i);
+			ids[i] = task.getId();
+			assertSame("get " + i, task, order.get(i));
+			assertEquals("indexOf " + i, i, order.indexOf(task));
+			assertSame("getById " + i, task, order.getById(task.getId()));
+		}
+		assertArrayEquals("ids", ids, order.ids());
+		assertEquals("iterator", expected, new ArrayList<StreamTask>(order));
+	}
+
+}
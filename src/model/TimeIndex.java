@@ -0,0 +1,152 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Set;
+
+//@author A0096529N
+/**
+ * Tasks sorted by a time, such as their deadline, held as a sorted array of
+ * epoch milliseconds alongside the tasks. Tasks with the same time are kept in
+ * no particular order.
+ */
+class TimeIndex {
+
+	private long[] times = new long[16];
+	private StreamTask[] tasks = new StreamTask[16];
+	private int size = 0;
+
+	void add(long time, StreamTask task) {
+		int position = lowerBound(time);
+		if (size == times.length) {
+			times = Arrays.copyOf(times, size * 2);
+			tasks = Arrays.copyOf(tasks, size * 2);
+		}
+		System.arraycopy(times, position, times, position + 1, size - position);
+		System.arraycopy(tasks, position, tasks, position + 1, size - position);
+		times[position] = time;
+		tasks[position] = task;
+		size++;
+	}
+
+	/**
+	 * Adds a task without keeping the times sorted, for building the index
+	 * from many tasks at once. Must be followed by sort before the index is
+	 * used.
+	 */
+	void append(long time, StreamTask task) {
+		if (size == times.length) {
+			times = Arrays.copyOf(times, size * 2);
+			tasks = Arrays.copyOf(tasks, size * 2);
+		}
+		times[size] = time;
+		tasks[size] = task;
+		size++;
+	}
+
+	/**
+	 * Sorts the tasks appended, by merging runs of doubling length.
+	 */
+	void sort() {
+		long[] fromTimes = times;
+		StreamTask[] fromTasks = tasks;
+		long[] toTimes = new long[times.length];
+		StreamTask[] toTasks = new StreamTask[tasks.length];
+		for (int width = 1; width < size; width *= 2) {
+			for (int start = 0; start < size; start += 2 * width) {
+				int middle = Math.min(start + width, size);
+				int end = Math.min(start + 2 * width, size);
+				int left = start;
+				int right = middle;
+				for (int i = start; i < end; i++) {
+					if (left < middle
+							&& (right == end || fromTimes[left] <= fromTimes[right])) {
+						toTimes[i] = fromTimes[left];
+						toTasks[i] = fromTasks[left++];
+					} else {
+						toTimes[i] = fromTimes[right];
+						toTasks[i] = fromTasks[right++];
+					}
+				}
+			}
+			long[] swapTimes = fromTimes;
+			fromTimes = toTimes;
+			toTimes = swapTimes;
+			StreamTask[] swapTasks = fromTasks;
+			fromTasks = toTasks;
+			toTasks = swapTasks;
+		}
+		times = fromTimes;
+		tasks = fromTasks;
+	}
+
+	void remove(long time, StreamTask task) {
+		for (int i = lowerBound(time); i < size && times[i] == time; i++) {
+			if (tasks[i] == task) {
+				System.arraycopy(times, i + 1, times, i, size - i - 1);
+				System.arraycopy(tasks, i + 1, tasks, i, size - i - 1);
+				tasks[--size] = null;
+				return;
+			}
+		}
+	}
+
+	void clear() {
+		times = new long[16];
+		tasks = new StreamTask[16];
+		size = 0;
+	}
+
+	/**
+	 * Adds the tasks whose time is strictly before the given time.
+	 */
+	void addBefore(long time, Set<StreamTask> found) {
+		int end = lowerBound(time);
+		for (int i = 0; i < end; i++) {
+			found.add(tasks[i]);
+		}
+	}
+
+	/**
+	 * Adds the tasks whose time is strictly after the given time.
+	 */
+	void addAfter(long time, Set<StreamTask> found) {
+		if (time == Long.MAX_VALUE) {
+			return;
+		}
+		for (int i = lowerBound(time + 1); i < size; i++) {
+			found.add(tasks[i]);
+		}
+	}
+
+	/**
+	 * @return number of tasks whose time is strictly before the given time
+	 */
+	int countBefore(long time) {
+		return lowerBound(time);
+	}
+
+	/**
+	 * @return number of tasks whose time is strictly after the given time
+	 */
+	int countAfter(long time) {
+		return time == Long.MAX_VALUE ? 0 : size - lowerBound(time + 1);
+	}
+
+	/**
+	 * @return position of the first time not before the given time
+	 */
+	private int lowerBound(long time) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (times[middle] < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+}
@@ -1,11 +1,22 @@
 package parser;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import parser.MarkParser.MarkType;
 import parser.RankParser.RankType;
 
 //@author A0093874N
 /**
  * Parses filter types such as "rank high", "not done", "due before today", ...
+ * 
+ * <p>
+ * Criteria may be combined into an expression with "and", "or", "not" and
+ * parentheses, e.g. "hi and (due before friday or overdue) and not done".
+ * "and" binds tighter than "or".
+ * </p>
  */
 public class FilterParser implements BaseParser {
 
@@ -15,8 +26,158 @@ public class FilterParser implements BaseParser {
 
 	private static FilterParser self = null;
 
+	//@author A0096529N
+	static final int CACHE_SIZE = 16;
+	static final long CACHE_TTL = 1000;
+
+	private static final long NANOS_PER_MILLI = 1000000;
+	private static final String TOKEN_AND = "and";
+	private static final String TOKEN_OR = "or";
+	private static final String TOKEN_NOT = "not";
+	private static final String TOKEN_OPEN = "(";
+	private static final String TOKEN_CLOSE = ")";
+
+	// guarded by itself
+	private final Map<String, CachedPredicate> cache = new LinkedHashMap<String, CachedPredicate>(
+			CACHE_SIZE, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, CachedPredicate> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * Reads a filter expression, one operand at a time.
+	 */
+	private class ExpressionReader {
+
+		private final String[] tokens;
+		private int position = 0;
+		private boolean isValid = true;
+
+		private ExpressionReader(String[] tokens) {
+			this.tokens = tokens;
+		}
+
+		private FilterPredicate read() {
+			FilterPredicate predicate = readOr();
+			if (position < tokens.length || !isValid) {
+				return invalid();
+			}
+			return predicate;
+		}
+
+		private FilterPredicate readOr() {
+			List<FilterPredicate> operands = new ArrayList<FilterPredicate>();
+			operands.add(readAnd());
+			while (consume(TOKEN_OR)) {
+				operands.add(readAnd());
+			}
+			return FilterPredicate.or(operands
+					.toArray(new FilterPredicate[operands.size()]));
+		}
+
+		private FilterPredicate readAnd() {
+			List<FilterPredicate> operands = new ArrayList<FilterPredicate>();
+			operands.add(readUnary());
+			while (consume(TOKEN_AND)) {
+				operands.add(readUnary());
+			}
+			return FilterPredicate.and(operands
+					.toArray(new FilterPredicate[operands.size()]));
+		}
+
+		private FilterPredicate readUnary() {
+			if (isNegation(position)) {
+				position++;
+				return FilterPredicate.not(readUnary());
+			}
+			if (consume(TOKEN_OPEN)) {
+				FilterPredicate predicate = readOr();
+				if (!consume(TOKEN_CLOSE)) {
+					isValid = false;
+				}
+				return predicate;
+			}
+			return readCriterion();
+		}
+
+		private FilterPredicate readCriterion() {
+			StringBuilder criterion = new StringBuilder();
+			while (position < tokens.length && !isOperator(position)) {
+				if (criterion.length() > 0) {
+					criterion.append(' ');
+				}
+				criterion.append(tokens[position++]);
+			}
+			if (criterion.length() == 0) {
+				isValid = false;
+				return invalid();
+			}
+			return compileCriteria(criterion.toString());
+		}
+
+		private boolean consume(String token) {
+			if (position < tokens.length
+					&& tokens[position].equalsIgnoreCase(token)) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		private boolean isOperator(int at) {
+			String token = tokens[at];
+			return token.equalsIgnoreCase(TOKEN_AND)
+					|| token.equalsIgnoreCase(TOKEN_OR)
+					|| token.equals(TOKEN_OPEN) || token.equals(TOKEN_CLOSE)
+					|| isNegation(at);
+		}
+
+		/**
+		 * "not" negates what follows it, unless nothing does.
+		 */
+		private boolean isNegation(int at) {
+			return at < tokens.length
+					&& tokens[at].equalsIgnoreCase(TOKEN_NOT)
+					&& at + 1 < tokens.length
+					&& !tokens[at + 1].equalsIgnoreCase(TOKEN_AND)
+					&& !tokens[at + 1].equalsIgnoreCase(TOKEN_OR)
+					&& !tokens[at + 1].equals(TOKEN_CLOSE);
+		}
+
+		private boolean hasOperator() {
+			for (int i = 0; i < tokens.length; i++) {
+				if (isOperator(i)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+	}
+
+	/**
+	 * A compiled predicate, kept only briefly as dates such as "now" or
+	 * "today" resolve differently as time passes.
+	 */
+	private static class CachedPredicate {
+		private final FilterPredicate predicate;
+		private final long compiledAt;
+
+		private CachedPredicate(FilterPredicate predicate, long compiledAt) {
+			this.predicate = predicate;
+			this.compiledAt = compiledAt;
+		}
+	}
+
+	//@author A0093874N
+
 	public enum FilterType {
-		DONE, NOT, HIRANK, MEDRANK, LORANK, DUEBEF, DUEAFT, STARTBEF, STARTAFT, NOTIMING, DEADLINED, EVENT, NULL, OVERDUE, INACTIVE;
+		DONE, NOT, HIRANK, MEDRANK, LORANK, DUEBEF, DUEAFT, STARTBEF, STARTAFT, NOTIMING, DEADLINED, EVENT, NULL, OVERDUE, INACTIVE, EXPRESSION;
 	}
 
 	private FilterParser(MarkParser mp, RankParser rp, TimeParser tp) {
@@ -34,6 +195,70 @@ public class FilterParser implements BaseParser {
 
 	@Override
 	public FilterType parse(String str) {
+		FilterPredicate predicate = compile(str);
+		return predicate.isValid() ? predicate.getType() : FilterType.NULL;
+	}
+
+	//@author A0096529N
+	/**
+	 * Compiles the filter criteria into a predicate to be checked against
+	 * each task. The criteria, including any date in it, is parsed once, and
+	 * the predicate is reused by filters with the same criteria for up to
+	 * CACHE_TTL milliseconds.
+	 * 
+	 * @param str
+	 *            the filter criteria or expression, e.g. "due before tomorrow"
+	 * @return the compiled predicate, not valid if any criterion is invalid
+	 */
+	public FilterPredicate compile(String str) {
+		long now = System.nanoTime();
+		synchronized (cache) {
+			CachedPredicate cached = cache.get(str);
+			if (cached != null
+					&& now - cached.compiledAt < CACHE_TTL * NANOS_PER_MILLI) {
+				return cached.predicate;
+			}
+		}
+		FilterPredicate predicate = compileExpression(str);
+		synchronized (cache) {
+			cache.put(str, new CachedPredicate(predicate, now));
+		}
+		return predicate;
+	}
+
+	private FilterPredicate compileExpression(String str) {
+		String spaced = str.replace(TOKEN_OPEN, " " + TOKEN_OPEN + " ")
+				.replace(TOKEN_CLOSE, " " + TOKEN_CLOSE + " ").trim();
+		ExpressionReader reader = new ExpressionReader(spaced.isEmpty() ? new String[0]
+				: spaced.split("\\s+"));
+		if (!reader.hasOperator()) {
+			// a single criterion, parsed as entered
+			return compileCriteria(str);
+		}
+		return reader.read();
+	}
+
+	private FilterPredicate compileCriteria(String str) {
+		FilterType type = parseType(str);
+		switch (type) {
+			case DUEBEF:
+			case DUEAFT:
+			case STARTBEF:
+			case STARTAFT:
+				String dateText = str.split(" ", 3)[2];
+				return new FilterPredicate.Criterion(type, dateText,
+						tp.parse(dateText));
+			default:
+				return new FilterPredicate.Criterion(type, null, null);
+		}
+	}
+
+	private static FilterPredicate invalid() {
+		return new FilterPredicate.Criterion(FilterType.NULL, null, null);
+	}
+
+	//@author A0093874N
+	private FilterType parseType(String str) {
 		String[] contents = str.split(" ", 2);
 		MarkType parsedMark = mp.parse(contents[0]);
 		switch (parsedMark) {
@@ -49,17 +274,7 @@ public class FilterParser implements BaseParser {
 		}
 		if (contents[0].equals("rank")) {
 			if (contents.length == 2) {
-				RankType parsedRank = rp.parse(contents[1]);
-				switch (parsedRank) {
-					case HI:
-						return FilterType.HIRANK;
-					case MED:
-						return FilterType.MEDRANK;
-					case LO:
-						return FilterType.LORANK;
-					default:
-						return FilterType.NULL;
-				}
+				return parseRank(contents[1]);
 			} else {
 				return FilterType.NULL;
 			}
@@ -97,13 +312,28 @@ public class FilterParser implements BaseParser {
 						case "timed":
 							return FilterType.EVENT;
 						default:
-							return FilterType.NULL;
+							// a bare rank, e.g. "hi"
+							return parseRank(contents[0]);
 					}
 				}
 			}
 		}
 	}
 
+	private FilterType parseRank(String rank) {
+		RankType parsedRank = rp.parse(rank);
+		switch (parsedRank) {
+			case HI:
+				return FilterType.HIRANK;
+			case MED:
+				return FilterType.MEDRANK;
+			case LO:
+				return FilterType.LORANK;
+			default:
+				return FilterType.NULL;
+		}
+	}
+
 	@Override
 	public String translate(Object obj) {
 		assert (obj instanceof FilterType) : "ERROR";
@@ -0,0 +1,556 @@
+package parser;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import model.StreamTask;
+import model.TaskColumns;
+import model.TaskIndex;
+import model.TaskIndex.TimeField;
+import parser.FilterParser.FilterType;
+import parser.RankParser.RankType;
+
+//@author A0096529N
+/**
+ * <p>
+ * A filter criteria or expression as compiled by FilterParser, to be checked
+ * against every task. Immutable, so it may be shared between filters with the
+ * same criteria.
+ * </p>
+ *
+ * <p>
+ * A single criterion has its type and any date already resolved. Criteria
+ * combined with "and", "or" and "not" form a tree, whose operands are checked
+ * cheapest first so that an expensive check, such as whether a task is
+ * overdue, is skipped whenever a cheap one already decides the result.
+ * </p>
+ *
+ * <p>
+ * Criteria on start time or deadline can also be answered from the task
+ * index, so that only the tasks found there need checking. Otherwise every
+ * task is checked at once against the task columns, one criterion at a time.
+ * </p>
+ */
+public abstract class FilterPredicate {
+
+	private static final String OPERATOR_AND = " and ";
+	private static final String OPERATOR_OR = " or ";
+	private static final String OPERATOR_NOT = "not ";
+
+	private static final int COST_FLAG = 1;
+	private static final int COST_RANK = 2;
+	private static final int COST_DATE = 3;
+	private static final int COST_NOW = 4;
+
+	private static final Comparator<FilterPredicate> BY_COST = new Comparator<FilterPredicate>() {
+		@Override
+		public int compare(FilterPredicate a, FilterPredicate b) {
+			return Integer.compare(a.getCost(), b.getCost());
+		}
+	};
+
+	/**
+	 * @param task
+	 *            the task to be checked
+	 * @return whether the task passes the filter
+	 */
+	public abstract boolean matches(StreamTask task);
+
+	/**
+	 * @return type of the criterion, or EXPRESSION if criteria are combined
+	 */
+	public abstract FilterType getType();
+
+	/**
+	 * @return whether every criterion is valid
+	 */
+	public abstract boolean isValid();
+
+	/**
+	 * @return the filter in words, for showing to the user
+	 */
+	public abstract String describe();
+
+	/**
+	 * @return whether the tasks passing the filter change as time passes,
+	 *         e.g. for "overdue" or "due before today"
+	 */
+	public abstract boolean isTimeDependent();
+
+	/**
+	 * @return relative cost of checking a task
+	 */
+	abstract int getCost();
+
+	/**
+	 * Finds the tasks that may pass the filter using the index. Every task
+	 * that passes is returned, but some returned tasks may not, so the caller
+	 * has to check each of them.
+	 *
+	 * @param index
+	 *            index of the tasks being filtered
+	 * @return the candidate tasks, or null if the index cannot narrow them
+	 *         down
+	 */
+	public abstract Set<StreamTask> findCandidates(TaskIndex index);
+
+	/**
+	 * Checks every task at once, as matches would each.
+	 *
+	 * @param columns
+	 *            columns of the tasks being filtered
+	 * @return positions of the tasks passing the filter
+	 */
+	public abstract BitSet select(TaskColumns columns);
+
+	static FilterPredicate and(FilterPredicate[] operands) {
+		return operands.length == 1 ? operands[0] : new And(operands);
+	}
+
+	static FilterPredicate or(FilterPredicate[] operands) {
+		return operands.length == 1 ? operands[0] : new Or(operands);
+	}
+
+	static FilterPredicate not(FilterPredicate operand) {
+		return new Not(operand);
+	}
+
+	private static Set<StreamTask> newTaskSet() {
+		return Collections
+				.newSetFromMap(new IdentityHashMap<StreamTask, Boolean>());
+	}
+
+	private static String describeOperand(FilterPredicate operand) {
+		String description = operand.describe();
+		return operand instanceof Criterion || operand instanceof Not ? description
+				: "(" + description + ")";
+	}
+
+	/**
+	 * A single criterion, such as "due before today".
+	 */
+	static class Criterion extends FilterPredicate {
+
+		private final FilterType type;
+		private final RankType rank;
+		private final String dateText;
+		private final boolean hasDate;
+		private final long dateMillis;
+
+		Criterion(FilterType type, String dateText, Calendar date) {
+			this.type = type;
+			this.rank = toRank(type);
+			this.dateText = dateText;
+			this.hasDate = date != null;
+			this.dateMillis = date == null ? 0 : date.getTimeInMillis();
+		}
+
+		@Override
+		public FilterType getType() {
+			return type;
+		}
+
+		@Override
+		public boolean isValid() {
+			return type != FilterType.NULL;
+		}
+
+		@Override
+		public String describe() {
+			String description = StreamParser.fp.translate(type);
+			return dateText == null ? description : description + dateText;
+		}
+
+		@Override
+		public boolean matches(StreamTask task) {
+			switch (type) {
+				case DONE:
+					return task.isDone();
+				case NOT:
+					return !task.isDone();
+				case HIRANK:
+				case MEDRANK:
+				case LORANK:
+					return task.getRank() == rank;
+				case STARTBEF:
+					return isBefore(task.startTimeMillis());
+				case STARTAFT:
+					return isAfter(task.startTimeMillis());
+				case DUEBEF:
+					return isBefore(task.deadlineMillis());
+				case DUEAFT:
+					return isAfter(task.deadlineMillis());
+				case NOTIMING:
+					return task.isFloatingTask();
+				case DEADLINED:
+					return task.isDeadlineTask();
+				case EVENT:
+					return task.isTimedTask();
+				case OVERDUE:
+					return task.isOverdue();
+				case INACTIVE:
+					return task.isInactive();
+				default:
+					// shouldn't happen, but in case it happens, pretend
+					// that there is no filter
+					return true;
+			}
+		}
+
+		@Override
+		public boolean isTimeDependent() {
+			switch (type) {
+				case STARTBEF:
+				case STARTAFT:
+				case DUEBEF:
+				case DUEAFT:
+				case OVERDUE:
+				case INACTIVE:
+					return true;
+				default:
+					return false;
+			}
+		}
+
+		@Override
+		int getCost() {
+			switch (type) {
+				case HIRANK:
+				case MEDRANK:
+				case LORANK:
+					return COST_RANK;
+				case STARTBEF:
+				case STARTAFT:
+				case DUEBEF:
+				case DUEAFT:
+					return COST_DATE;
+				case OVERDUE:
+				case INACTIVE:
+					// compares against a newly created current time
+					return COST_NOW;
+				default:
+					return COST_FLAG;
+			}
+		}
+
+		@Override
+		public Set<StreamTask> findCandidates(TaskIndex index) {
+			switch (type) {
+				case STARTBEF:
+					return findBefore(index, TimeField.START_TIME);
+				case STARTAFT:
+					return findAfter(index, TimeField.START_TIME);
+				case DUEBEF:
+					return findBefore(index, TimeField.DEADLINE);
+				case DUEAFT:
+					return findAfter(index, TimeField.DEADLINE);
+				default:
+					return null;
+			}
+		}
+
+		@Override
+		public BitSet select(TaskColumns columns) {
+			switch (type) {
+				case DONE:
+					return columns.selectDone(true);
+				case NOT:
+					return columns.selectDone(false);
+				case HIRANK:
+				case MEDRANK:
+				case LORANK:
+					return columns.selectRank(rank);
+				case STARTBEF:
+					return selectBefore(columns, TimeField.START_TIME);
+				case STARTAFT:
+					return selectAfter(columns, TimeField.START_TIME);
+				case DUEBEF:
+					return selectBefore(columns, TimeField.DEADLINE);
+				case DUEAFT:
+					return selectAfter(columns, TimeField.DEADLINE);
+				case NOTIMING:
+					BitSet floating = columns.selectTimed(TimeField.START_TIME,
+							false);
+					floating.and(columns.selectTimed(TimeField.DEADLINE, false));
+					return floating;
+				case DEADLINED:
+					return columns.selectTimed(TimeField.DEADLINE, true);
+				case EVENT:
+					return columns.selectTimed(TimeField.START_TIME, true);
+				case OVERDUE:
+					return columns.selectBefore(TimeField.DEADLINE,
+							System.currentTimeMillis());
+				case INACTIVE:
+					return columns.selectAfter(TimeField.START_TIME,
+							System.currentTimeMillis());
+				default:
+					return columns.selectAll();
+			}
+		}
+
+		private Set<StreamTask> findBefore(TaskIndex index, TimeField field) {
+			return hasDate ? index.findBefore(field, dateMillis)
+					: newTaskSet();
+		}
+
+		private Set<StreamTask> findAfter(TaskIndex index, TimeField field) {
+			return hasDate ? index.findAfter(field, dateMillis) : newTaskSet();
+		}
+
+		private BitSet selectBefore(TaskColumns columns, TimeField field) {
+			return hasDate ? columns.selectBefore(field, dateMillis)
+					: new BitSet();
+		}
+
+		private BitSet selectAfter(TaskColumns columns, TimeField field) {
+			return hasDate ? columns.selectAfter(field, dateMillis)
+					: new BitSet();
+		}
+
+		private boolean isBefore(long time) {
+			return time != StreamTask.NO_TIME && hasDate && time < dateMillis;
+		}
+
+		private boolean isAfter(long time) {
+			return time != StreamTask.NO_TIME && hasDate && time > dateMillis;
+		}
+
+		private static RankType toRank(FilterType type) {
+			switch (type) {
+				case HIRANK:
+					return RankType.HI;
+				case MEDRANK:
+					return RankType.MED;
+				case LORANK:
+					return RankType.LO;
+				default:
+					return null;
+			}
+		}
+
+	}
+
+	/**
+	 * Operands combined with "and" or "or", kept in the order given for
+	 * describing and checked cheapest first.
+	 */
+	private abstract static class Combination extends FilterPredicate {
+
+		final FilterPredicate[] operands;
+		final FilterPredicate[] checkOrder;
+		private final int cost;
+
+		Combination(FilterPredicate[] operands) {
+			this.operands = operands.clone();
+			this.checkOrder = operands.clone();
+			Arrays.sort(checkOrder, BY_COST);
+			int total = 0;
+			for (FilterPredicate operand : operands) {
+				total += operand.getCost();
+			}
+			this.cost = total;
+		}
+
+		@Override
+		public FilterType getType() {
+			return FilterType.EXPRESSION;
+		}
+
+		@Override
+		public boolean isValid() {
+			for (FilterPredicate operand : operands) {
+				if (!operand.isValid()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public boolean isTimeDependent() {
+			for (FilterPredicate operand : operands) {
+				if (operand.isTimeDependent()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		int getCost() {
+			return cost;
+		}
+
+		String describe(String operator) {
+			StringBuilder description = new StringBuilder();
+			for (FilterPredicate operand : operands) {
+				if (description.length() > 0) {
+					description.append(operator);
+				}
+				description.append(describeOperand(operand));
+			}
+			return description.toString();
+		}
+
+	}
+
+	private static class And extends Combination {
+
+		And(FilterPredicate[] operands) {
+			super(operands);
+		}
+
+		@Override
+		public boolean matches(StreamTask task) {
+			for (FilterPredicate operand : checkOrder) {
+				if (!operand.matches(task)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Narrows down to the fewest candidates of any operand.
+		 */
+		@Override
+		public Set<StreamTask> findCandidates(TaskIndex index) {
+			Set<StreamTask> fewest = null;
+			for (FilterPredicate operand : checkOrder) {
+				Set<StreamTask> candidates = operand.findCandidates(index);
+				if (candidates != null
+						&& (fewest == null || candidates.size() < fewest.size())) {
+					fewest = candidates;
+				}
+			}
+			return fewest;
+		}
+
+		@Override
+		public BitSet select(TaskColumns columns) {
+			BitSet selected = null;
+			for (FilterPredicate operand : checkOrder) {
+				if (selected == null) {
+					selected = operand.select(columns);
+				} else if (selected.isEmpty()) {
+					break;
+				} else {
+					selected.and(operand.select(columns));
+				}
+			}
+			return selected;
+		}
+
+		@Override
+		public String describe() {
+			return describe(OPERATOR_AND);
+		}
+
+	}
+
+	private static class Or extends Combination {
+
+		Or(FilterPredicate[] operands) {
+			super(operands);
+		}
+
+		@Override
+		public boolean matches(StreamTask task) {
+			for (FilterPredicate operand : checkOrder) {
+				if (operand.matches(task)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Joins the candidates of every operand, if each has some.
+		 */
+		@Override
+		public Set<StreamTask> findCandidates(TaskIndex index) {
+			Set<StreamTask> all = newTaskSet();
+			for (FilterPredicate operand : checkOrder) {
+				Set<StreamTask> candidates = operand.findCandidates(index);
+				if (candidates == null) {
+					return null;
+				}
+				all.addAll(candidates);
+			}
+			return all;
+		}
+
+		@Override
+		public BitSet select(TaskColumns columns) {
+			BitSet selected = new BitSet(columns.size());
+			for (FilterPredicate operand : checkOrder) {
+				selected.or(operand.select(columns));
+			}
+			return selected;
+		}
+
+		@Override
+		public String describe() {
+			return describe(OPERATOR_OR);
+		}
+
+	}
+
+	private static class Not extends FilterPredicate {
+
+		private final FilterPredicate operand;
+
+		Not(FilterPredicate operand) {
+			this.operand = operand;
+		}
+
+		@Override
+		public boolean matches(StreamTask task) {
+			return !operand.matches(task);
+		}
+
+		@Override
+		public FilterType getType() {
+			return FilterType.EXPRESSION;
+		}
+
+		@Override
+		public boolean isValid() {
+			return operand.isValid();
+		}
+
+		@Override
+		public String describe() {
+			return OPERATOR_NOT + describeOperand(operand);
+		}
+
+		@Override
+		public Set<StreamTask> findCandidates(TaskIndex index) {
+			return null;
+		}
+
+		@Override
+		public BitSet select(TaskColumns columns) {
+			BitSet selected = columns.selectAll();
+			selected.andNot(operand.select(columns));
+			return selected;
+		}
+
+		@Override
+		public boolean isTimeDependent() {
+			return operand.isTimeDependent();
+		}
+
+		@Override
+		int getCost() {
+			return operand.getCost();
+		}
+
+	}
+
+}
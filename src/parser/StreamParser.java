@@ -228,7 +228,7 @@ public class StreamParser extends Loggable {
 				break;
 
 			default:
-				logDebug(String.format(LOG_COMMAND_UNKNOWN, key));
+				logDebug(LOG_COMMAND_UNKNOWN, key);
 				throw new StreamParserException(ERROR_UNKNOWN_COMMAND);
 
 		}
@@ -359,19 +359,19 @@ public class StreamParser extends Loggable {
 		String commandKey = contents[PARAM_POS_KEYWORD].toUpperCase();
 		if (contentsWithIndex.length >= 3
 				&& StreamUtil.isInteger(contentsWithIndex[PARAM_POS_INDEX])) {
-			logDebug(String.format(LOG_COMMAND_WITH_INDEX_AND_ARGS, commandKey,
+			logDebug(LOG_COMMAND_WITH_INDEX_AND_ARGS, commandKey,
 					contentsWithIndex[PARAM_POS_INDEX],
-					contentsWithIndex[PARAM_POS_ARGS]));
+					contentsWithIndex[PARAM_POS_ARGS]);
 		} else if (contents.length == 2) {
 			if (StreamUtil.isInteger(contents[1])) {
-				logDebug(String.format(LOG_COMMAND_WITH_INDEX, commandKey,
-						contents[PARAM_POS_CONTENTS]));
+				logDebug(LOG_COMMAND_WITH_INDEX, commandKey,
+						contents[PARAM_POS_CONTENTS]);
 			} else {
-				logDebug(String.format(LOG_COMMAND_WITH_ARGS, commandKey,
-						contents[PARAM_POS_CONTENTS]));
+				logDebug(LOG_COMMAND_WITH_ARGS, commandKey,
+						contents[PARAM_POS_CONTENTS]);
 			}
 		} else {
-			logDebug(String.format(LOG_COMMAND_NO_ARGS, commandKey));
+			logDebug(LOG_COMMAND_NO_ARGS, commandKey);
 		}
 	}
 
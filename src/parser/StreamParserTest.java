@@ -1,12 +1,21 @@
 package parser;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Calendar;
+
+import model.StreamTask;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import exception.StreamParserException;
+import parser.FilterParser.FilterType;
+import parser.RankParser.RankType;
 
 //@author A0119401U
 
@@ -186,6 +195,62 @@ public class StreamParserTest {
 		}
 	}
 	
+	//@author A0096529N
+	@Test
+	public void filterPredicateTest() {
+		StreamTask overdue = new StreamTask("Overdue");
+		Calendar yesterday = Calendar.getInstance();
+		yesterday.add(Calendar.DAY_OF_MONTH, -1);
+		overdue.setDeadline(yesterday);
+		StreamTask floating = new StreamTask("Floating");
+		floating.setRank(RankType.HI);
+
+		FilterPredicate dueBefore = StreamParser.fp.compile("due before today");
+		assertEquals(FilterType.DUEBEF, dueBefore.getType());
+		assertTrue("Due before", dueBefore.matches(overdue));
+		assertFalse("No deadline", dueBefore.matches(floating));
+		assertSame("Compiled once", dueBefore, StreamParser.fp.compile("due before today"));
+		assertFalse("Due after", StreamParser.fp.compile("due after today").matches(overdue));
+		assertFalse("Null date", StreamParser.fp.compile("due before null").matches(overdue));
+
+		FilterPredicate highRank = StreamParser.fp.compile("rank hi");
+		assertTrue("High rank", highRank.matches(floating));
+		assertFalse("Low rank", highRank.matches(overdue));
+		assertEquals(FilterType.NULL, StreamParser.fp.compile("due before blah").getType());
+	}
+
+	@Test
+	public void filterExpressionTest() throws Exception {
+		StreamTask overdue = new StreamTask("Overdue");
+		Calendar yesterday = Calendar.getInstance();
+		yesterday.add(Calendar.DAY_OF_MONTH, -1);
+		overdue.setDeadline(yesterday);
+		overdue.setRank(RankType.HI);
+		StreamTask done = new StreamTask("Done");
+		done.setRank(RankType.HI);
+		done.markAsDone();
+		StreamTask floating = new StreamTask("Floating");
+
+		FilterPredicate expression = StreamParser.fp
+				.compile("hi and (due before tomorrow or overdue) and not done");
+		assertEquals(FilterType.EXPRESSION, StreamParser.fp.parse("hi and (due before tomorrow or overdue) and not done"));
+		assertTrue("All criteria met", expression.matches(overdue));
+		assertFalse("Done", expression.matches(done));
+		assertFalse("No deadline", expression.matches(floating));
+		assertEquals("ranked high and (due or ending before tomorrow or overdue) and not done",
+				expression.describe());
+
+		assertTrue("Or", StreamParser.fp.compile("done or no timing").matches(floating));
+		assertTrue("Not binds to next operand", StreamParser.fp.compile("not done and rank hi").matches(overdue));
+		assertEquals("Unbalanced parentheses", FilterType.NULL, StreamParser.fp.parse("(done or overdue"));
+		assertEquals("Missing operand", FilterType.NULL, StreamParser.fp.parse("done and"));
+		assertEquals("Invalid criterion", FilterType.NULL, StreamParser.fp.parse("done or blah"));
+		assertEquals("Single criterion", FilterType.NOT, StreamParser.fp.parse("ongoing"));
+
+		stparser.parseCommand("filter done or (rank low and not overdue)");
+	}
+
+	//@author A0119401U
 	@Test
 	public void parserSortTest() {
 		
@@ -1,14 +1,14 @@
 package stream;
 
 import java.awt.Font;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
 
 import javax.swing.ImageIcon;
 
 import logger.Loggable;
 import logger.StreamLogger;
+import logger.StreamLogger.LogLevel;
+import logger.StreamMetrics;
+import logger.StreamMetrics.Phase;
 import logic.StreamLogic;
 import model.StreamObject;
 import ui.StreamUI;
@@ -17,7 +17,10 @@ import exception.StreamIOException;
 import exception.StreamRetrievalException;
 import exception.StreamParserException;
 import exception.StreamRestriction;
+import fileio.SaveScheduler;
+import fileio.SaveScheduler.DurabilityMode;
 import fileio.StreamIO;
+import fileio.StreamIO.StorageFormat;
 
 /**
  * <b>Stream</b> is the main product of the project. It is the amalgamation of
@@ -32,17 +35,19 @@ public class Stream extends Loggable {
 	StreamIO stio;
 	StreamObject stobj;
 	StreamLogic stlog;
+	SaveScheduler saveScheduler;
+	StreamMetrics metrics = StreamMetrics.init();
 
 	private String filename;
+	private boolean isJournaled;
 	private static Boolean isExtFilesInitialized = false;
 
 	public static final String VERSION = "V0.6";
 	private static final String FILENAME = "stream";
 	static final String SAVEFILE_EXTENSION = ".json";
 	private static final String SAVEFILE_FORMAT = "%1$s" + SAVEFILE_EXTENSION;
-	private static final String LOGFILE_FORMAT = "%1$s.txt";
-	private static final SimpleDateFormat LOGFILE_DATE_FORMAT = new SimpleDateFormat(
-			"yyyyMMdd");
+	private static final String PROPERTY_LOG_LEVEL = "stream.loglevel";
+	private static final LogLevel DEFAULT_LOG_LEVEL = LogLevel.INFO;
 
 	public static ImageIcon HEADER;
 	public static ImageIcon ICON_DONE;
@@ -61,6 +66,7 @@ public class Stream extends Loggable {
 
 	private static final String ERROR_PARSER = "Could not understand your command, "
 			+ "please refer to the manual for list of commands.\nDetails: %1$s";
+	private static final String ERROR_LOG_FILE = "Could not open log file: %1$s";
 	private static final String ERROR_UNEXPECTED = "Oops! An unexpected error occured, "
 			+ "please retry.\nDetails: %1$s";
 	private static final String ERROR_RESTRICT = "Disallowed input: %1$s.";
@@ -69,7 +75,6 @@ public class Stream extends Loggable {
 	private static final String ERROR_SAVE = "Save to file failed: %1$s.";
 	private static final String ERROR_LOG = "%1$s: %2$s";
 	private static final String MSG_LOAD = "File loaded: %1$s.";
-	private static final String MSG_SAVE = "File saved to %1$s.";
 	private static final String MSG_THANK_YOU = "Thank you for using STREAM!";
 
 	@Override
@@ -82,9 +87,19 @@ public class Stream extends Loggable {
 	 * Stream Constructor to initialize the program.
 	 */
 	public Stream(String file) {
+		this(file, false);
+	}
+
+	//@author A0096529N
+	/**
+	 * Stream Constructor to initialize the program, optionally saving changes
+	 * to a journal instead of rewriting the whole file on every command.
+	 */
+	public Stream(String file, boolean isJournaled) {
 		if (!isExtFilesInitialized) {
 			initializeExtFiles();
 		}
+		this.isJournaled = isJournaled;
 		initializeStreamFilename(file);
 		initializeStreamParams();
 		load();
@@ -138,7 +153,9 @@ public class Stream extends Loggable {
 	private void initializeStreamParams() {
 		stui = StreamUI.init(this);
 		stio = StreamIO.init(filename);
+		stio.setJournaled(isJournaled);
 		stobj = StreamObject.init();
+		saveScheduler = SaveScheduler.init(stio, stobj);
 		stlog = StreamLogic.init(this, stui, stobj);
 	}
 
@@ -178,14 +195,27 @@ public class Stream extends Loggable {
 	}
 
 	public void filterAndProcessInput(String input) {
+		metrics.startCommand();
 		try {
 			filterForRestriction(input);
 			logDebug(StreamUtil.showAsTerminalInput(input));
-			String result = stlog.parseAndExecute(input);
+			String result;
+			synchronized (stobj) {
+				result = stlog.parseAndExecute(input);
+			}
+			if (stlog.isExitRequested()) {
+				// saves and waits for the persistence thread, not under lock
+				exit();
+			}
 			if (result != null) {
 				showAndLogResult(result);
 			}
-			save();
+			metrics.enterPhase(Phase.SAVE);
+			try {
+				save();
+			} finally {
+				metrics.exitPhase();
+			}
 		} catch (StreamRestriction e) {
 			showAndLogError(e, ERROR_RESTRICT);
 		} catch (AssertionError e) {
@@ -196,21 +226,34 @@ public class Stream extends Loggable {
 			showAndLogError(e, ERROR_RETRIEVE);
 		} catch (Exception e) {
 			showAndLogError(e, ERROR_UNEXPECTED);
+		} finally {
+			metrics.endCommand();
 		}
 	}
 
 	//@author A0096529N
 	/**
-	 * Saves the current StreamObject state using StreamIO
+	 * Saves the current StreamObject state using StreamIO, either immediately
+	 * or in the background depending on the durability mode.
 	 * 
 	 * @return result the result of this operation
 	 */
 	void save() {
 		try {
-			stio.save(stobj);
-			logDebug(String.format(MSG_SAVE, stio.getSaveLocation()));
+			saveScheduler.requestSave();
+		} catch (StreamIOException e) {
+			logError(ERROR_SAVE, e.getMessage());
+		}
+	}
+
+	/**
+	 * Blocks until all saves requested so far have been written.
+	 */
+	void flush() {
+		try {
+			saveScheduler.flush();
 		} catch (StreamIOException e) {
-			logError(String.format(ERROR_SAVE, e.getMessage()));
+			logError(ERROR_SAVE, e.getMessage());
 		}
 	}
 
@@ -231,23 +274,45 @@ public class Stream extends Loggable {
 		showAndLogResult(MSG_THANK_YOU);
 		System.out.println(MSG_THANK_YOU);
 		save();
-		try {
-			saveLogFile();
-		} catch (StreamIOException e) {
-			// TODO what to do here?
-		}
+		flush();
+		StreamLogger.flush();
 		System.exit(0);
 	}
 
-	private void saveLogFile() throws StreamIOException {
-		Date now = Calendar.getInstance().getTime();
-		String logFileName = String.format(LOGFILE_FORMAT,
-				LOGFILE_DATE_FORMAT.format(now));
-		stio.saveLogFile(StreamLogger.getLogStack(), logFileName);
+	//@author A0096529N
+	/**
+	 * @return the log level given by the stream.loglevel system property, or
+	 *         INFO if absent or unknown
+	 */
+	private static LogLevel getLogLevel() {
+		String level = System.getProperty(PROPERTY_LOG_LEVEL);
+		if (level != null) {
+			try {
+				return LogLevel.valueOf(level.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				// fall back to default
+			}
+		}
+		return DEFAULT_LOG_LEVEL;
 	}
 
+	//@author A0093874N
 	public static void main(String[] args) {
-		new Stream(FILENAME);
+		StreamLogger.setMinimumLevel(getLogLevel());
+		StreamMetrics.init().startSummary(
+				StreamMetrics.DEFAULT_SUMMARY_INTERVAL);
+		Stream st = new Stream(FILENAME, true);
+		st.stio.setStorageFormat(StorageFormat.BINARY);
+		try {
+			st.stio.startLogFile();
+		} catch (StreamIOException e) {
+			st.logError(ERROR_LOG_FILE, e.getMessage());
+		}
+		try {
+			st.saveScheduler.setMode(DurabilityMode.GROUP_COMMIT);
+		} catch (StreamIOException e) {
+			st.logError(ERROR_SAVE, e.getMessage());
+		}
 	}
 
 }
@@ -47,13 +47,13 @@ public class StreamSaveTest {
 	public void testSave() throws IOException {
 		stream.save();
 
-		String expectedContent = "{\"taskList\":{\"1\":\"Build IoT\",\"0\":\"Code Jarvis\"},"
+		String expectedContent = "{\"taskList\":[\"Code Jarvis\",\"Build IoT\"],"
 				+ "\"allTasks\":[{\"tags\":[\"EPIC\",\"IMPOSSIBLE\"],\"rank\":\"low\",\"done\":false,\"deadline\":\"20410719000000\","
 				+ "\"taskName\":\"Code Jarvis\","
 				+ "\"taskDescription\":\"Just\\na\\nRather\\nVery\\nIntelligent\\nSystem\"},"
 				+ "{\"tags\":[\"EPIC\",\"POPULAR\",\"URGENT\"],\"rank\":\"low\",\"done\":false,\"deadline\":\"20180101123456\","
 				+ "\"taskName\":\"Build IoT\","
-				+ "\"taskDescription\":\"Internet of Things\"}]}";
+				+ "\"taskDescription\":\"Internet of Things\"}],\"version\":2}";
 		assertEquals("Saved state", expectedContent, fileToString(testFile));
 	}
 
@@ -13,6 +13,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import parser.StreamParser;
+import parser.RankParser.RankType;
 
 // @author A0093874N
 
@@ -267,14 +268,14 @@ public class StreamUndoTest {
 		in("add a task");
 		in("rank 1 wat");
 		in("rank 1 high");
-		assertEquals("high", st.stlog.crdLogic.getTask("a task").getRank());
+		assertEquals(RankType.HI, st.stlog.crdLogic.getTask("a task").getRank());
 		in("rank 1 ");
 		in("rank 1 m");
-		assertEquals("medium", st.stlog.crdLogic.getTask("a task").getRank());
+		assertEquals(RankType.MED, st.stlog.crdLogic.getTask("a task").getRank());
 		in("undo");
-		assertEquals("high", st.stlog.crdLogic.getTask("a task").getRank());
+		assertEquals(RankType.HI, st.stlog.crdLogic.getTask("a task").getRank());
 		in("undo");
-		assertEquals("low", st.stlog.crdLogic.getTask("a task").getRank());
+		assertEquals(RankType.LO, st.stlog.crdLogic.getTask("a task").getRank());
 	}
 
 	@Test
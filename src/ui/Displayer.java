@@ -43,7 +43,7 @@ public class Displayer {
 	}
 
 	static String displayRank(StreamTask task) {
-		return task.getRank();
+		return StreamParser.rp.translate(task.getRank());
 	}
 
 	/**
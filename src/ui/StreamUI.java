@@ -171,10 +171,8 @@ public class StreamUI extends Loggable {
 					}
 					taskView.setBorder(null);
 				} catch (Exception e) {
-					logError(String
-							.format(StreamConstants.ExceptionMessage.ERR_UI_FADE_THREAD,
-									e.getClass().getSimpleName(),
-									e.getMessage()));
+					logError(StreamConstants.ExceptionMessage.ERR_UI_FADE_THREAD,
+							e.getClass().getSimpleName(), e.getMessage());
 				}
 			}
 		}.start();
@@ -487,7 +485,7 @@ public class StreamUI extends Loggable {
 			}
 		}
 		pageNumber.setText(Displayer.displayPageNumber(pageShown, totalPage));
-		logDebug(String.format(LOG_PAGE_MOVED, pageShown, totalPage));
+		logDebug(LOG_PAGE_MOVED, pageShown, totalPage);
 	}
 
 	/**
@@ -535,7 +533,7 @@ public class StreamUI extends Loggable {
 		if (activeTask != null && !isTaskHighlighted) {
 			highlightActiveTaskView();
 		}
-		logDebug(String.format(LOG_REFRESH, indices.size()));
+		logDebug(LOG_REFRESH, indices.size());
 	}
 
 	/**
@@ -563,7 +561,7 @@ public class StreamUI extends Loggable {
 	 */
 	public void displayDetails(StreamTask task) {
 		String taskName = Displayer.displayDetails(mainFrame, task);
-		logDebug(String.format(LOG_DETAILS, taskName));
+		logDebug(LOG_DETAILS, taskName);
 	}
 
 	/**